@@ -0,0 +1,406 @@
+package com.apitrary.sdk.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating an APYMapper subclass for each class
+ * annotated with APYEntityType. The generated mapper is named after the
+ * binary name of the class with the suffix "_APYMapper" and placed in the
+ * same package, so it accesses the mapped fields directly instead of using
+ * reflection.
+ * <p>
+ * To use it, put the compiled processor including its
+ * META-INF/services/javax.annotation.processing.Processor file on the
+ * annotation processor path of the app. The annotations are matched by
+ * name, so the processor does not depend on the Android library itself.
+ * </p>
+ */
+public class APYMapperProcessor extends AbstractProcessor {
+
+    private static final String ENTITY_TYPE_ANNOTATION = "com.apitrary.sdk.APYEntityType";
+    private static final String PROPERTY_ANNOTATION = "com.apitrary.sdk.APYProperty";
+    private static final String ID_ANNOTATION = "com.apitrary.sdk.APYId";
+
+    private static final String MAPPER_SUFFIX = "_APYMapper";
+
+    /**
+     * The supported kinds of mapped fields.
+     */
+    private enum FieldKind {
+        STRING, BOOLEAN, INT, LONG, FLOAT, DOUBLE
+    }
+
+    /**
+     * A mapped field of an annotated class.
+     */
+    private static final class MappedField {
+
+        final String fieldName;
+
+        final String propertyKey;
+
+        final FieldKind kind;
+
+        MappedField(String fieldName, String propertyKey, FieldKind kind) {
+            this.fieldName = fieldName;
+            this.propertyKey = propertyKey;
+            this.kind = kind;
+        }
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> annotationTypes = new HashSet<String>();
+        annotationTypes.add(ENTITY_TYPE_ANNOTATION);
+        annotationTypes.add(PROPERTY_ANNOTATION);
+        annotationTypes.add(ID_ANNOTATION);
+        return Collections.unmodifiableSet(annotationTypes);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        TypeElement entityTypeAnnotation = processingEnv.getElementUtils().getTypeElement(ENTITY_TYPE_ANNOTATION);
+        if (entityTypeAnnotation == null) {
+            return false;
+        }
+
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(entityTypeAnnotation)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@APYEntityType can only be applied to classes.");
+                continue;
+            }
+            generateMapper((TypeElement) element);
+        }
+        return true;
+    }
+
+    /**
+     * Validates the given annotated class and writes its mapper.
+     */
+    private void generateMapper(TypeElement type) {
+        String entityName = getAnnotationValue(type, ENTITY_TYPE_ANNOTATION);
+        if (entityName == null || entityName.trim().length() == 0) {
+            error(type, "The entity name of @APYEntityType must not be empty.");
+            return;
+        }
+
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || type.getModifiers().contains(Modifier.PRIVATE)
+                || (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC))) {
+            error(type, "Classes annotated with @APYEntityType must be concrete, non-private and, if nested, static.");
+            return;
+        }
+
+        if (!hasAccessibleDefaultConstructor(type)) {
+            error(type, "Classes annotated with @APYEntityType need a non-private no-argument constructor.");
+            return;
+        }
+
+        boolean valid = true;
+        String idField = null;
+        List<MappedField> mappedFields = new ArrayList<MappedField>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            boolean isId = findAnnotation(field, ID_ANNOTATION) != null;
+            boolean isProperty = findAnnotation(field, PROPERTY_ANNOTATION) != null;
+            if (!isId && !isProperty) {
+                continue;
+            }
+
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)
+                    || modifiers.contains(Modifier.FINAL)) {
+                error(field, "Mapped fields must be neither private, static nor final.");
+                valid = false;
+                continue;
+            }
+
+            FieldKind kind = getFieldKind(field.asType());
+            String fieldName = field.getSimpleName().toString();
+            if (isId) {
+                if (kind != FieldKind.STRING || idField != null) {
+                    error(field, "The single @APYId field of a class must be of type String.");
+                    valid = false;
+                    continue;
+                }
+                idField = fieldName;
+            }
+            if (isProperty) {
+                if (kind == null) {
+                    error(field, "@APYProperty fields must be of type String, boolean, int, long, float or double.");
+                    valid = false;
+                    continue;
+                }
+                String propertyKey = getAnnotationValue(field, PROPERTY_ANNOTATION);
+                if (propertyKey == null || propertyKey.length() == 0) {
+                    propertyKey = fieldName;
+                }
+                mappedFields.add(new MappedField(fieldName, propertyKey, kind));
+            }
+        }
+
+        if (!valid) {
+            return;
+        }
+
+        try {
+            writeMapper(type, entityName.trim(), idField, mappedFields);
+        } catch (IOException e) {
+            error(type, "The mapper could not be written: ".concat(String.valueOf(e.getMessage())));
+        }
+    }
+
+    /**
+     * Writes the source of the mapper of the given class.
+     */
+    private void writeMapper(TypeElement type, String entityName, String idField, List<MappedField> mappedFields)
+            throws IOException {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        String mapperName = (packageName.length() > 0 ? binaryName.substring(packageName.length() + 1) : binaryName)
+                .concat(MAPPER_SUFFIX);
+        String typeName = type.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        if (packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.apitrary.sdk.APYMapper;\n");
+        source.append("import com.apitrary.sdk.APYPropertyVisitor;\n\n");
+        source.append("/**\n * Maps {@link ").append(typeName).append("} to the entity '")
+                .append(entityName).append("'. Generated by the apitrary mapper processor, do not edit.\n */\n");
+        source.append("public final class ").append(mapperName)
+                .append(" extends APYMapper<").append(typeName).append("> {\n\n");
+
+        source.append("    @Override\n    public String getEntityName() {\n        return ")
+                .append(quote(entityName)).append(";\n    }\n\n");
+        source.append("    @Override\n    public ").append(typeName).append(" newInstance() {\n        return new ")
+                .append(typeName).append("();\n    }\n");
+
+        if (idField != null) {
+            source.append("\n    @Override\n    public String getId(").append(typeName)
+                    .append(" object) {\n        return object.").append(idField).append(";\n    }\n");
+            source.append("\n    @Override\n    public void setId(").append(typeName)
+                    .append(" object, String id) {\n        object.").append(idField).append(" = id;\n    }\n");
+        }
+
+        appendReadMethod(source, typeName, "readString", "String", mappedFields);
+        appendReadMethod(source, typeName, "readLong", "long", mappedFields);
+        appendReadMethod(source, typeName, "readDouble", "double", mappedFields);
+        appendReadMethod(source, typeName, "readBoolean", "boolean", mappedFields);
+        appendReadMethod(source, typeName, "readNull", null, mappedFields);
+
+        source.append("\n    @Override\n    public void write(").append(typeName)
+                .append(" object, APYPropertyVisitor visitor) {\n");
+        for (MappedField field : mappedFields) {
+            String key = quote(field.propertyKey);
+            String value = "object.".concat(field.fieldName);
+            switch (field.kind) {
+            case STRING:
+                source.append("        if (").append(value).append(" != null) {\n");
+                source.append("            visitor.visitString(").append(key).append(", ").append(value).append(");\n");
+                source.append("        } else {\n");
+                source.append("            visitor.visitNull(").append(key).append(");\n");
+                source.append("        }\n");
+                break;
+            case BOOLEAN:
+                source.append("        visitor.visitBoolean(").append(key).append(", ").append(value).append(");\n");
+                break;
+            case INT:
+            case LONG:
+                source.append("        visitor.visitLong(").append(key).append(", ").append(value).append(");\n");
+                break;
+            default:
+                source.append("        visitor.visitDouble(").append(key).append(", ").append(value).append(");\n");
+                break;
+            }
+        }
+        source.append("    }\n\n}\n");
+
+        String qualifiedMapperName = packageName.length() > 0 ? packageName + "." + mapperName : mapperName;
+        Writer writer = processingEnv.getFiler().createSourceFile(qualifiedMapperName, type).openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Appends one of the read methods, assigning the converted value to each
+     * field the value type can be converted to. Nothing is appended if no
+     * field accepts the value type.
+     *
+     * @param valueType
+     *            the type of the value parameter, or null for readNull
+     */
+    private static void appendReadMethod(StringBuilder source, String typeName, String methodName,
+            String valueType, List<MappedField> mappedFields) {
+        StringBuilder branches = new StringBuilder();
+        for (MappedField field : mappedFields) {
+            String assignment = getReadAssignment(field, valueType);
+            if (assignment == null) {
+                continue;
+            }
+            branches.append(branches.length() == 0 ? "        if (" : " else if (")
+                    .append(quote(field.propertyKey)).append(".equals(propertyKey)) {\n")
+                    .append("            object.").append(field.fieldName).append(" = ").append(assignment)
+                    .append(";\n        }");
+        }
+        if (branches.length() == 0) {
+            return;
+        }
+
+        source.append("\n    @Override\n    public void ").append(methodName).append("(").append(typeName)
+                .append(" object, String propertyKey");
+        if (valueType != null) {
+            source.append(", ").append(valueType).append(" propertyValue");
+        }
+        source.append(") {\n").append(branches).append("\n    }\n");
+    }
+
+    /**
+     * Returns the expression converting a read value of the given type to the
+     * type of the given field, or null if the value is not assigned.
+     */
+    private static String getReadAssignment(MappedField field, String valueType) {
+        String current = "object.".concat(field.fieldName);
+        if (valueType == null) {
+            return field.kind == FieldKind.STRING ? "null" : null;
+        }
+
+        switch (field.kind) {
+        case STRING:
+            return valueType.equals("String") ? "propertyValue" : "String.valueOf(propertyValue)";
+        case BOOLEAN:
+            if (valueType.equals("boolean")) {
+                return "propertyValue";
+            }
+            return valueType.equals("String") ? "parseBoolean(propertyValue, " + current + ")" : null;
+        case INT:
+        case LONG:
+            String cast = field.kind == FieldKind.INT ? "(int) " : "";
+            if (valueType.equals("long")) {
+                return cast + "propertyValue";
+            } else if (valueType.equals("double")) {
+                return field.kind == FieldKind.INT ? "(int) propertyValue" : "(long) propertyValue";
+            }
+            return valueType.equals("String") ? cast + "parseLong(propertyValue, " + current + ")" : null;
+        default:
+            String narrowing = field.kind == FieldKind.FLOAT ? "(float) " : "";
+            if (valueType.equals("long") || valueType.equals("double")) {
+                return narrowing + "propertyValue";
+            }
+            return valueType.equals("String") ? narrowing + "parseDouble(propertyValue, " + current + ")" : null;
+        }
+    }
+
+    /**
+     * Returns the kind of the given field type or null if it is not supported.
+     */
+    private static FieldKind getFieldKind(TypeMirror fieldType) {
+        switch (fieldType.getKind()) {
+        case BOOLEAN:
+            return FieldKind.BOOLEAN;
+        case INT:
+            return FieldKind.INT;
+        case LONG:
+            return FieldKind.LONG;
+        case FLOAT:
+            return FieldKind.FLOAT;
+        case DOUBLE:
+            return FieldKind.DOUBLE;
+        case DECLARED:
+            return fieldType.toString().equals("java.lang.String") ? FieldKind.STRING : null;
+        default:
+            return null;
+        }
+    }
+
+    private static boolean hasAccessibleDefaultConstructor(TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the 'value' of the given annotation of the given element, or
+     * null if it is not set explicitly.
+     */
+    private static String getAnnotationValue(Element element, String annotationName) {
+        AnnotationMirror annotation = findAnnotation(element, annotationName);
+        if (annotation == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value")) {
+                return String.valueOf(entry.getValue().getValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the given string as Java string literal.
+     */
+    private static String quote(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2);
+        literal.append('"');
+        for (int index = 0; index < value.length(); index++) {
+            char c = value.charAt(index);
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                literal.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
@@ -0,0 +1,163 @@
+package com.apitrary.sdk;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Configuration of the engine executing the asynchronous operations of an
+ * {@link APYClient}. The engine runs the operations on a bounded pool of
+ * worker threads with a bounded queue and hands the results to the callbacks
+ * on the callback {@link Executor}.
+ */
+public class APYAsyncConfig {
+
+    /**
+     * Policies applied when an operation is submitted while all worker
+     * threads are busy and the queue is full.
+     */
+    public enum RejectionPolicy {
+
+        /**
+         * The submitted operation is rejected and its callback's onError()
+         * method is called.
+         */
+        ABORT,
+
+        /**
+         * The submitted operation is executed on the submitting thread, which
+         * slows down submitters until the engine catches up. Operations
+         * submitted on the main thread, which is where the asynchronous
+         * methods are usually called, are never executed there, as the
+         * blocking request would freeze the UI. They are rejected and their
+         * callback's onError() method is called as with {@link #ABORT}.
+         */
+        CALLER_RUNS,
+
+        /**
+         * The oldest queued operation is rejected, its callback's onError()
+         * method is called, and the submitted operation is queued instead.
+         */
+        DISCARD_OLDEST
+    }
+
+    /**
+     * The default number of worker threads.
+     */
+    public static final int DEFAULT_THREAD_COUNT = 4;
+
+    /**
+     * The default maximal number of queued operations.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 128;
+
+    /**
+     * The number of worker threads.
+     */
+    private int threadCount = DEFAULT_THREAD_COUNT;
+
+    /**
+     * The maximal number of queued operations.
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * The policy applied when the queue is full.
+     */
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+
+    /**
+     * The executor the callbacks are called on, or null for the default.
+     */
+    private Executor callbackExecutor;
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of worker threads, i.e. the maximal number of
+     * operations executed in parallel. There is no benefit in exceeding the
+     * maximal number of connections of the {@link APYConnectionPoolConfig}.
+     *
+     * @param threadCount the number of worker threads, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given number was less than 1
+     */
+    public void setThreadCount(int threadCount) throws IllegalArgumentException {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be >= 1.");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the maximal number of queued operations.
+     *
+     * @return the queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the maximal number of operations waiting for a worker thread.
+     *
+     * @param queueCapacity the queue capacity, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given capacity was less than 1
+     */
+    public void setQueueCapacity(int queueCapacity) throws IllegalArgumentException {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be >= 1.");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Returns the policy applied when the queue is full.
+     *
+     * @return the {@link RejectionPolicy}
+     */
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * Sets the policy applied when the queue is full.
+     *
+     * @param rejectionPolicy the {@link RejectionPolicy} to apply
+     * @throws IllegalArgumentException
+     *             if the given policy was null
+     */
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) throws IllegalArgumentException {
+        if (rejectionPolicy == null) {
+            throw new IllegalArgumentException("The given rejection policy was null.");
+        }
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Returns the executor the callbacks are called on.
+     *
+     * @return the callback {@link Executor} or null if the default is used
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Sets the executor the callbacks are called on. By default, callbacks
+     * are called on the Android main thread, or on the worker thread if no
+     * main thread is available, e.g. on a plain JVM.
+     *
+     * @param callbackExecutor the callback {@link Executor} or null to use the default
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+}
@@ -0,0 +1,411 @@
+package com.apitrary.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Engine executing {@link APYAsyncTask}s on a bounded pool of worker threads
+ * and dispatching their outcome on a callback {@link Executor}.
+ */
+class APYAsyncEngine {
+
+    /**
+     * Executor running commands directly on the calling thread.
+     */
+    static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * The pool of worker threads.
+     */
+    private final ThreadPoolExecutor workerExecutor;
+
+    /**
+     * The executor the outcome of the tasks is dispatched on.
+     */
+    private final Executor callbackExecutor;
+
+    /**
+     * Constructs an instance of {@link APYAsyncEngine} configured by the given
+     * {@link APYAsyncConfig}.
+     *
+     * @param asyncConfig
+     *            the configuration of the engine
+     * @throws IllegalArgumentException
+     *             if the given configuration was null
+     */
+    APYAsyncEngine(APYAsyncConfig asyncConfig) throws IllegalArgumentException {
+        if (asyncConfig == null) {
+            throw new IllegalArgumentException("The given async config was null.");
+        }
+
+        workerExecutor = new ThreadPoolExecutor(asyncConfig.getThreadCount(), asyncConfig.getThreadCount(),
+                0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(asyncConfig.getQueueCapacity()),
+                new WorkerThreadFactory(), createRejectionHandler(asyncConfig.getRejectionPolicy()));
+
+        Executor configuredCallbackExecutor = asyncConfig.getCallbackExecutor();
+        callbackExecutor = configuredCallbackExecutor != null
+                ? configuredCallbackExecutor : createDefaultCallbackExecutor();
+    }
+
+    /**
+     * Submits the given task for execution on a worker thread. If the task is
+     * rejected, its {@link APYAsyncTask#onFailure(Exception)} method is called
+     * on the callback executor.
+     *
+     * @param task
+     *            the task to execute
+     */
+    <Result> void execute(APYAsyncTask<Result> task) {
+        execute(new Worker<Result>(task, callbackExecutor));
+    }
+
+    /**
+     * Submits the given operation for execution on a worker thread and
+     * returns an {@link APYFuture} of its result. The future is completed on
+     * the worker thread. If it is cancelled before a worker thread picked the
+     * operation up, the operation is not executed.
+     *
+     * @param operation
+     *            the operation to execute
+     * @return an {@link APYFuture} of the operation's result
+     */
+    <Result> APYFuture<Result> submit(final Callable<Result> operation) {
+        return submit(operation, null);
+    }
+
+    /**
+     * Submits the given operation like {@link #submit(Callable)} and runs the
+     * given action once the operation finished, failed or was rejected.
+     * Unlike a listener of the returned future, the action is not run when
+     * the future is cancelled while the operation is still running.
+     *
+     * @param operation
+     *            the operation to execute
+     * @param onFinished
+     *            the action to run once the operation finished, may be null
+     * @return an {@link APYFuture} of the operation's result
+     */
+    private <Result> APYFuture<Result> submit(final Callable<Result> operation, final Runnable onFinished) {
+        final APYFuture<Result> future = new APYFuture<Result>();
+        execute(new Worker<Result>(new APYAsyncTask<Result>() {
+            @Override
+            protected Result doInBackground() throws Exception {
+                if (future.isDone()) {
+                    return null;
+                }
+                return operation.call();
+            }
+
+            @Override
+            protected void onPostExecute(Result result) {
+                try {
+                    future.complete(result);
+                } finally {
+                    finish();
+                }
+            }
+
+            @Override
+            protected void onFailure(Exception occuredException) {
+                try {
+                    if (occuredException instanceof APYException) {
+                        future.fail((APYException) occuredException);
+                    } else {
+                        future.fail(new APYException(occuredException));
+                    }
+                } finally {
+                    finish();
+                }
+            }
+
+            private void finish() {
+                if (onFinished != null) {
+                    onFinished.run();
+                }
+            }
+        }, DIRECT_EXECUTOR));
+        return future;
+    }
+
+    /**
+     * Submits the given operations for execution on the worker threads while
+     * keeping at most the given number of them in flight. An operation only
+     * leaves the window once it finished, even if its future was cancelled
+     * while it was running. Blocks the calling thread while the window is
+     * full, so it must not be called from a worker thread. If the calling
+     * thread is interrupted, the operations not submitted yet are failed and
+     * the interrupt flag is restored.
+     *
+     * @param operations
+     *            the operations to execute
+     * @param windowSize
+     *            the maximal number of operations in flight
+     * @return the {@link APYFuture}s of the operations' results, in the order
+     *         of the given operations
+     */
+    <Result> List<APYFuture<Result>> submitWindowed(List<? extends Callable<Result>> operations, int windowSize) {
+        final Semaphore window = new Semaphore(windowSize);
+        Runnable releaseWindow = new Runnable() {
+            @Override
+            public void run() {
+                window.release();
+            }
+        };
+
+        List<APYFuture<Result>> futures = new ArrayList<APYFuture<Result>>(operations.size());
+        boolean interrupted = false;
+        for (Callable<Result> operation : operations) {
+            if (!interrupted) {
+                try {
+                    window.acquire();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted) {
+                APYFuture<Result> future = new APYFuture<Result>();
+                future.fail(new APYException("The operation was not executed, the batch was interrupted."));
+                futures.add(future);
+            } else {
+                futures.add(submit(operation, releaseWindow));
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return futures;
+    }
+
+    /**
+     * Hands the given worker to the pool, dispatching its rejection if necessary.
+     */
+    private void execute(Worker<?> worker) {
+        try {
+            workerExecutor.execute(worker);
+        } catch (RejectedExecutionException e) {
+            worker.reject(e);
+        }
+    }
+
+    /**
+     * Returns the executor the outcome of the tasks is dispatched on.
+     *
+     * @return the callback {@link Executor}
+     */
+    Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Initiates an orderly shutdown. Already submitted tasks are executed,
+     * newly submitted tasks are rejected.
+     */
+    void shutdown() {
+        workerExecutor.shutdown();
+    }
+
+    /**
+     * Creates the {@link RejectedExecutionHandler} implementing the given policy.
+     */
+    private static RejectedExecutionHandler createRejectionHandler(APYAsyncConfig.RejectionPolicy rejectionPolicy) {
+        switch (rejectionPolicy) {
+        case CALLER_RUNS:
+            return new CallerRunsPolicy();
+        case DISCARD_OLDEST:
+            return new DiscardOldestPolicy();
+        default:
+            return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+
+    /**
+     * Creates the default callback executor posting to the Android main
+     * thread. If there is no main thread, e.g. on a plain JVM, the callbacks
+     * are called directly on the worker thread.
+     */
+    private static Executor createDefaultCallbackExecutor() {
+        try {
+            Looper mainLooper = Looper.getMainLooper();
+            if (mainLooper != null) {
+                return new MainThreadExecutor(mainLooper);
+            }
+        } catch (RuntimeException e) {
+            // Android stub classes on a plain JVM, fall through
+        } catch (LinkageError e) {
+            // No Android classes at all, fall through
+        }
+
+        return DIRECT_EXECUTOR;
+    }
+
+    /**
+     * Runnable executing a task on a worker thread and dispatching its
+     * outcome on the given executor. A task failing with an {@link Error}
+     * has its failure dispatched before the error is rethrown.
+     */
+    private static final class Worker<Result> implements Runnable {
+
+        private final APYAsyncTask<Result> task;
+
+        private final Executor dispatchExecutor;
+
+        Worker(APYAsyncTask<Result> task, Executor dispatchExecutor) {
+            this.task = task;
+            this.dispatchExecutor = dispatchExecutor;
+        }
+
+        @Override
+        public void run() {
+            final Result result;
+            try {
+                result = task.doInBackground();
+            } catch (Exception e) {
+                dispatchFailure(e);
+                return;
+            } catch (Error e) {
+                // Complete the task anyway, so nobody waits for it forever
+                dispatchFailure(new APYException("The operation failed with an error.", e));
+                throw e;
+            }
+
+            dispatchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    task.onPostExecute(result);
+                }
+            });
+        }
+
+        /**
+         * Dispatches the rejection of this worker's task.
+         */
+        void reject(RejectedExecutionException cause) {
+            dispatchFailure(new APYException("The operation was rejected, too many operations are pending"
+                    + " or the engine was shut down.", cause));
+        }
+
+        private void dispatchFailure(final Exception occuredException) {
+            dispatchExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    task.onFailure(occuredException);
+                }
+            });
+        }
+    }
+
+    /**
+     * Rejection handler dropping the oldest queued task in favor of the newly
+     * submitted one. In contrast to {@link ThreadPoolExecutor.DiscardOldestPolicy}
+     * the dropped task's failure is dispatched, so no callback is lost.
+     */
+    private static final class DiscardOldestPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The engine was shut down.");
+            }
+
+            Runnable oldest = executor.getQueue().poll();
+            if (oldest instanceof Worker) {
+                ((Worker<?>) oldest).reject(new RejectedExecutionException("Discarded in favor of a newer operation."));
+            }
+            executor.execute(runnable);
+        }
+    }
+
+    /**
+     * Rejection handler executing the newly submitted task on the submitting
+     * thread. In contrast to {@link ThreadPoolExecutor.CallerRunsPolicy} a
+     * task submitted after shutdown is rejected instead of silently dropped,
+     * so its failure is dispatched. A task submitted on the Android main
+     * thread is rejected as well, as running a blocking request there would
+     * freeze the UI or fail with a NetworkOnMainThreadException.
+     */
+    private static final class CallerRunsPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The engine was shut down.");
+            }
+            if (isMainThread()) {
+                throw new RejectedExecutionException("The engine is saturated, operations submitted on the main"
+                        + " thread are not run by the caller.");
+            }
+            runnable.run();
+        }
+
+        /**
+         * Returns whether the current thread is the Android main thread. On a
+         * plain JVM there is no main thread.
+         */
+        private static boolean isMainThread() {
+            try {
+                Looper mainLooper = Looper.getMainLooper();
+                return mainLooper != null && mainLooper == Looper.myLooper();
+            } catch (RuntimeException e) {
+                // Android stub classes on a plain JVM
+                return false;
+            } catch (LinkageError e) {
+                // No Android classes at all
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Thread factory creating named daemon worker threads.
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "apitrary-async-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Executor posting to the Android main thread.
+     */
+    private static final class MainThreadExecutor implements Executor {
+
+        private final Handler handler;
+
+        MainThreadExecutor(Looper mainLooper) {
+            handler = new Handler(mainLooper);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.apitrary.sdk;
+
+/**
+ * Base class of the operations executed by the {@link APYAsyncEngine}.
+ * {@link #doInBackground()} is called on a worker thread, afterwards exactly
+ * one of {@link #onPostExecute(Object)} and {@link #onFailure(Exception)} is
+ * called on the callback executor.
+ *
+ * @param <Result> the type of the operation's result
+ */
+abstract class APYAsyncTask<Result> {
+
+    /**
+     * Executes the operation. Called on a worker thread.
+     *
+     * @return the result of the operation
+     * @throws Exception
+     *             if the operation failed
+     */
+    protected abstract Result doInBackground() throws Exception;
+
+    /**
+     * Called on the callback executor if the operation succeeded.
+     *
+     * @param result the result of the operation
+     */
+    protected abstract void onPostExecute(Result result);
+
+    /**
+     * Called on the callback executor if the operation failed or was
+     * rejected by the engine.
+     *
+     * @param occuredException the exception describing the problem
+     */
+    protected abstract void onFailure(Exception occuredException);
+
+}
@@ -0,0 +1,147 @@
+package com.apitrary.sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Report of a batch operation such as {@link APYClient#createAll(java.util.Collection)}.
+ * Contains one {@link Item} per entity of the batch, in the order the entities
+ * were given, each of which is either successful or carries the error that
+ * occurred for its entity.
+ */
+public class APYBatchResult {
+
+    /**
+     * The outcome of a batch operation for a single entity.
+     */
+    public static class Item {
+
+        private final APYEntity entity;
+
+        private final String entityId;
+
+        private final APYException error;
+
+        Item(APYEntity entity, String entityId, APYException error) {
+            this.entity = entity;
+            this.entityId = entityId;
+            this.error = error;
+        }
+
+        /**
+         * Returns the entity this item reports about.
+         *
+         * @return the {@link APYEntity} of this item
+         */
+        public APYEntity getEntity() {
+            return entity;
+        }
+
+        /**
+         * Returns the ID of the created, updated or deleted entity.
+         *
+         * @return the entity ID or null if the operation failed
+         */
+        public String getEntityId() {
+            return entityId;
+        }
+
+        /**
+         * Returns the error that occurred for this item's entity.
+         *
+         * @return the {@link APYException} or null if the operation succeeded
+         */
+        public APYException getError() {
+            return error;
+        }
+
+        /**
+         * Returns whether the operation succeeded for this item's entity.
+         *
+         * @return true if the operation succeeded, false otherwise
+         */
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    /**
+     * The items of the batch in the order the entities were given.
+     */
+    private final List<Item> items;
+
+    /**
+     * The number of failed items.
+     */
+    private final int failureCount;
+
+    /**
+     * Constructs an instance of {@link APYBatchResult} for the given items.
+     *
+     * @param items the items of the batch in the order the entities were given
+     */
+    APYBatchResult(List<Item> items) {
+        this.items = Collections.unmodifiableList(items);
+
+        int failures = 0;
+        for (Item item : items) {
+            if (!item.isSuccessful()) {
+                failures++;
+            }
+        }
+        this.failureCount = failures;
+    }
+
+    /**
+     * Returns all items of the batch in the order the entities were given.
+     *
+     * @return an unmodifiable list of all items
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Returns the failed items of the batch.
+     *
+     * @return a list of the failed items
+     */
+    public List<Item> getFailures() {
+        List<Item> failures = new ArrayList<Item>(failureCount);
+        for (Item item : items) {
+            if (!item.isSuccessful()) {
+                failures.add(item);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Returns the number of entities the operation succeeded for.
+     *
+     * @return the number of successful items
+     */
+    public int getSuccessCount() {
+        return items.size() - failureCount;
+    }
+
+    /**
+     * Returns the number of entities the operation failed for.
+     *
+     * @return the number of failed items
+     */
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Returns whether the operation failed for any entity.
+     *
+     * @return true if there was at least one failure, false otherwise
+     */
+    public boolean hasFailures() {
+        return failureCount > 0;
+    }
+
+}
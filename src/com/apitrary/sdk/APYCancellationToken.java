@@ -0,0 +1,105 @@
+package com.apitrary.sdk;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+
+/**
+ * Token cancelling a running request from another thread by disconnecting
+ * its connection, which fails a blocked read or write of the request with
+ * an {@link java.io.IOException}. A request attaches its connection once it
+ * was opened.
+ */
+final class APYCancellationToken {
+
+    /**
+     * Whether the request waits for a pooled connection if all are in use.
+     */
+    private final boolean waitForConnection;
+
+    /**
+     * The transport the connection was opened with, guarded by this.
+     */
+    private APYHttpTransport transport;
+
+    /**
+     * The connection of the request, guarded by this.
+     */
+    private HttpURLConnection connection;
+
+    /**
+     * Whether the request was cancelled, guarded by this.
+     */
+    private boolean cancelled;
+
+    /**
+     * Constructs an instance of {@link APYCancellationToken} whose request
+     * waits for a pooled connection if all are in use.
+     */
+    APYCancellationToken() {
+        this(true);
+    }
+
+    /**
+     * Constructs an instance of {@link APYCancellationToken}.
+     *
+     * @param waitForConnection
+     *            false to fail the request at once if all pooled connections
+     *            are in use
+     */
+    APYCancellationToken(boolean waitForConnection) {
+        this.waitForConnection = waitForConnection;
+    }
+
+    /**
+     * Returns whether the request waits for a pooled connection if all are
+     * in use.
+     *
+     * @return false if the request fails at once instead
+     */
+    boolean waitsForConnection() {
+        return waitForConnection;
+    }
+
+    /**
+     * Attaches the connection of the request. If the request was cancelled
+     * already, the connection is released at once.
+     *
+     * @param transport
+     *            the transport the connection was opened with
+     * @param connection
+     *            the connection of the request
+     * @throws InterruptedIOException
+     *             if the request was cancelled
+     */
+    synchronized void attach(APYHttpTransport transport, HttpURLConnection connection)
+            throws InterruptedIOException {
+        if (cancelled) {
+            transport.release(connection, false);
+            throw new InterruptedIOException("The request was cancelled.");
+        }
+        this.transport = transport;
+        this.connection = connection;
+    }
+
+    /**
+     * Cancels the request, disconnecting its connection if attached.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        if (connection != null) {
+            // Releasing twice has no effect, so the request may release it as well
+            transport.release(connection, false);
+            connection = null;
+        }
+    }
+
+    /**
+     * Returns whether the request was cancelled.
+     *
+     * @return true if {@link #cancel()} was called
+     */
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+}
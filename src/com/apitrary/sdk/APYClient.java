@@ -1,35 +1,115 @@
 package com.apitrary.sdk;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import android.util.Log;
+
+import com.apitrary.sdk.APYException.APYExceptionDetailCode;
 
 /**
  * Main class of the apitrary client library.
  */
 public class APYClient {
 
-    /**
-     * The apitrary log tag used for log output in Android log output.
-     */
-    @SuppressWarnings("unused")
-    private static final String APITARY_LOG_TAG = "Apitrary";
-    
     /**
      * The timeout in milliseconds for any request.
      */
     private int requestTimeout = 15000;
 
+    /**
+     * The default maximal number of requests a batch operation keeps in flight.
+     */
+    public static final int DEFAULT_BATCH_WINDOW_SIZE = 4;
+
     /**
      * The API key used to access the backend API.
      */
     private String apiKey;
 
+    /**
+     * The maximal number of requests a batch operation keeps in flight.
+     */
+    private volatile int batchWindowSize = DEFAULT_BATCH_WINDOW_SIZE;
+
     /**
      * The full URL of the apitrary API to work with.
      */
     private URL fullApiUrl;
 
+    /**
+     * The transport shared by all requests of this client.
+     */
+    private final APYHttpTransport transport;
+
+    /**
+     * The request invoker shared by all requests of this client.
+     */
+    private final APYHttpRequestInvoker requestInvoker;
+
+    /**
+     * The engine executing the asynchronous operations of this client.
+     */
+    private volatile APYAsyncEngine asyncEngine = new APYAsyncEngine(new APYAsyncConfig());
+
+    /**
+     * The cache fetched and written entities are kept in, or null if caching
+     * is disabled.
+     */
+    private volatile APYEntityCache entityCache;
+
+    /**
+     * The store fetched and written entities are persisted in, or null if
+     * persistence is disabled.
+     */
+    private volatile APYEntityStore entityStore;
+
+    /**
+     * Coalesces concurrent fetches of the same entity.
+     */
+    private final APYSingleFlight<APYEntity> fetchOneFlights = new APYSingleFlight<APYEntity>() {
+        @Override
+        protected APYEntity share(APYEntity entity) {
+            return entity != null ? entity.copy() : null;
+        }
+    };
+
+    /**
+     * Coalesces concurrent fetches of all entities of the same name.
+     */
+    private final APYSingleFlight<List<APYEntity>> fetchAllFlights = new APYSingleFlight<List<APYEntity>>() {
+        @Override
+        protected List<APYEntity> share(List<APYEntity> entities) {
+            List<APYEntity> copies = new ArrayList<APYEntity>(entities.size());
+            for (APYEntity entity : entities) {
+                copies.add(entity.copy());
+            }
+            return copies;
+        }
+    };
+
+    /**
+     * Coalesces concurrent syncs of the same entity name.
+     */
+    private final APYSingleFlight<APYSyncResult> syncFlights = new APYSingleFlight<APYSyncResult>() {
+        @Override
+        protected APYSyncResult share(APYSyncResult result) {
+            return result.copy();
+        }
+    };
+
     /**
      * Constructs an instance of {@link APYClient} used to interact with an
      * apitrary API.
@@ -51,6 +131,33 @@ public class APYClient {
      */
     public APYClient(String apiBaseUrl, String apiId, String apiKey, int apiVersion)
             throws IllegalArgumentException, MalformedURLException {
+        this(apiBaseUrl, apiId, apiKey, apiVersion, new APYConnectionPoolConfig());
+    }
+
+    /**
+     * Constructs an instance of {@link APYClient} used to interact with an
+     * apitrary API, using the given connection pool configuration for all of
+     * its requests.
+     * 
+     * @param apiBaseUrl
+     *            The base URL of the backend API
+     * @param apiId
+     *            The unique API ID identifying the the backend API
+     * @param apiKey
+     *            The API key used to access the backend API
+     * @param apiVersion
+     *            The version of the backend API as an integer >= 1
+     * @param poolConfig
+     *            The {@link APYConnectionPoolConfig} of the shared connection pool
+     * @throws IllegalArgumentException
+     *             if the given apiBaseUrl was null or empty, if the given apiId
+     *             was null or empty, if the given API version was less or equal
+     *             to 0, if the given pool config was null
+     * @throws MalformedURLException
+     *             if no valid URL could be constructed using the given values
+     */
+    public APYClient(String apiBaseUrl, String apiId, String apiKey, int apiVersion,
+            APYConnectionPoolConfig poolConfig) throws IllegalArgumentException, MalformedURLException {
         if (APYUtils.isNullOrEmpty(apiBaseUrl)) {
             throw new IllegalArgumentException(
                     "The API base URL must not be null or empty.");
@@ -71,13 +178,20 @@ public class APYClient {
                     "The API version must be an integer >= 1.");
         }
 
+        if (poolConfig == null) {
+            throw new IllegalArgumentException("The given connection pool config was null.");
+        }
+
         this.apiKey = apiKey;
         fullApiUrl = APYUtils.getFullApiUrl(apiBaseUrl, apiId, apiVersion);
+        transport = new APYHttpTransport(poolConfig);
+        requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout, transport);
     }
 
     /**
      * Fetches all entities for the given entity (type) name from the apitrary
-     * backend.
+     * backend. Concurrent calls for the same entity name share a single
+     * request, each caller receiving its own copies of the entities.
      * 
      * @param entityName
      *            the name identifying the kind of entities to fetch
@@ -90,13 +204,99 @@ public class APYClient {
      *             <li>if anything else went wrong</li>
      *             </ul>
      */
-    public List<APYEntity> fetchAll(String entityName) throws IllegalArgumentException, APYException {
+    public List<APYEntity> fetchAll(final String entityName) throws IllegalArgumentException, APYException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        return fetchAllFlights.execute(entityName.toLowerCase(Locale.US), new Callable<List<APYEntity>>() {
+            @Override
+            public List<APYEntity> call() throws APYException {
+                List<APYEntity> entities = requestInvoker.fetchAll(entityName, "");
+                APYEntityCache cache = entityCache;
+                if (cache != null) {
+                    for (APYEntity entity : entities) {
+                        cache.put(entity);
+                    }
+                }
+                storeFetchedEntities(entities);
+                return entities;
+            }
+        });
+    }
+
+    /**
+     * Fetches the entities for the given entity (type) name matching the given
+     * query from the apitrary backend. Only the matching entities and their
+     * selected properties are transferred and decoded. Concurrent calls for
+     * the same entity name and query share a single request. Entities are
+     * only put into the entity cache if the query selects all properties.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param query
+     *            the {@link APYQuery} restricting the entities, or null to
+     *            fetch all entities
+     * @return a list of the matching entities
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public List<APYEntity> fetchAll(final String entityName, APYQuery query)
+            throws IllegalArgumentException, APYException {
+        if (query == null || query.isEmpty()) {
+            return fetchAll(entityName);
+        }
+
         if (APYUtils.isNullOrEmpty(entityName)) {
             throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        return requestInvoker.fetchAll(entityName);
+        final String queryString = query.toQueryString();
+        final boolean partial = query.hasProjection();
+        return fetchAllFlights.execute(entityName.toLowerCase(Locale.US).concat(queryString),
+                new Callable<List<APYEntity>>() {
+            @Override
+            public List<APYEntity> call() throws APYException {
+                List<APYEntity> entities = requestInvoker.fetchAll(entityName, queryString);
+                if (!partial) {
+                    APYEntityCache cache = entityCache;
+                    if (cache != null) {
+                        for (APYEntity entity : entities) {
+                            cache.put(entity);
+                        }
+                    }
+                    storeFetchedEntities(entities);
+                }
+                return entities;
+            }
+        });
+    }
+
+    /**
+     * Fetches all entities stored for the given class annotated with
+     * {@link APYEntityType} from the apitrary backend. The entities are read
+     * directly into new objects of the class by the {@link APYMapper}
+     * generated for it, without creating {@link APYEntity} instances or using
+     * reflection. Neither the entity cache nor conditional requests apply.
+     * 
+     * @param type
+     *            the annotated class to read the entities into
+     * @return a list of all objects
+     * @throws IllegalArgumentException
+     *             if the given class was null or no mapper was generated for it
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public <T> List<T> fetchAll(Class<T> type) throws IllegalArgumentException, APYException {
+        return requestInvoker.fetchAll(APYMapperRegistry.get(type), "");
     }
 
     /**
@@ -120,238 +320,1273 @@ public class APYClient {
             throw new IllegalArgumentException("The given callback was null.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        new APYFetchAllTask(requestInvoker, callback).execute(entityName);
+        asyncEngine.execute(new APYFetchAllTask(this, callback, entityName));
     }
 
     /**
-     * Fetches the entity for the given entity (type) name matching the given entity ID from the apitrary
-     * backend.
+     * Fetches all entities for the given entity (type) name from the apitrary
+     * backend and returns an {@link APYEntityIterator} handing them over while
+     * they are read off the connection. The returned iterator holds the
+     * connection open and must be closed by the caller, which aborts the
+     * request if not all entities were read.
      * 
      * @param entityName
-     *            the name identifying the kind of entity to fetch
-     * @param entityId
-     *            the ID of the entity to fetch
-     * @return the fetched {@link APYEntity} or null if none could be found
+     *            the name identifying the kind of entities to fetch
+     * @return an {@link APYEntityIterator} over all entities
      * @throws IllegalArgumentException
-     *             if the given entity name or ID was null or empty
+     *             if the given entity name was null or empty
      * @throws APYException
      *             <ul>
-     *             <li>if the entity to fetch could not be found on the apitrary backend</li>
      *             <li>if there was an error on the backend side</li>
      *             <li>if anything else went wrong</li>
      *             </ul>
      */
-    public APYEntity fetchOne(String entityName, String entityId) throws IllegalArgumentException, APYException {
+    public APYEntityIterator fetchAllIterator(String entityName) throws IllegalArgumentException, APYException {
         if (APYUtils.isNullOrEmpty(entityName)) {
             throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
-        if (APYUtils.isNullOrEmpty(entityId)) {
-            throw new IllegalArgumentException("The given entity id was null or empty.");
-        }
-
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        return requestInvoker.fetchOne(entityName, entityId);
+        return requestInvoker.openFetchAll(entityName);
     }
 
     /**
-     * Asynchronously fetches the entity for the given entity (type) name
-     * matching the given entity ID from the apitrary backend.
+     * Asynchronously fetches all entities for the given entity (type) name from
+     * the apitrary backend and hands them over one by one while they are read
+     * off the connection. The callback may stop the operation early, which
+     * aborts the request.
      * 
      * @param entityName
      *            the name identifying the kind of entities to fetch
-     * @param entityId
-     *            the ID of the entity to fetch
      * @param callback
-     *            the {@link APYFetchOneCallback} used to inform the caller
-     *            about the operations outcome.
+     *            the {@link APYEntityStreamCallback} the entities are handed
+     *            over to. It is called on a background thread, except for
+     *            the error of a rejected operation, see {@link APYEntityStreamCallback}
      * @throws IllegalArgumentException
-     *             if the given entity name or ID was null or empty, or the callback
-     *             was null
+     *             if the given entity name was null or empty, or the callback was null
      */
-    public void fetchOneAsync(String entityName, String entityId, APYFetchOneCallback callback)
+    public void fetchAllStreaming(String entityName, APYEntityStreamCallback callback)
             throws IllegalArgumentException {
         if (APYUtils.isNullOrEmpty(entityName)) {
             throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
-        if (APYUtils.isNullOrEmpty(entityId)) {
-            throw new IllegalArgumentException("The given entity id was null or empty.");
-        }
-
         if (callback == null) {
             throw new IllegalArgumentException("The given callback was null.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        new APYFetchOneTask(requestInvoker, callback).execute(entityName, entityId);
+        asyncEngine.execute(new APYFetchAllStreamingTask(requestInvoker, callback, entityName));
     }
 
     /**
-     * Creates the given {@link APYEntity} on the apitrary backend.
+     * Fetches a page of the entities for the given entity (type) name from
+     * the apitrary backend. Unlike {@link #fetchAll(String)}, the size of the
+     * response is bounded, so large collections can be read with steady
+     * memory use and short requests.
      * 
-     * @param entity
-     *            the {@link APYEntity} to create.
-     * @throws IllegalArgumentException if the entity was null or if its name was null or empty
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param offset
+     *            the number of entities to skip, must be >= 0
+     * @param pageSize
+     *            the maximal number of entities of the page, must be >= 1
+     * @return the fetched {@link APYPage}
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty, the offset was
+     *             negative or the page size was less than 1
      * @throws APYException
      *             <ul>
      *             <li>if there was an error on the backend side</li>
      *             <li>if anything else went wrong</li>
      *             </ul>
      */
-    public APYEntity create(APYEntity entity) throws IllegalArgumentException, APYException {
-        if (entity == null) {
-            throw new IllegalArgumentException("The given entity was null.");
+    public APYPage fetchPage(String entityName, int offset, int pageSize)
+            throws IllegalArgumentException, APYException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getName())) {
-            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset must be >= 0.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        return requestInvoker.create(entity);
-    }
-
-    /**
-     * Asynchronously creates the given {@link APYEntity} on the apitrary backend.
-     * 
-     * @param entity
-     *            the {@link APYEntity} to create.
-     * @param callback
-     *            the {@link APYCreateCallback} used to inform the caller about
-     *            the operations outcome. May be null, if the caller is not interested in the result.
-     * @throws IllegalArgumentException if the entity was null or if its name was null or empty
-     */
-    public void createAsync(APYEntity entity, APYCreateCallback callback) throws IllegalArgumentException {
-        if (entity == null) {
-            throw new IllegalArgumentException("The given entity was null.");
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be >= 1.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getName())) {
-            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        APYPage page = requestInvoker.fetchPage(entityName, offset, pageSize);
+        APYEntityCache cache = entityCache;
+        if (cache != null) {
+            for (APYEntity entity : page.getEntities()) {
+                cache.put(entity);
+            }
         }
-
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        new APYCreateTask(requestInvoker, callback).execute(entity);
+        storeFetchedEntities(page.getEntities());
+        return page;
     }
 
     /**
-     * Updates the given entity on the apitrary backend.
+     * Fetches the page following the given page from the apitrary backend.
      * 
-     * @param entity
-     *            the entity to update
-     * @return the updated {@link APYEntity}
+     * @param page
+     *            the previously fetched page
+     * @return the following {@link APYPage}
      * @throws IllegalArgumentException
-     *             if the entity was null or if its name or ID was null or empty
+     *             if the given page was null or the last page
      * @throws APYException
      *             <ul>
-     *             <li>if the entity to update could not be found on the apitrary backend</li>
      *             <li>if there was an error on the backend side</li>
      *             <li>if anything else went wrong</li>
      *             </ul>
+     * @see APYPage#hasNextPage()
      */
-    public APYEntity update(APYEntity entity) throws IllegalArgumentException, APYException {
-        if (entity == null) {
-            throw new IllegalArgumentException("The given entity was null.");
-        }
-
-        if (APYUtils.isNullOrEmpty(entity.getName())) {
-            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+    public APYPage fetchNextPage(APYPage page) throws IllegalArgumentException, APYException {
+        if (page == null) {
+            throw new IllegalArgumentException("The given page was null.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getId())) {
-            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        if (!page.hasNextPage()) {
+            throw new IllegalArgumentException("The given page was the last page.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        return requestInvoker.update(entity);
+        return fetchPage(page.getEntityName(), page.getNextOffset(), page.getPageSize());
     }
-    
+
     /**
-     * Asynchronously updates the given entity on the apitrary backend.
+     * Fetches all entities for the given entity (type) name page by page and
+     * returns an {@link APYPageIterator} handing over the pages. The following
+     * page is fetched in the background while the caller processes the
+     * current one. Close the iterator when stopping early.
      * 
-     * @param entity
-     *            the {@link APYEntity} to update.
-     * @param callback
-     *            the {@link APYUpdateCallback} used to inform the caller about
-     *            the operations outcome. May be null, if the caller is not interested in the result.
-     * @throws IllegalArgumentException if the entity was null or if its name or ID was null or empty
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param pageSize
+     *            the maximal number of entities of a page, must be >= 1
+     * @return an {@link APYPageIterator} over all pages
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty, or the page size
+     *             was less than 1
      */
-    public void updateAsync(APYEntity entity, APYUpdateCallback callback) throws IllegalArgumentException {
-        if (entity == null) {
-            throw new IllegalArgumentException("The given entity was null.");
+    public APYPageIterator fetchAllPages(String entityName, int pageSize) throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getName())) {
-            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be >= 1.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getId())) {
-            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        return new APYPageIterator(this, entityName, pageSize);
+    }
+
+    /**
+     * Opens the queue journaled in the given directory for writing entities
+     * in the background, see {@link APYWriteBehindQueue}. Operations queued
+     * before, e.g. before the app was restarted, are resumed. The queued
+     * operations are executed with this client, so its entity cache and
+     * entity store are written through.
+     * <p>
+     * <b>Notice:</b> Open the queue once and close it when the app no longer
+     * needs it. Do not open more than one queue on the same directory.
+     * </p>
+     * 
+     * @param directory
+     *            the directory holding the journal, e.g. below the app's
+     *            files directory
+     * @param callback
+     *            the {@link APYWriteBehindCallback} informed about the outcome
+     *            of the queued operations, or null
+     * @return the opened {@link APYWriteBehindQueue}
+     * @throws IllegalArgumentException
+     *             if the given directory was null
+     * @throws IOException
+     *             if the directory could not be created or the journal could
+     *             not be read
+     */
+    public APYWriteBehindQueue openWriteBehindQueue(File directory, APYWriteBehindCallback callback)
+            throws IllegalArgumentException, IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("The given directory was null.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        new APYUpdateTask(requestInvoker, callback).execute(entity);
+        return new APYWriteBehindQueue(this, directory, callback);
     }
 
     /**
-     * Deletes the given entity on the apitrary backend.
+     * Synchronizes the entities for the given entity (type) name in the
+     * entity store with the apitrary backend, see
+     * {@link #sync(String, boolean)}. Only updated entities are fetched,
+     * deleted entities are not detected.
      * 
-     * @param entity
-     *            the entity to delete
-     * @return the ID of the deleted entity
+     * @param entityName
+     *            the name identifying the kind of entities to synchronize
+     * @return an {@link APYSyncResult} reporting the changes
      * @throws IllegalArgumentException
-     *             if the entity was null or if its name or ID was null or empty
+     *             if the given entity name was null or empty
+     * @throws IllegalStateException
+     *             if no entity store was set
      * @throws APYException
      *             <ul>
-     *             <li>if the entity to delete could not be found on the apitrary backend</li>
      *             <li>if there was an error on the backend side</li>
+     *             <li>if the entity store could not be written</li>
      *             <li>if anything else went wrong</li>
      *             </ul>
      */
-    public String delete(APYEntity entity) throws IllegalArgumentException, APYException {
-        if (entity == null) {
-            throw new IllegalArgumentException("The given entity was null.");
-        }
+    public APYSyncResult sync(String entityName) throws IllegalArgumentException, IllegalStateException, APYException {
+        return sync(entityName, false);
+    }
 
-        if (APYUtils.isNullOrEmpty(entity.getName())) {
-            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+    /**
+     * Synchronizes the entities for the given entity (type) name in the
+     * entity store with the apitrary backend. The store keeps a sync mark per
+     * entity name, the highest '_updatedAt' time seen. Only the entities
+     * updated since the sync mark are fetched and merged into the store, so
+     * the cost of a sync follows the number of changes instead of the size of
+     * the collection. The first sync of an entity name fetches all entities.
+     * <p>
+     * The backend does not report deletions, so they are detected by fetching
+     * the IDs of all entities, without their properties, and removing the
+     * stored entities missing from them. As this request grows with the size
+     * of the collection, pass true only occasionally, e.g. on every n-th
+     * sync or when the app is started, and false otherwise. The first sync
+     * always detects deletions, as it fetches all entities anyway.
+     * Concurrent syncs of the same entity name share a single sync.
+     * </p>
+     * <p>
+     * <b>Notice:</b> Entities are only synchronized if their '_updatedAt'
+     * time is maintained by the backend. Entities stored by other operations
+     * do not advance the sync mark.
+     * </p>
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to synchronize
+     * @param detectRemovals
+     *            true to detect deleted entities, false to only fetch updated ones
+     * @return an {@link APYSyncResult} reporting the changes
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty
+     * @throws IllegalStateException
+     *             if no entity store was set
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if the entity store could not be written</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public APYSyncResult sync(final String entityName, final boolean detectRemovals)
+            throws IllegalArgumentException, IllegalStateException, APYException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getId())) {
-            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        final APYEntityStore store = entityStore;
+        if (store == null) {
+            throw new IllegalStateException("No entity store was set to synchronize.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        return requestInvoker.delete(entity);
+        String flightKey = entityName.toLowerCase(Locale.US).concat(detectRemovals ? "" : "&updated");
+        return syncFlights.execute(flightKey, new Callable<APYSyncResult>() {
+            @Override
+            public APYSyncResult call() throws APYException {
+                try {
+                    return performSync(store, entityName, detectRemovals);
+                } catch (IOException e) {
+                    throw new APYException("Entities of type '".concat(entityName).concat("' could not be stored."), e);
+                }
+            }
+        });
     }
 
     /**
-     * Asynchronously deletes the given entity on the apitrary backend.
+     * Fetches the entity for the given entity (type) name matching the given entity ID from the apitrary
+     * backend. Concurrent calls for the same entity share a single request,
+     * each caller receiving its own copy of the entity.
      * 
-     * @param entity
-     *            the {@link APYEntity} to delete.
-     * @param callback
-     *            the {@link APYDeleteCallback} used to inform the caller about
-     *            the operations outcome. May be null, if the caller is not interested in the result.
-     * @throws IllegalArgumentException if the entity was null or if its name or ID was null or empty
+     * @param entityName
+     *            the name identifying the kind of entity to fetch
+     * @param entityId
+     *            the ID of the entity to fetch
+     * @return the fetched {@link APYEntity} or null if none could be found
+     * @throws IllegalArgumentException
+     *             if the given entity name or ID was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if the entity to fetch could not be found on the apitrary backend</li>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
      */
-    public void deleteAsync(APYEntity entity, APYDeleteCallback callback) throws IllegalArgumentException {
-        if (entity == null) {
-            throw new IllegalArgumentException("The given entity was null.");
+    public APYEntity fetchOne(final String entityName, final String entityId)
+            throws IllegalArgumentException, APYException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getName())) {
-            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        if (APYUtils.isNullOrEmpty(entityId)) {
+            throw new IllegalArgumentException("The given entity id was null or empty.");
         }
 
-        if (APYUtils.isNullOrEmpty(entity.getId())) {
+        APYEntityCache cache = entityCache;
+        if (cache != null) {
+            APYEntity cachedEntity = cache.get(entityName, entityId);
+            if (cachedEntity != null) {
+                return cachedEntity;
+            }
+        }
+
+        String flightKey = entityName.toLowerCase(Locale.US).concat("/").concat(entityId);
+        return fetchOneFlights.execute(flightKey, new Callable<APYEntity>() {
+            @Override
+            public APYEntity call() throws APYException {
+                APYEntity entity = requestInvoker.fetchOne(entityName, entityId, "");
+                APYEntityCache cache = entityCache;
+                if (cache != null) {
+                    cache.put(entity);
+                }
+                storeFetchedEntities(Collections.singletonList(entity));
+                return entity;
+            }
+        });
+    }
+
+    /**
+     * Fetches the entity for the given entity (type) name matching the given
+     * entity ID from the apitrary backend, returning only the properties
+     * selected by the given query. The entity cache is bypassed, as the
+     * fetched entity may be partial.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entity to fetch
+     * @param entityId
+     *            the ID of the entity to fetch
+     * @param query
+     *            the {@link APYQuery} selecting the properties, or null to
+     *            fetch all properties
+     * @return the fetched {@link APYEntity}
+     * @throws IllegalArgumentException
+     *             if the given entity name or ID was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if the entity to fetch could not be found on the apitrary backend</li>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public APYEntity fetchOne(String entityName, String entityId, APYQuery query)
+            throws IllegalArgumentException, APYException {
+        if (query == null || query.isEmpty()) {
+            return fetchOne(entityName, entityId);
+        }
+
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entityId)) {
+            throw new IllegalArgumentException("The given entity id was null or empty.");
+        }
+
+        return requestInvoker.fetchOne(entityName, entityId, query.toQueryString());
+    }
+
+    /**
+     * Fetches the entities for the given entity (type) name matching the given
+     * entity IDs from the apitrary backend. Duplicate IDs are fetched once. The
+     * IDs are split into chunks which are fetched in parallel on the worker
+     * threads, keeping at most the configured batch window of chunks in flight.
+     * IDs without an entity are reported as missing instead of failing the
+     * operation.
+     * <p>
+     * <b>Notice:</b> This method blocks until all IDs were processed and
+     * must not be called from a callback or future of this client.
+     * </p>
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param entityIds
+     *            the IDs of the entities to fetch
+     * @return an {@link APYFetchManyResult} containing the fetched entities and
+     *         the missing or failed IDs
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty, if the given
+     *             collection was null or contained a null or empty ID
+     */
+    public APYFetchManyResult fetchMany(final String entityName, Collection<String> entityIds)
+            throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        if (entityIds == null) {
+            throw new IllegalArgumentException("The given collection of entity ids was null.");
+        }
+
+        List<String> distinctIds = new ArrayList<String>(new LinkedHashSet<String>(entityIds));
+        for (String entityId : distinctIds) {
+            if (APYUtils.isNullOrEmpty(entityId)) {
+                throw new IllegalArgumentException("The given collection contained a null or empty entity id.");
+            }
+        }
+
+        // Split the IDs into one contiguous chunk per window slot
+        int chunkCount = Math.max(1, Math.min(batchWindowSize, distinctIds.size()));
+        int chunkSize = (distinctIds.size() + chunkCount - 1) / chunkCount;
+        List<List<String>> chunks = new ArrayList<List<String>>(chunkCount);
+        List<Callable<APYFetchManyResult>> operations = new ArrayList<Callable<APYFetchManyResult>>(chunkCount);
+        for (int start = 0; start < distinctIds.size(); start += chunkSize) {
+            final List<String> chunk = distinctIds.subList(start, Math.min(start + chunkSize, distinctIds.size()));
+            chunks.add(chunk);
+            operations.add(new Callable<APYFetchManyResult>() {
+                @Override
+                public APYFetchManyResult call() {
+                    APYFetchManyResult chunkResult = new APYFetchManyResult();
+                    for (String entityId : chunk) {
+                        try {
+                            chunkResult.addEntity(entityId, fetchOne(entityName, entityId));
+                        } catch (APYException e) {
+                            if (e.getDetailCode() == APYExceptionDetailCode.ENTITY_NOT_FOUND) {
+                                chunkResult.addMissingId(entityId);
+                            } else {
+                                chunkResult.addFailure(entityId, e);
+                            }
+                        }
+                    }
+                    return chunkResult;
+                }
+            });
+        }
+
+        List<APYFuture<APYFetchManyResult>> futures = asyncEngine.submitWindowed(operations, batchWindowSize);
+
+        APYFetchManyResult result = new APYFetchManyResult();
+        for (int index = 0; index < chunks.size(); index++) {
+            try {
+                result.merge(futures.get(index).await());
+            } catch (APYException e) {
+                for (String entityId : chunks.get(index)) {
+                    result.addFailure(entityId, e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Asynchronously fetches the entity for the given entity (type) name
+     * matching the given entity ID from the apitrary backend.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param entityId
+     *            the ID of the entity to fetch
+     * @param callback
+     *            the {@link APYFetchOneCallback} used to inform the caller
+     *            about the operations outcome.
+     * @throws IllegalArgumentException
+     *             if the given entity name or ID was null or empty, or the callback
+     *             was null
+     */
+    public void fetchOneAsync(String entityName, String entityId, APYFetchOneCallback callback)
+            throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entityId)) {
+            throw new IllegalArgumentException("The given entity id was null or empty.");
+        }
+
+        if (callback == null) {
+            throw new IllegalArgumentException("The given callback was null.");
+        }
+
+        asyncEngine.execute(new APYFetchOneTask(this, callback, entityName, entityId));
+    }
+
+    /**
+     * Creates the given {@link APYEntity} on the apitrary backend.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to create.
+     * @throws IllegalArgumentException if the entity was null or if its name was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public APYEntity create(APYEntity entity) throws IllegalArgumentException, APYException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        APYEntity createdEntity = requestInvoker.create(entity);
+        APYEntityCache cache = entityCache;
+        if (cache != null) {
+            cache.put(createdEntity);
+        }
+        storeEntity(createdEntity);
+        return createdEntity;
+    }
+
+    /**
+     * Fetches the entities matching the given query stored for the given
+     * class annotated with {@link APYEntityType} from the apitrary backend,
+     * reading them directly into new objects of the class.
+     * 
+     * @param type
+     *            the annotated class to read the entities into
+     * @param query
+     *            the {@link APYQuery} restricting the entities, or null to
+     *            fetch all entities
+     * @return a list of the matching objects
+     * @throws IllegalArgumentException
+     *             if the given class was null or no mapper was generated for it
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     * @see #fetchAll(Class)
+     */
+    public <T> List<T> fetchAll(Class<T> type, APYQuery query) throws IllegalArgumentException, APYException {
+        return requestInvoker.fetchAll(APYMapperRegistry.get(type), query != null ? query.toQueryString() : "");
+    }
+
+    /**
+     * Creates the given object of a class annotated with {@link APYEntityType}
+     * on the apitrary backend. The object is written directly by the
+     * {@link APYMapper} generated for its class, and the ID of the created
+     * entity is set on its {@link APYId} field.
+     * 
+     * @param object
+     *            the object to create
+     * @return the given object
+     * @throws IllegalArgumentException
+     *             if the object was null or no mapper was generated for its class
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public <T> T create(T object) throws IllegalArgumentException, APYException {
+        if (object == null) {
+            throw new IllegalArgumentException("The given object was null.");
+        }
+
+        @SuppressWarnings("unchecked")
+        APYMapper<T> mapper = (APYMapper<T>) APYMapperRegistry.get(object.getClass());
+        return requestInvoker.create(mapper, object);
+    }
+
+    /**
+     * Asynchronously creates the given {@link APYEntity} on the apitrary backend.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to create.
+     * @param callback
+     *            the {@link APYCreateCallback} used to inform the caller about
+     *            the operations outcome. May be null, if the caller is not interested in the result.
+     * @throws IllegalArgumentException if the entity was null or if its name was null or empty
+     */
+    public void createAsync(APYEntity entity, APYCreateCallback callback) throws IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        asyncEngine.execute(new APYCreateTask(this, callback, entity));
+    }
+
+    /**
+     * Updates the given entity on the apitrary backend.
+     * 
+     * @param entity
+     *            the entity to update
+     * @return the updated {@link APYEntity}
+     * @throws IllegalArgumentException
+     *             if the entity was null or if its name or ID was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if the entity to update could not be found on the apitrary backend</li>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public APYEntity update(APYEntity entity) throws IllegalArgumentException, APYException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        APYEntity updatedEntity = requestInvoker.update(entity);
+        APYEntityCache cache = entityCache;
+        if (cache != null) {
+            cache.put(updatedEntity);
+        }
+        storeEntity(updatedEntity);
+        return updatedEntity;
+    }
+    
+    /**
+     * Sends only the properties of the given entity that were put or removed
+     * since it was fetched, created or updated the last time. Removed
+     * properties are sent with a null value. If the entity has no changes, no
+     * request is sent.
+     * 
+     * @param entity
+     *            the entity to patch
+     * @return the patched {@link APYEntity}
+     * @throws IllegalArgumentException
+     *             if the entity was null or if its name or ID was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if the entity to patch could not be found on the apitrary backend</li>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public APYEntity patch(APYEntity entity) throws IllegalArgumentException, APYException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        if (!entity.isDirty()) {
+            return entity;
+        }
+
+        APYEntity patchedEntity = requestInvoker.patch(entity);
+        APYEntityCache cache = entityCache;
+        if (cache != null) {
+            cache.put(patchedEntity);
+        }
+        storeEntity(patchedEntity);
+        return patchedEntity;
+    }
+
+    /**
+     * Asynchronously updates the given entity on the apitrary backend.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to update.
+     * @param callback
+     *            the {@link APYUpdateCallback} used to inform the caller about
+     *            the operations outcome. May be null, if the caller is not interested in the result.
+     * @throws IllegalArgumentException if the entity was null or if its name or ID was null or empty
+     */
+    public void updateAsync(APYEntity entity, APYUpdateCallback callback) throws IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        asyncEngine.execute(new APYUpdateTask(this, callback, entity));
+    }
+
+    /**
+     * Deletes the given entity on the apitrary backend.
+     * 
+     * @param entity
+     *            the entity to delete
+     * @return the ID of the deleted entity
+     * @throws IllegalArgumentException
+     *             if the entity was null or if its name or ID was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if the entity to delete could not be found on the apitrary backend</li>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    public String delete(APYEntity entity) throws IllegalArgumentException, APYException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        try {
+            String result = requestInvoker.delete(entity);
+            unstoreEntity(entity);
+            return result;
+        } finally {
+            // Also drop the entity if the request failed, it may be gone anyway
+            APYEntityCache cache = entityCache;
+            if (cache != null) {
+                cache.invalidate(entity.getName(), entity.getId());
+            }
+        }
+    }
+
+    /**
+     * Asynchronously deletes the given entity on the apitrary backend.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to delete.
+     * @param callback
+     *            the {@link APYDeleteCallback} used to inform the caller about
+     *            the operations outcome. May be null, if the caller is not interested in the result.
+     * @throws IllegalArgumentException if the entity was null or if its name or ID was null or empty
+     */
+    public void deleteAsync(APYEntity entity, APYDeleteCallback callback) throws IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        asyncEngine.execute(new APYDeleteTask(this, callback, entity));
+    }
+
+    /**
+     * Asynchronously fetches all entities for the given entity (type) name from
+     * the apitrary backend and returns an {@link APYFuture} of the result.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @return an {@link APYFuture} of the list of all entities
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty
+     */
+    public APYFuture<List<APYEntity>> fetchAllFuture(final String entityName) throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        return asyncEngine.submit(new Callable<List<APYEntity>>() {
+            @Override
+            public List<APYEntity> call() throws APYException {
+                return fetchAll(entityName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously fetches a page of the entities for the given entity
+     * (type) name from the apitrary backend and returns an {@link APYFuture}
+     * of the result.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param offset
+     *            the number of entities to skip, must be >= 0
+     * @param pageSize
+     *            the maximal number of entities of the page, must be >= 1
+     * @return an {@link APYFuture} of the fetched {@link APYPage}
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty, the offset was
+     *             negative or the page size was less than 1
+     */
+    public APYFuture<APYPage> fetchPageFuture(final String entityName, final int offset, final int pageSize)
+            throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        if (offset < 0) {
+            throw new IllegalArgumentException("The offset must be >= 0.");
+        }
+
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be >= 1.");
+        }
+
+        return asyncEngine.submit(new Callable<APYPage>() {
+            @Override
+            public APYPage call() throws APYException {
+                return fetchPage(entityName, offset, pageSize);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously synchronizes the entities for the given entity (type)
+     * name in the entity store with the apitrary backend and returns an
+     * {@link APYFuture} of the result, see {@link #sync(String)}. Deleted
+     * entities are not detected.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to synchronize
+     * @return an {@link APYFuture} of the {@link APYSyncResult}
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty
+     * @throws IllegalStateException
+     *             if no entity store was set
+     */
+    public APYFuture<APYSyncResult> syncFuture(final String entityName)
+            throws IllegalArgumentException, IllegalStateException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        if (entityStore == null) {
+            throw new IllegalStateException("No entity store was set to synchronize.");
+        }
+
+        return asyncEngine.submit(new Callable<APYSyncResult>() {
+            @Override
+            public APYSyncResult call() throws APYException {
+                return sync(entityName);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously fetches the entity for the given entity (type) name
+     * matching the given entity ID from the apitrary backend and returns an
+     * {@link APYFuture} of the result.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entity to fetch
+     * @param entityId
+     *            the ID of the entity to fetch
+     * @return an {@link APYFuture} of the fetched {@link APYEntity}
+     * @throws IllegalArgumentException
+     *             if the given entity name or ID was null or empty
+     */
+    public APYFuture<APYEntity> fetchOneFuture(final String entityName, final String entityId)
+            throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entityId)) {
+            throw new IllegalArgumentException("The given entity id was null or empty.");
+        }
+
+        return asyncEngine.submit(new Callable<APYEntity>() {
+            @Override
+            public APYEntity call() throws APYException {
+                return fetchOne(entityName, entityId);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously creates the given {@link APYEntity} on the apitrary
+     * backend and returns an {@link APYFuture} of the result.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to create.
+     * @return an {@link APYFuture} of the created {@link APYEntity}
+     * @throws IllegalArgumentException if the entity was null or if its name was null or empty
+     */
+    public APYFuture<APYEntity> createFuture(final APYEntity entity) throws IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        return asyncEngine.submit(new Callable<APYEntity>() {
+            @Override
+            public APYEntity call() throws APYException {
+                return create(entity);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously updates the given entity on the apitrary backend and
+     * returns an {@link APYFuture} of the result.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to update.
+     * @return an {@link APYFuture} of the updated {@link APYEntity}
+     * @throws IllegalArgumentException if the entity was null or if its name or ID was null or empty
+     */
+    public APYFuture<APYEntity> updateFuture(final APYEntity entity) throws IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        return asyncEngine.submit(new Callable<APYEntity>() {
+            @Override
+            public APYEntity call() throws APYException {
+                return update(entity);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously sends the changes of the given entity to the apitrary
+     * backend and returns an {@link APYFuture} of the result.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to patch.
+     * @return an {@link APYFuture} of the patched {@link APYEntity}
+     * @throws IllegalArgumentException if the entity was null or if its name or ID was null or empty
+     * @see #patch(APYEntity)
+     */
+    public APYFuture<APYEntity> patchFuture(final APYEntity entity) throws IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        return asyncEngine.submit(new Callable<APYEntity>() {
+            @Override
+            public APYEntity call() throws APYException {
+                return patch(entity);
+            }
+        });
+    }
+
+    /**
+     * Asynchronously deletes the given entity on the apitrary backend and
+     * returns an {@link APYFuture} of the result.
+     * 
+     * @param entity
+     *            the {@link APYEntity} to delete.
+     * @return an {@link APYFuture} of the ID of the deleted entity
+     * @throws IllegalArgumentException if the entity was null or if its name or ID was null or empty
+     */
+    public APYFuture<String> deleteFuture(final APYEntity entity) throws IllegalArgumentException {
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
             throw new IllegalArgumentException("The ID of the given entity was null or empty.");
         }
 
-        APYHttpRequestInvoker requestInvoker = new APYHttpRequestInvoker(fullApiUrl, apiKey, requestTimeout);
-        new APYDeleteTask(requestInvoker, callback).execute(entity);
+        return asyncEngine.submit(new Callable<String>() {
+            @Override
+            public String call() throws APYException {
+                return delete(entity);
+            }
+        });
+    }
+
+    /**
+     * Creates all given entities on the apitrary backend. The entities are
+     * created in parallel on the worker threads over pooled connections,
+     * keeping at most the configured batch window of requests in flight.
+     * Failures do not stop the batch, they are reported per entity.
+     * <p>
+     * <b>Notice:</b> This method blocks until all entities were processed and
+     * must not be called from a callback or future of this client.
+     * </p>
+     * 
+     * @param entities
+     *            the entities to create
+     * @return an {@link APYBatchResult} reporting the outcome per entity
+     * @throws IllegalArgumentException
+     *             if the given collection was null
+     */
+    public APYBatchResult createAll(Collection<APYEntity> entities) throws IllegalArgumentException {
+        return executeBatch(entities, new BatchOperation() {
+            @Override
+            public String execute(APYEntity entity) throws APYException {
+                return create(entity).getId();
+            }
+        });
+    }
+
+    /**
+     * Updates all given entities on the apitrary backend. The entities are
+     * updated in parallel on the worker threads over pooled connections,
+     * keeping at most the configured batch window of requests in flight.
+     * Failures do not stop the batch, they are reported per entity.
+     * <p>
+     * <b>Notice:</b> This method blocks until all entities were processed and
+     * must not be called from a callback or future of this client.
+     * </p>
+     * 
+     * @param entities
+     *            the entities to update
+     * @return an {@link APYBatchResult} reporting the outcome per entity
+     * @throws IllegalArgumentException
+     *             if the given collection was null
+     */
+    public APYBatchResult updateAll(Collection<APYEntity> entities) throws IllegalArgumentException {
+        return executeBatch(entities, new BatchOperation() {
+            @Override
+            public String execute(APYEntity entity) throws APYException {
+                return update(entity).getId();
+            }
+        });
+    }
+
+    /**
+     * Deletes all given entities on the apitrary backend. The entities are
+     * deleted in parallel on the worker threads over pooled connections,
+     * keeping at most the configured batch window of requests in flight.
+     * Failures do not stop the batch, they are reported per entity.
+     * <p>
+     * <b>Notice:</b> This method blocks until all entities were processed and
+     * must not be called from a callback or future of this client.
+     * </p>
+     * 
+     * @param entities
+     *            the entities to delete
+     * @return an {@link APYBatchResult} reporting the outcome per entity
+     * @throws IllegalArgumentException
+     *             if the given collection was null
+     */
+    public APYBatchResult deleteAll(Collection<APYEntity> entities) throws IllegalArgumentException {
+        return executeBatch(entities, new BatchOperation() {
+            @Override
+            public String execute(APYEntity entity) throws APYException {
+                return delete(entity);
+            }
+        });
+    }
+
+    /**
+     * Configures the engine executing the asynchronous operations, i.e. the
+     * number of worker threads, the queue capacity, the rejection policy and
+     * the executor the callbacks are called on. Operations submitted before
+     * are still completed by the previous engine.
+     *
+     * @param asyncConfig the {@link APYAsyncConfig} to apply
+     * @throws IllegalArgumentException if the given config was null
+     */
+    public void setAsyncConfig(APYAsyncConfig asyncConfig) throws IllegalArgumentException {
+        if (asyncConfig == null) {
+            throw new IllegalArgumentException("The given async config was null.");
+        }
+
+        APYAsyncEngine previousEngine = asyncEngine;
+        asyncEngine = new APYAsyncEngine(asyncConfig);
+        previousEngine.shutdown();
+    }
+
+    /**
+     * Shuts down the worker threads of this client. Pending asynchronous
+     * operations are completed, subsequently submitted ones are rejected.
+     * Read requests are no longer hedged.
+     */
+    public void shutdown() {
+        asyncEngine.shutdown();
+        requestInvoker.setHedgingPolicy(null);
+    }
+
+    /**
+     * Sets the cache fetched entities are served from. Entities fetched by
+     * {@link #fetchOne(String, String)} and {@link #fetchAll(String)} are
+     * stored in the cache, created and updated entities are written through
+     * and deleted entities are removed. Subsequent calls of
+     * {@link #fetchOne(String, String)} are served from the cache until the
+     * cached entity expires. The streaming fetch variants bypass the cache.
+     * <p>
+     * <b>Notice:</b> Changes made by other clients are not visible before the
+     * cached entity expired. Choose the time to live accordingly.
+     * </p>
+     *
+     * @param entityCache the {@link APYEntityCache} to use, or null to disable caching
+     */
+    public void setEntityCache(APYEntityCache entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * Returns the cache fetched entities are served from.
+     *
+     * @return the {@link APYEntityCache} in use or null if caching is disabled
+     */
+    public APYEntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * Sets the store fetched entities are persisted in. Entities fetched by
+     * {@link #fetchOne(String, String)}, {@link #fetchAll(String)} and
+     * {@link #fetchPage(String, int, int)} are written to the store, as are
+     * created and updated entities, and deleted entities are removed. Read the
+     * stored entities with {@link APYEntityStore#get(String, String)} and
+     * {@link APYEntityStore#getAll(String)}, e.g. to show them before the
+     * first fetch after a restart. Entities fetched with selected properties
+     * only are not stored.
+     * <p>
+     * <b>Notice:</b> Errors writing the store are logged and otherwise
+     * ignored, so they never fail the operation. The client does not close
+     * the store.
+     * </p>
+     *
+     * @param entityStore the {@link APYEntityStore} to use, or null to disable persistence
+     */
+    public void setEntityStore(APYEntityStore entityStore) {
+        this.entityStore = entityStore;
+    }
+
+    /**
+     * Returns the store fetched entities are persisted in.
+     *
+     * @return the {@link APYEntityStore} in use or null if persistence is disabled
+     */
+    public APYEntityStore getEntityStore() {
+        return entityStore;
+    }
+
+    /**
+     * Sets the policy of retrying failed idempotent requests, i.e. fetches,
+     * updates and patches. Requests failing with a network error or an
+     * error on the backend side are retried with exponential backoff and
+     * jitter, as long as the retry budget shared by all requests of this
+     * client allows it, see {@link APYRetryPolicy}. Requests are not retried
+     * by default.
+     * <p>
+     * <b>Notice:</b> Retries block the calling thread during the backoff.
+     * Changes of the policy take effect when it is set again, which also
+     * refills the retry budget.
+     * </p>
+     *
+     * @param retryPolicy the {@link APYRetryPolicy} to apply, or null to never retry requests
+     */
+    public void setRetryPolicy(APYRetryPolicy retryPolicy) {
+        requestInvoker.setRetryPolicy(retryPolicy != null ? retryPolicy.copy() : null);
+    }
+
+    /**
+     * Sets the policy of hedging slow read requests, i.e. of
+     * {@link #fetchOne(String, String)} and
+     * {@link #fetchPage(String, int, int)}. If a read has not been answered
+     * within a percentile of the recent response times, the same request is
+     * sent a second time and the first response is used, while the other
+     * request is cancelled. The extra requests are capped by a budget, see
+     * {@link APYHedgingPolicy}. Reads are not hedged by default.
+     * <p>
+     * <b>Notice:</b> Hedging starts once enough response times were
+     * recorded. Setting a policy drops the recorded response times; changes
+     * of the policy take effect when it is set again.
+     * </p>
+     *
+     * @param hedgingPolicy the {@link APYHedgingPolicy} to apply, or null to never hedge requests
+     */
+    public void setHedgingPolicy(APYHedgingPolicy hedgingPolicy) {
+        requestInvoker.setHedgingPolicy(hedgingPolicy != null ? hedgingPolicy.copy() : null);
+    }
+
+    /**
+     * Enables or disables conditional fetch requests. If enabled, the ETag
+     * and Last-Modified headers of the responses of
+     * {@link #fetchOne(String, String)} and {@link #fetchAll(String)} are
+     * recorded along with the parsed entities and sent back with the next
+     * request of the same resource. If the backend answers with 304 - Not
+     * Modified, copies of the recorded entities are returned without
+     * transferring or parsing the payload again. The 64
+     * most recently fetched resources are recorded. Conditional requests are
+     * disabled by default.
+     *
+     * @param enabled true to enable conditional requests, false to disable them
+     *            and drop the recorded resources
+     */
+    public void setConditionalRequestsEnabled(boolean enabled) {
+        requestInvoker.setValidatorStore(
+                enabled ? new APYValidatorStore(APYValidatorStore.DEFAULT_MAX_RESOURCES) : null);
+    }
+
+    /**
+     * Sets the minimal size of a request body to be sent gzip compressed.
+     * Create and update requests whose JSON body reaches the given size are
+     * compressed, smaller bodies are sent as is since compressing them costs
+     * more than it saves. Only enable this if the backend accepts gzip
+     * encoded request bodies. Compressed responses are decoded regardless of
+     * this setting. Request compression is disabled by default.
+     *
+     * @param threshold the minimal body size in bytes, or 0 to disable request compression
+     * @throws IllegalArgumentException if the given threshold was negative
+     */
+    public void setRequestCompressionThreshold(int threshold) throws IllegalArgumentException {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The request compression threshold must be >= 0.");
+        }
+        requestInvoker.setRequestCompressionThreshold(threshold);
+    }
+
+    /**
+     * Enables or disables lazy decoding of fetched entities. If enabled, the
+     * properties of the entities returned by {@link #fetchAll(String)},
+     * {@link #fetchOne(String, String)} and the streaming fetches are kept as
+     * compact JSON text and only decoded once any of them is accessed or
+     * modified. ID, name and timestamps are available right away, so listing
+     * large collections of which only few entities are inspected costs little
+     * more than reading the response. Lazy decoding is disabled by default.
+     *
+     * @param enabled true to decode the properties of fetched entities on first access,
+     *            false to decode them while reading the response
+     */
+    public void setLazyDecodingEnabled(boolean enabled) {
+        requestInvoker.setLazyDecodingEnabled(enabled);
+    }
+
+    /**
+     * Sets the maximal number of requests a batch operation keeps in flight.
+     * The effective parallelism is additionally bounded by the number of
+     * worker threads and pooled connections.
+     *
+     * @param batchWindowSize the batch window size, must be >= 1
+     * @throws IllegalArgumentException if the given size was less than 1
+     */
+    public void setBatchWindowSize(int batchWindowSize) throws IllegalArgumentException {
+        if (batchWindowSize < 1) {
+            throw new IllegalArgumentException("The batch window size must be >= 1.");
+        }
+        this.batchWindowSize = batchWindowSize;
     }
 
     /**
@@ -361,6 +1596,202 @@ public class APYClient {
      */
     public void setRequestTimeout(int timeout) {
         this.requestTimeout = timeout;
+        requestInvoker.setTimeout(timeout);
+    }
+
+    /**
+     * Executes the given operation for all given entities in parallel and
+     * collects the outcome per entity.
+     *
+     * @param entities
+     *            the entities to process
+     * @param operation
+     *            the operation to execute per entity
+     * @return an {@link APYBatchResult} reporting the outcome per entity
+     * @throws IllegalArgumentException
+     *             if the given collection was null
+     */
+    private APYBatchResult executeBatch(Collection<APYEntity> entities, final BatchOperation operation)
+            throws IllegalArgumentException {
+        if (entities == null) {
+            throw new IllegalArgumentException("The given collection of entities was null.");
+        }
+
+        List<APYEntity> batch = new ArrayList<APYEntity>(entities);
+        List<Callable<String>> operations = new ArrayList<Callable<String>>(batch.size());
+        for (final APYEntity entity : batch) {
+            operations.add(new Callable<String>() {
+                @Override
+                public String call() throws APYException {
+                    return operation.execute(entity);
+                }
+            });
+        }
+
+        List<APYFuture<String>> futures = asyncEngine.submitWindowed(operations, batchWindowSize);
+
+        List<APYBatchResult.Item> items = new ArrayList<APYBatchResult.Item>(batch.size());
+        for (int index = 0; index < batch.size(); index++) {
+            APYEntity entity = batch.get(index);
+            try {
+                items.add(new APYBatchResult.Item(entity, futures.get(index).await(), null));
+            } catch (APYException e) {
+                items.add(new APYBatchResult.Item(entity, null, e));
+            }
+        }
+        return new APYBatchResult(items);
+    }
+
+    /**
+     * Submits the given operations to the async engine, keeping at most the
+     * batch window size of them in flight.
+     *
+     * @param operations
+     *            the operations to execute
+     * @return the {@link APYFuture}s of the operations' results, in their order
+     */
+    <T> List<APYFuture<T>> submitWindowed(List<? extends Callable<T>> operations) {
+        return asyncEngine.submitWindowed(operations, batchWindowSize);
+    }
+
+    /**
+     * Returns the executor the outcome of asynchronous operations is
+     * dispatched on.
+     *
+     * @return the callback {@link Executor}
+     */
+    Executor getCallbackExecutor() {
+        return asyncEngine.getCallbackExecutor();
+    }
+
+    /**
+     * Fetches the entities updated since the sync mark of the given store,
+     * and the IDs of all entities if removals are detected, and applies them
+     * to the store and the entity cache.
+     */
+    private APYSyncResult performSync(APYEntityStore store, String entityName, boolean detectRemovals)
+            throws APYException, IOException {
+        long syncMark = store.getSyncMark(entityName);
+        boolean fullSync = syncMark < 0;
+
+        List<APYEntity> fetchedEntities;
+        if (fullSync) {
+            fetchedEntities = requestInvoker.fetchAll(entityName, "");
+        } else {
+            // Entities updated in the same millisecond as the mark may have been missed, so fetch them again
+            APYQuery updatedQuery = new APYQuery().where(APYConstants.KEY_ENTITY_UPDATED_AT,
+                    APYQuery.Operator.GREATER_THAN_OR_EQUAL, APYUtils.formatTimestamp(syncMark));
+            fetchedEntities = requestInvoker.fetchAll(entityName, updatedQuery.toQueryString());
+        }
+
+        List<APYEntity> updatedEntities = new ArrayList<APYEntity>(fetchedEntities.size());
+        long newSyncMark = syncMark;
+        for (APYEntity entity : fetchedEntities) {
+            newSyncMark = Math.max(newSyncMark, entity.getUpdatedAt());
+            if (store.getUpdatedAt(entityName, entity.getId()) != entity.getUpdatedAt()) {
+                updatedEntities.add(entity);
+            }
+        }
+        if (fullSync) {
+            // Keep a mark even for an empty collection, so the next sync only fetches changes
+            newSyncMark = Math.max(0, newSyncMark);
+        }
+
+        Set<String> removedIds = new LinkedHashSet<String>();
+        if (fullSync || detectRemovals) {
+            Set<String> existingIds = new HashSet<String>();
+            if (fullSync) {
+                for (APYEntity entity : fetchedEntities) {
+                    existingIds.add(entity.getId());
+                }
+            } else {
+                APYQuery idQuery = new APYQuery().select(APYConstants.KEY_RESULT_OBJECT_ID);
+                for (APYEntity entity : requestInvoker.fetchAll(entityName, idQuery.toQueryString())) {
+                    existingIds.add(entity.getId());
+                }
+            }
+            for (String entityId : store.getIds(entityName)) {
+                if (!existingIds.contains(entityId)) {
+                    removedIds.add(entityId);
+                }
+            }
+        }
+
+        store.putAll(updatedEntities);
+        store.removeAll(entityName, removedIds);
+        store.setSyncMark(entityName, newSyncMark);
+
+        APYEntityCache cache = entityCache;
+        if (cache != null) {
+            for (APYEntity entity : updatedEntities) {
+                cache.put(entity);
+            }
+            for (String entityId : removedIds) {
+                cache.invalidate(entityName, entityId);
+            }
+        }
+        return new APYSyncResult(entityName, updatedEntities, removedIds, newSyncMark, fullSync);
+    }
+
+    /**
+     * Writes the given created or modified entity to the entity store, if
+     * any. Errors are logged and ignored.
+     */
+    private void storeEntity(APYEntity entity) {
+        APYEntityStore store = entityStore;
+        if (store != null && entity != null) {
+            try {
+                store.put(entity);
+            } catch (IOException e) {
+                Log.w(APYConstants.APITARY_LOG_TAG, "The entity could not be stored: ".concat(String.valueOf(e.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * Writes the given fetched entities to the entity store, if any, skipping
+     * those unchanged since they were stored. Errors are logged and ignored.
+     */
+    private void storeFetchedEntities(List<APYEntity> entities) {
+        APYEntityStore store = entityStore;
+        if (store != null && !entities.isEmpty()) {
+            try {
+                store.putFetched(entities);
+            } catch (IOException e) {
+                Log.w(APYConstants.APITARY_LOG_TAG, "The entities could not be stored: ".concat(String.valueOf(e.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * Removes the given entity from the entity store, if any. Errors are
+     * logged and ignored.
+     */
+    private void unstoreEntity(APYEntity entity) {
+        APYEntityStore store = entityStore;
+        if (store != null) {
+            try {
+                store.remove(entity.getName(), entity.getId());
+            } catch (IOException e) {
+                Log.w(APYConstants.APITARY_LOG_TAG, "The entity could not be removed from the store: "
+                        .concat(String.valueOf(e.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * Operation executed per entity of a batch.
+     */
+    private interface BatchOperation {
+
+        /**
+         * Executes the operation for the given entity.
+         *
+         * @param entity the entity to process
+         * @return the ID of the processed entity
+         * @throws APYException if the operation failed
+         */
+        String execute(APYEntity entity) throws APYException;
     }
 
 }
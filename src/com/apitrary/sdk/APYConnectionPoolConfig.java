@@ -0,0 +1,74 @@
+package com.apitrary.sdk;
+
+/**
+ * Configuration of the HTTP connections used by an {@link APYClient}.
+ * <p>
+ * <b>Notice:</b> Idle connections are kept in the platform's
+ * {@link java.net.HttpURLConnection} pool, which is shared by the whole
+ * process. Its size and idle eviction are not changed by this configuration;
+ * it only limits the connections of the configured client.
+ * </p>
+ */
+public class APYConnectionPoolConfig {
+
+    /**
+     * The default maximal number of concurrently used connections.
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 5;
+
+    /**
+     * Whether idle connections are kept alive for reuse.
+     */
+    private boolean keepAliveEnabled = true;
+
+    /**
+     * The maximal number of concurrently used connections.
+     */
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+    /**
+     * Returns whether idle connections are kept alive for reuse.
+     *
+     * @return true if connections are kept alive, false otherwise
+     */
+    public boolean isKeepAliveEnabled() {
+        return keepAliveEnabled;
+    }
+
+    /**
+     * Sets whether idle connections are kept alive for reuse. If disabled,
+     * requests ask the backend to close the connection and the client
+     * disconnects it once the response was read.
+     *
+     * @param keepAliveEnabled true to keep connections alive, false to close them after each request
+     */
+    public void setKeepAliveEnabled(boolean keepAliveEnabled) {
+        this.keepAliveEnabled = keepAliveEnabled;
+    }
+
+    /**
+     * Returns the maximal number of connections the client uses concurrently.
+     *
+     * @return the maximal number of connections
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximal number of connections the client uses concurrently.
+     * Requests exceeding this limit wait for a connection to become
+     * available, bounded by the request timeout.
+     *
+     * @param maxConnections the maximal number of connections, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given number was less than 1
+     */
+    public void setMaxConnections(int maxConnections) throws IllegalArgumentException {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("The maximal number of connections must be >= 1.");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+}
@@ -7,6 +7,11 @@ abstract class APYConstants {
 
     private APYConstants() {}
 
+    /**
+     * The apitrary log tag used for log output in Android log output.
+     */
+    static final String APITARY_LOG_TAG = "Apitrary";
+
     // Entity constants
 
     /**
@@ -1,16 +1,11 @@
 package com.apitrary.sdk;
 
-import android.os.AsyncTask;
-
 /**
- * {@link AsyncTask} implementation used to asynchronously create an APYEntity
+ * {@link APYAsyncTask} implementation used to asynchronously create an APYEntity
  * on the apitrary backend. Uses a {@link APYCreateCallback} to inform the
  * caller about the outcome.
- * <p>
- * <b>Notice:</b> The execute() method expects the entity to create as single {@link APYEntity} parameter.
- * </p>
  */
-class APYCreateTask extends AsyncTask<APYEntity, Void, APYEntity> {
+class APYCreateTask extends APYAsyncTask<APYEntity> {
 
     /**
      * Callback used to inform the caller about the outcome.
@@ -18,60 +13,57 @@ class APYCreateTask extends AsyncTask<APYEntity, Void, APYEntity> {
     private APYCreateCallback callback;
 
     /**
-     * Invoker for the HTTP request.
+     * Client executing the actual operation.
      */
-    private APYHttpRequestInvoker requestInvoker;
+    private APYClient client;
 
     /**
-     * Exception that might have occurred during "doInBackground()" and is
-     * evaluated in "onPostExecute()".
+     * The entity to create.
      */
-    private Exception occuredException;
+    private APYEntity entity;
 
     /**
      * Constructs an instance of {@link APYCreateTask}.
      * 
-     * @param requestInvoker
-     *            the {@link APYHttpRequestInvoker} instance used to invoke the
-     *            actual request.
+     * @param client
+     *            the {@link APYClient} instance used to execute the actual
+     *            operation.
      * @param callback
      *            the callback used to inform the caller about the outcome. May
      *            be null if the caller is not interested in the outcome.
+     * @param entity
+     *            the entity to create
      */
-    APYCreateTask(APYHttpRequestInvoker requestInvoker, APYCreateCallback callback) {
+    APYCreateTask(APYClient client, APYCreateCallback callback, APYEntity entity) {
         // TODO Validate parameters
-        this.requestInvoker = requestInvoker;
+        this.client = client;
         this.callback = callback;
+        this.entity = entity;
     }
 
     @Override
-    protected APYEntity doInBackground(APYEntity... params) {
-        APYEntity entity = params[0];
+    protected APYEntity doInBackground() throws APYException {
+        return client.create(entity);
+    }
 
-        try {
-            entity = requestInvoker.create(entity);
-        } catch (IllegalArgumentException e) {
-            occuredException = e;
-        } catch (APYException e) {
-            occuredException = e;
+    @Override
+    protected void onPostExecute(APYEntity createdEntity) {
+        if (callback == null) {
+            return;
         }
 
-        return entity;
+        callback.onSuccess(createdEntity);
     }
 
     @Override
-    protected void onPostExecute(APYEntity createdEntity) {
+    protected void onFailure(Exception occuredException) {
         if (callback == null) {
             return;
         }
 
-        if (occuredException != null) {
-            callback.onSuccess(createdEntity);
-        } else {
-            callback.onError(new APYException(
-                    "Entity could not be created. For further information about the actual problem, "
-                    + "please inspect the 'cause' object.", occuredException));
-        }
+        callback.onError(new APYException(
+                "Entity could not be created. For further information about the actual problem, "
+                + "please inspect the 'cause' object.", occuredException));
     }
 
 }
@@ -1,16 +1,11 @@
 package com.apitrary.sdk;
 
-import android.os.AsyncTask;
-
 /**
- * {@link AsyncTask} implementation used to asynchronously delete an APYEntity
+ * {@link APYAsyncTask} implementation used to asynchronously delete an APYEntity
  * on the apitrary backend. Uses a {@link APYDeleteCallback} to inform the
  * caller about the outcome.
- * <p>
- * <b>Notice:</b> The execute() method expects the entity to delete as single {@link APYEntity} parameter.
- * </p>
  */
-class APYDeleteTask extends AsyncTask<APYEntity, Void, String> {
+class APYDeleteTask extends APYAsyncTask<String> {
 
     /**
      * Callback used to inform the caller about the outcome.
@@ -18,61 +13,57 @@ class APYDeleteTask extends AsyncTask<APYEntity, Void, String> {
     private APYDeleteCallback callback;
 
     /**
-     * Invoker for the HTTP request.
+     * Client executing the actual operation.
      */
-    private APYHttpRequestInvoker requestInvoker;
+    private APYClient client;
 
     /**
-     * Exception that might have occurred during "doInBackground()" and is
-     * evaluated in "onPostExecute()".
+     * The entity to delete.
      */
-    private Exception occuredException;
+    private APYEntity entity;
 
     /**
      * Constructs an instance of {@link APYDeleteTask}.
      * 
-     * @param requestInvoker
-     *            the {@link APYHttpRequestInvoker} instance used to invoke the
-     *            actual request.
+     * @param client
+     *            the {@link APYClient} instance used to execute the actual
+     *            operation.
      * @param callback
      *            the callback used to inform the caller about the outcome. May
      *            be null if the caller is not interested in the outcome.
+     * @param entity
+     *            the entity to delete
      */
-    APYDeleteTask(APYHttpRequestInvoker requestInvoker, APYDeleteCallback callback) {
+    APYDeleteTask(APYClient client, APYDeleteCallback callback, APYEntity entity) {
         // TODO Validate parameters
-        this.requestInvoker = requestInvoker;
+        this.client = client;
         this.callback = callback;
+        this.entity = entity;
     }
 
     @Override
-    protected String doInBackground(APYEntity... params) {
-        APYEntity entity = params[0];
-        String deletedEntityId = null;
+    protected String doInBackground() throws APYException {
+        return client.delete(entity);
+    }
 
-        try {
-            deletedEntityId = requestInvoker.delete(entity);
-        } catch (IllegalArgumentException e) {
-            occuredException = e;
-        } catch (APYException e) {
-            occuredException = e;
+    @Override
+    protected void onPostExecute(String deletedEntityId) {
+        if (callback == null) {
+            return;
         }
 
-        return deletedEntityId;
+        callback.onSuccess(deletedEntityId);
     }
 
     @Override
-    protected void onPostExecute(String deletedEntityId) {
+    protected void onFailure(Exception occuredException) {
         if (callback == null) {
             return;
         }
 
-        if (occuredException != null) {
-            callback.onSuccess(deletedEntityId);
-        } else {
-            callback.onError(new APYException(
-                    "Entity could not be deleted. For further information about the actual problem, "
-                    + "please inspect the 'cause' object.", occuredException));
-        }
+        callback.onError(new APYException(
+                "Entity could not be deleted. For further information about the actual problem, "
+                + "please inspect the 'cause' object.", occuredException));
     }
 
 }
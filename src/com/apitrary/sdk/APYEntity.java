@@ -1,12 +1,23 @@
 package com.apitrary.sdk;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Apitrary entity class. Instances of this class have four standard fields: id, name, createdAt and updatedAt.
  * For additional properties use the get(), put() and delete() methods. 
+ * <p>
+ * An entity keeps track of the properties put or removed since it was fetched,
+ * created or updated the last time, so that {@link APYClient#patch(APYEntity)}
+ * can send only the changes.
+ * </p>
+ * <p>
+ * <b>Notice:</b> Entities are not synchronized. An entity which is no
+ * longer modified can be read from multiple threads, including a lazily
+ * decoded one, whose properties are decoded once under the entity's lock.
+ * </p>
  * 
  * @author Sebastian Engel <se@apitrary.com>
  *
@@ -34,9 +45,29 @@ public class APYEntity {
     private long updatedAt;
 
     /**
-     * The properties of this entity as a map of key/value pairs.
+     * The properties of this entity as key/value pairs. The keys are shared
+     * with other entities of the same name.
      */
-    private Map<String, String> properties = new HashMap<String, String>();
+    private APYPropertyStore properties;
+
+    /**
+     * The keys of the properties put since this entity was last in sync with
+     * the backend, or null if there are none.
+     */
+    private Set<String> changedKeys;
+
+    /**
+     * The keys of the properties removed since this entity was last in sync
+     * with the backend, or null if there are none.
+     */
+    private Set<String> removedKeys;
+
+    /**
+     * The JSON text of the properties of a lazily read entity which was not
+     * decoded yet, or null if the properties are decoded. Cleared only after
+     * the decoded properties were published.
+     */
+    private volatile String lazyData;
 
     /**
      * Constructs an instance of {@link APYEntity} with the given name.
@@ -52,6 +83,7 @@ public class APYEntity {
             throw new IllegalArgumentException("The entity's name must not be null or empty.");
         }
         this.name = name.trim();
+        this.properties = new APYPropertyStore(APYEntityShape.root(this.name));
     }
 
     /**
@@ -63,7 +95,148 @@ public class APYEntity {
      *         matches.
      */
     public String get(String propertyKey) {
-        return properties.get(propertyKey);
+        decodeLazyData();
+        return properties.getString(propertyKey);
+    }
+
+    /**
+     * Returns the value for the given key as long. Number properties are
+     * returned without any conversion from or to strings, string properties
+     * are parsed.
+     * 
+     * @param propertyKey
+     *            the key of the property to get the value for.
+     * @param defaultValue
+     *            the value to return if there is no such property or its value
+     *            is no number
+     * @return the value of the property matching the given key or the default
+     *         value
+     */
+    public long getLong(String propertyKey, long defaultValue) {
+        decodeLazyData();
+        switch (properties.getType(propertyKey)) {
+        case APYPropertyStore.TYPE_LONG:
+            return properties.getPrimitive(propertyKey);
+        case APYPropertyStore.TYPE_DOUBLE:
+            return (long) Double.longBitsToDouble(properties.getPrimitive(propertyKey));
+        case APYPropertyStore.TYPE_STRING:
+            String value = properties.getString(propertyKey);
+            if (value != null) {
+                try {
+                    return Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    // Not a number, fall through
+                }
+            }
+            return defaultValue;
+        default:
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value for the given key as long, or 0 if there is no such
+     * property or its value is no number.
+     * 
+     * @param propertyKey
+     *            the key of the property to get the value for.
+     * @return the value of the property matching the given key or 0
+     * @see #getLong(String, long)
+     */
+    public long getLong(String propertyKey) {
+        return getLong(propertyKey, 0L);
+    }
+
+    /**
+     * Returns the value for the given key as double. Number properties are
+     * returned without any conversion from or to strings, string properties
+     * are parsed.
+     * 
+     * @param propertyKey
+     *            the key of the property to get the value for.
+     * @param defaultValue
+     *            the value to return if there is no such property or its value
+     *            is no number
+     * @return the value of the property matching the given key or the default
+     *         value
+     */
+    public double getDouble(String propertyKey, double defaultValue) {
+        decodeLazyData();
+        switch (properties.getType(propertyKey)) {
+        case APYPropertyStore.TYPE_DOUBLE:
+            return Double.longBitsToDouble(properties.getPrimitive(propertyKey));
+        case APYPropertyStore.TYPE_LONG:
+            return properties.getPrimitive(propertyKey);
+        case APYPropertyStore.TYPE_STRING:
+            String value = properties.getString(propertyKey);
+            if (value != null) {
+                try {
+                    return Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    // Not a number, fall through
+                }
+            }
+            return defaultValue;
+        default:
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value for the given key as double, or 0 if there is no such
+     * property or its value is no number.
+     * 
+     * @param propertyKey
+     *            the key of the property to get the value for.
+     * @return the value of the property matching the given key or 0
+     * @see #getDouble(String, double)
+     */
+    public double getDouble(String propertyKey) {
+        return getDouble(propertyKey, 0d);
+    }
+
+    /**
+     * Returns the value for the given key as boolean. Boolean properties are
+     * returned without any conversion from or to strings, the string
+     * properties "true" and "false" are parsed ignoring case.
+     * 
+     * @param propertyKey
+     *            the key of the property to get the value for.
+     * @param defaultValue
+     *            the value to return if there is no such property or its value
+     *            is no boolean
+     * @return the value of the property matching the given key or the default
+     *         value
+     */
+    public boolean getBoolean(String propertyKey, boolean defaultValue) {
+        decodeLazyData();
+        switch (properties.getType(propertyKey)) {
+        case APYPropertyStore.TYPE_BOOLEAN:
+            return properties.getPrimitive(propertyKey) != 0;
+        case APYPropertyStore.TYPE_STRING:
+            String value = properties.getString(propertyKey);
+            if ("true".equalsIgnoreCase(value)) {
+                return true;
+            } else if ("false".equalsIgnoreCase(value)) {
+                return false;
+            }
+            return defaultValue;
+        default:
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the value for the given key as boolean, or false if there is no
+     * such property or its value is no boolean.
+     * 
+     * @param propertyKey
+     *            the key of the property to get the value for.
+     * @return the value of the property matching the given key or false
+     * @see #getBoolean(String, boolean)
+     */
+    public boolean getBoolean(String propertyKey) {
+        return getBoolean(propertyKey, false);
     }
 
     /**
@@ -81,7 +254,80 @@ public class APYEntity {
         if (APYUtils.isNullOrEmpty(propertyKey)) {
             throw new IllegalArgumentException("The property key must not be null or empty.");
         }
-        properties.put(propertyKey, propertyValue);
+        decodeLazyData();
+        if (properties.putString(propertyKey, propertyValue)) {
+            markChanged(propertyKey);
+        }
+    }
+
+    /**
+     * Adds a long property for the given key/value pair to this entity or
+     * updates the value if a property with the given key already exists. The
+     * value is stored and sent as a JSON number, without conversion to a string.
+     * 
+     * @param propertyKey
+     *            the property's key
+     * @param propertyValue
+     *            the value to set
+     * @throws IllegalArgumentException
+     *             when the property key is null or empty
+     */
+    public void putLong(String propertyKey, long propertyValue) throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(propertyKey)) {
+            throw new IllegalArgumentException("The property key must not be null or empty.");
+        }
+        decodeLazyData();
+        if (properties.putLong(propertyKey, propertyValue)) {
+            markChanged(propertyKey);
+        }
+    }
+
+    /**
+     * Adds a double property for the given key/value pair to this entity or
+     * updates the value if a property with the given key already exists. The
+     * value is stored and sent as a JSON number, without conversion to a string.
+     * 
+     * @param propertyKey
+     *            the property's key
+     * @param propertyValue
+     *            the value to set
+     * @throws IllegalArgumentException
+     *             when the property key is null or empty, or the value is not
+     *             a finite number, which JSON can not represent
+     */
+    public void putDouble(String propertyKey, double propertyValue) throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(propertyKey)) {
+            throw new IllegalArgumentException("The property key must not be null or empty.");
+        }
+        if (Double.isNaN(propertyValue) || Double.isInfinite(propertyValue)) {
+            throw new IllegalArgumentException("The property value must be a finite number.");
+        }
+        decodeLazyData();
+        if (properties.putDouble(propertyKey, propertyValue)) {
+            markChanged(propertyKey);
+        }
+    }
+
+    /**
+     * Adds a boolean property for the given key/value pair to this entity or
+     * updates the value if a property with the given key already exists. The
+     * value is stored and sent as a JSON boolean, without conversion to a string.
+     * 
+     * @param propertyKey
+     *            the property's key
+     * @param propertyValue
+     *            the value to set
+     * @throws IllegalArgumentException
+     *             when the property key is null or empty
+     */
+    public void putBoolean(String propertyKey, boolean propertyValue) throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(propertyKey)) {
+            throw new IllegalArgumentException("The property key must not be null or empty.");
+        }
+        decodeLazyData();
+        if (properties.putBoolean(propertyKey, propertyValue)) {
+            markChanged(propertyKey);
+        }
     }
 
     /**
@@ -91,7 +337,147 @@ public class APYEntity {
      *            the key of the property to delete
      */
     public void remove(String propertyKey) {
-        properties.remove(propertyKey);
+        decodeLazyData();
+        if (properties.remove(propertyKey)) {
+            if (changedKeys != null) {
+                changedKeys.remove(propertyKey);
+            }
+            if (removedKeys == null) {
+                removedKeys = new HashSet<String>();
+            }
+            removedKeys.add(propertyKey);
+        }
+    }
+
+    /**
+     * Hands all properties of this entity to the given visitor, in the order
+     * they were added. Each property is handed over by the method matching the
+     * type it is stored with. Neither the properties nor their values are
+     * copied, so this is the cheapest way to read all properties.
+     * <p>
+     * <b>Notice:</b> The entity must not be modified while it is visited.
+     * </p>
+     * 
+     * @param visitor
+     *            the {@link APYPropertyVisitor} to hand the properties to
+     * @throws IllegalArgumentException
+     *             when the visitor is null
+     */
+    public void visitProperties(APYPropertyVisitor visitor) throws IllegalArgumentException {
+        if (visitor == null) {
+            throw new IllegalArgumentException("The given visitor was null.");
+        }
+        decodeLazyData();
+        properties.accept(visitor);
+    }
+
+    /**
+     * Returns whether any property was put or removed since this entity was
+     * fetched, created or updated the last time.
+     * 
+     * @return true if this entity has unsaved changes, false otherwise
+     */
+    public boolean isDirty() {
+        return (changedKeys != null && !changedKeys.isEmpty()) || (removedKeys != null && !removedKeys.isEmpty());
+    }
+
+    /**
+     * Returns the keys of the properties put since this entity was fetched,
+     * created or updated the last time.
+     * 
+     * @return an unmodifiable set of the changed property keys
+     */
+    public Set<String> getChangedKeys() {
+        return changedKeys != null ? Collections.unmodifiableSet(changedKeys) : Collections.<String>emptySet();
+    }
+
+    /**
+     * Returns the keys of the properties removed since this entity was
+     * fetched, created or updated the last time.
+     * 
+     * @return an unmodifiable set of the removed property keys
+     */
+    public Set<String> getRemovedKeys() {
+        return removedKeys != null ? Collections.unmodifiableSet(removedKeys) : Collections.<String>emptySet();
+    }
+
+    /**
+     * Records the given key as changed.
+     */
+    private void markChanged(String propertyKey) {
+        if (changedKeys == null) {
+            changedKeys = new HashSet<String>();
+        }
+        changedKeys.add(propertyKey);
+        if (removedKeys != null) {
+            removedKeys.remove(propertyKey);
+        }
+    }
+
+    /**
+     * Marks this entity as being in sync with the backend, i.e. forgets all
+     * changed and removed property keys.
+     */
+    void markClean() {
+        changedKeys = null;
+        removedKeys = null;
+    }
+
+    /**
+     * Keeps the given JSON text of the entity's '_data' object, which is
+     * decoded into its properties on first access.
+     *
+     * @param lazyData
+     *            the JSON text of the properties
+     */
+    void setLazyData(String lazyData) {
+        this.lazyData = lazyData;
+    }
+
+    /**
+     * Returns the kept JSON text of a lazily read entity.
+     *
+     * @return the JSON text of the properties, or null if they are decoded already
+     */
+    String getLazyData() {
+        return lazyData;
+    }
+
+    /**
+     * Decodes the kept JSON text of a lazily read entity into its properties.
+     * Does nothing if the properties are decoded already. The text is decoded
+     * into a separate entity whose properties are taken over as a whole, so
+     * concurrent readers never see partially decoded properties.
+     */
+    private void decodeLazyData() {
+        if (lazyData == null) {
+            return;
+        }
+
+        synchronized (this) {
+            String data = lazyData;
+            if (data == null) {
+                return;
+            }
+
+            APYEntity decoded = new APYEntity(name);
+            try {
+                APYEntityReader.decodeLazyData(decoded, data);
+            } catch (IOException e) {
+                // The text was written by the reader itself, so this can not happen
+                throw new IllegalStateException("The properties of the entity could not be decoded.", e);
+            }
+            properties = decoded.properties;
+            lazyData = null;
+        }
+    }
+
+    /**
+     * Releases unused capacity of the property storage, e.g. once the entity
+     * was completely read.
+     */
+    void trimToSize() {
+        properties.trimToSize();
     }
 
     /**
@@ -159,17 +545,43 @@ public class APYEntity {
     }
 
     /**
-     * Returns a copy of the entity's {@link Map} of properties.
+     * Returns the value for the given key as {@link String}, {@link Long},
+     * {@link Double} or {@link Boolean}, depending on how it was stored.
+     * 
+     * @param propertyKey
+     *            the key of the property to get the value for.
+     * @return the value or null if there is no such property
+     */
+    Object getValue(String propertyKey) {
+        decodeLazyData();
+        return properties.getValue(propertyKey);
+    }
+
+    /**
+     * Returns a copy of this entity including its ID, timestamps and properties.
      * 
-     * @return a copy of the entity's {@link Map} of properties
+     * @return a copy of this entity
      */
-    Map<String, String> getProperties() {
-        return new LinkedHashMap<String, String>(properties);
+    synchronized APYEntity copy() {
+        APYEntity copy = new APYEntity(name);
+        copy.id = id;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        copy.properties = properties.copy();
+        copy.lazyData = lazyData;
+        if (changedKeys != null) {
+            copy.changedKeys = new HashSet<String>(changedKeys);
+        }
+        if (removedKeys != null) {
+            copy.removedKeys = new HashSet<String>(removedKeys);
+        }
+        return copy;
     }
 
     @Override
     public String toString() {
-        return "Entity '" + name + "'\n" + properties.toString();
+        decodeLazyData();
+        return "Entity '" + name + "'\n" + properties.toMap().toString();
     }
 
 }
@@ -0,0 +1,239 @@
+package com.apitrary.sdk;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded in-memory cache of entities keyed by entity name and ID. Entries
+ * expire after a fixed time to live, and the least recently used entry is
+ * evicted once the cache is full. The cache stores and returns copies, so
+ * callers may modify the returned entities freely.
+ * <p>
+ * Instances of this class are thread-safe. Hit, miss and eviction counters
+ * are provided to tune the capacity.
+ * </p>
+ */
+public class APYEntityCache {
+
+    /**
+     * A cached entity and the time it expires.
+     */
+    private static final class CacheEntry {
+
+        private final APYEntity entity;
+
+        private final long expiresAt;
+
+        CacheEntry(APYEntity entity, long expiresAt) {
+            this.entity = entity;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * The maximal number of cached entities.
+     */
+    private final int maxSize;
+
+    /**
+     * The time to live of an entry in milliseconds.
+     */
+    private final long timeToLive;
+
+    /**
+     * The cached entries in access order, guarded by itself.
+     */
+    private final LinkedHashMap<String, CacheEntry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructs an instance of {@link APYEntityCache}.
+     *
+     * @param maxSize
+     *            the maximal number of cached entities, must be >= 1
+     * @param timeToLive
+     *            the time in milliseconds an entity is served from the cache
+     *            after it was stored, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given size or time to live was less than 1
+     */
+    public APYEntityCache(int maxSize, long timeToLive) throws IllegalArgumentException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximal cache size must be >= 1.");
+        }
+
+        if (timeToLive < 1) {
+            throw new IllegalArgumentException("The time to live must be >= 1.");
+        }
+
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > APYEntityCache.this.maxSize) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the cached entity for the given name and ID.
+     *
+     * @param entityName
+     *            the name of the entity
+     * @param entityId
+     *            the ID of the entity
+     * @return a copy of the cached {@link APYEntity} or null if none is cached
+     *         or the cached one expired
+     */
+    public APYEntity get(String entityName, String entityId) {
+        String key = toKey(entityName, entityId);
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(key);
+                evictionCount.incrementAndGet();
+                entry = null;
+            }
+        }
+
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.entity.copy();
+    }
+
+    /**
+     * Stores a copy of the given entity, replacing any cached one with the
+     * same name and ID. Entities without an ID are ignored.
+     *
+     * @param entity
+     *            the entity to store
+     */
+    public void put(APYEntity entity) {
+        if (entity == null || entity.getId() == null) {
+            return;
+        }
+
+        CacheEntry entry = new CacheEntry(entity.copy(), System.currentTimeMillis() + timeToLive);
+        String key = toKey(entity.getName(), entity.getId());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes the cached entity for the given name and ID.
+     *
+     * @param entityName
+     *            the name of the entity
+     * @param entityId
+     *            the ID of the entity
+     */
+    public void invalidate(String entityName, String entityId) {
+        String key = toKey(entityName, entityId);
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Removes all expired entities.
+     */
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            for (Iterator<CacheEntry> iterator = entries.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().expiresAt <= now) {
+                    iterator.remove();
+                    evictionCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached entities.
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Returns the number of cached entities, including expired ones not
+     * evicted yet.
+     *
+     * @return the number of cached entities
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Returns the maximal number of cached entities.
+     *
+     * @return the maximal cache size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups not served from the cache.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of entities removed because the cache was full or
+     * because they expired.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Returns the key of the given entity name and ID. Entity names are case
+     * insensitive.
+     */
+    private static String toKey(String entityName, String entityId) {
+        return entityName.toLowerCase(Locale.US).concat("/").concat(entityId);
+    }
+
+}
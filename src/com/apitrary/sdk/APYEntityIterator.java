@@ -0,0 +1,238 @@
+package com.apitrary.sdk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link Iterator} handing over the entities of a fetch operation while they
+ * are read off the open connection. Entities are only read when requested, so
+ * the first entity is available as soon as it arrived, regardless of the size
+ * of the collection.
+ * <p>
+ * The iterator holds a connection until all entities were read or until
+ * {@link #close()} is called. Closing the iterator before the end was reached
+ * aborts the connection, so always close it in a finally block.
+ * </p>
+ * <p>
+ * <b>Notice:</b> As {@link Iterator} does not allow checked exceptions,
+ * {@link #hasNext()} and {@link #next()} throw an {@link IllegalStateException}
+ * whose cause is an {@link APYException} if the entities could not be read.
+ * Instances of this class are not thread-safe.
+ * </p>
+ */
+public class APYEntityIterator implements Iterator<APYEntity>, Closeable {
+
+    /**
+     * The transport the connection was opened with.
+     */
+    private final APYHttpTransport transport;
+
+    /**
+     * The connection the entities are read from.
+     */
+    private final HttpURLConnection connection;
+
+    /**
+     * The reader decoding the entities of the response.
+     */
+    private final APYEntityReader entityReader;
+
+    /**
+     * The name of the entities read by this iterator.
+     */
+    private final String entityName;
+
+    /**
+     * The entity read ahead by {@link #hasNext()}, or null.
+     */
+    private APYEntity nextEntity;
+
+    /**
+     * Whether the end of the response was reached.
+     */
+    private boolean finished;
+
+    /**
+     * Whether this iterator was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs an instance of {@link APYEntityIterator}.
+     *
+     * @param transport
+     *            the {@link APYHttpTransport} to release the connection to
+     * @param connection
+     *            the open connection the entities are read from
+     * @param entityReader
+     *            the {@link APYEntityReader} positioned in front of the first entity
+     * @param entityName
+     *            the name of the entities
+     */
+    APYEntityIterator(APYHttpTransport transport, HttpURLConnection connection,
+            APYEntityReader entityReader, String entityName) {
+        this.transport = transport;
+        this.connection = connection;
+        this.entityReader = entityReader;
+        this.entityName = entityName;
+    }
+
+    /**
+     * Returns true if there is another entity. Reads the next entity off the
+     * connection if necessary and closes this iterator once the end was
+     * reached.
+     *
+     * @throws IllegalStateException
+     *             if the next entity could not be read. The cause is an
+     *             {@link APYException} describing the problem.
+     */
+    @Override
+    public boolean hasNext() throws IllegalStateException {
+        if (nextEntity == null && !finished && !closed) {
+            try {
+                nextEntity = readEntity();
+            } catch (IOException e) {
+                throw new IllegalStateException(new APYException(
+                        "Entities of type '".concat(entityName).concat("' could not be read."), e));
+            }
+        }
+        return nextEntity != null;
+    }
+
+    /**
+     * Returns the next entity.
+     *
+     * @throws NoSuchElementException
+     *             if there are no more entities
+     * @throws IllegalStateException
+     *             if the next entity could not be read. The cause is an
+     *             {@link APYException} describing the problem.
+     */
+    @Override
+    public APYEntity next() throws NoSuchElementException, IllegalStateException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        APYEntity entity = nextEntity;
+        nextEntity = null;
+        return entity;
+    }
+
+    /**
+     * Not supported.
+     *
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public void remove() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("Entities can not be removed from an APYEntityIterator.");
+    }
+
+    /**
+     * Releases the connection. If not all entities were read yet, the
+     * connection is aborted. Calling this method more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        nextEntity = null;
+
+        if (finished) {
+            try {
+                entityReader.close();
+            } catch (IOException e) {
+                // The response was read completely, nothing left to clean up
+            }
+        }
+        transport.release(connection, finished);
+    }
+
+    /**
+     * Returns the value of the given header of the response the entities are
+     * read from.
+     *
+     * @param name
+     *            the name of the header
+     * @return the header value or null if the response carried no such header
+     */
+    String getHeaderField(String name) {
+        return connection.getHeaderField(name);
+    }
+
+    /**
+     * Returns the number of entities read off the response so far, including
+     * skipped placeholders.
+     *
+     * @return the number of read entities
+     */
+    int getResultCount() {
+        return entityReader.getResultCount();
+    }
+
+    /**
+     * Reads the next entity off the connection, closing this iterator once the
+     * end was reached or reading failed.
+     *
+     * @return the next {@link APYEntity} or null if there are no more entities
+     * @throws IOException
+     *             if the next entity could not be read
+     */
+    APYEntity readEntity() throws IOException {
+        if (closed) {
+            return null;
+        }
+
+        APYEntity entity;
+        try {
+            entity = entityReader.nextEntity();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        if (entity == null) {
+            finished = true;
+            close();
+        }
+        return entity;
+    }
+
+    /**
+     * Reads the next entity off the connection into a new object of the class
+     * of the given mapper, closing this iterator once the end was reached or
+     * reading failed.
+     *
+     * @param mapper
+     *            the {@link APYMapper} of the class to read the entity into
+     * @return the next object or null if there are no more entities
+     * @throws IOException
+     *             if the next entity could not be read
+     */
+    <T> T readObject(APYMapper<T> mapper) throws IOException {
+        if (closed) {
+            return null;
+        }
+
+        T object;
+        try {
+            object = entityReader.nextObject(mapper);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        if (object == null) {
+            finished = true;
+            close();
+        }
+        return object;
+    }
+
+}
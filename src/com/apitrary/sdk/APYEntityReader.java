@@ -0,0 +1,579 @@
+package com.apitrary.sdk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+/**
+ * Reads {@link APYEntity} instances from an apitrary JSON response stream
+ * using an {@link APYJsonReader}. Entities are decoded one at a time while
+ * reading, so the response is never materialized as a whole.
+ * <p>
+ * <b>Notice:</b> Instances of this class are not thread-safe.
+ * </p>
+ */
+class APYEntityReader implements Closeable {
+
+    /**
+     * The charset of apitrary JSON responses.
+     */
+    private static final String RESPONSE_CHARSET = "UTF-8";
+
+    /**
+     * The pull parser reading the response.
+     */
+    private final APYJsonReader jsonReader;
+
+    /**
+     * The name of the entities to read.
+     */
+    private final String entityName;
+
+    /**
+     * Whether the '_data' objects are kept as JSON text and decoded on first
+     * access instead of while reading.
+     */
+    private final boolean lazyDecoding;
+
+    /**
+     * Whether the end of the 'result' array was reached.
+     */
+    private boolean resultArrayFinished;
+
+    /**
+     * The number of result objects read off the 'result' array so far,
+     * including placeholders.
+     */
+    private int resultCount;
+
+    /**
+     * Whether the result object read last was a placeholder carrying an
+     * '_init' property.
+     */
+    private boolean placeholderRead;
+
+    /**
+     * Constructs an instance of {@link APYEntityReader} reading from the given
+     * response stream and decoding the entities while reading.
+     *
+     * @param responseStream
+     *            the {@link InputStream} to read the JSON response from
+     * @param entityName
+     *            the name of the entities to read
+     * @throws IOException
+     *             if the UTF-8 charset is not supported
+     */
+    APYEntityReader(InputStream responseStream, String entityName) throws IOException {
+        this(responseStream, entityName, false);
+    }
+
+    /**
+     * Constructs an instance of {@link APYEntityReader} reading from the given
+     * response stream.
+     *
+     * @param responseStream
+     *            the {@link InputStream} to read the JSON response from
+     * @param entityName
+     *            the name of the entities to read
+     * @param lazyDecoding
+     *            true to keep the properties of the entities as JSON text
+     *            which is decoded on first access, false to decode them while
+     *            reading
+     * @throws IOException
+     *             if the UTF-8 charset is not supported
+     */
+    APYEntityReader(InputStream responseStream, String entityName, boolean lazyDecoding) throws IOException {
+        this(new APYJsonReader(new InputStreamReader(responseStream, RESPONSE_CHARSET)), entityName, lazyDecoding);
+    }
+
+    private APYEntityReader(APYJsonReader jsonReader, String entityName, boolean lazyDecoding) {
+        this.jsonReader = jsonReader;
+        this.entityName = entityName;
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Decodes the '_data' JSON text kept by a lazily read entity into its
+     * properties.
+     *
+     * @param entity
+     *            the entity to decode the properties into
+     * @param lazyData
+     *            the JSON text of the entity's '_data' object
+     * @throws IOException
+     *             if the JSON text was malformed
+     */
+    static void decodeLazyData(APYEntity entity, String lazyData) throws IOException {
+        APYEntityReader entityReader = new APYEntityReader(
+                new APYJsonReader(new StringReader(lazyData)), entity.getName(), false);
+        entityReader.readEntityData(entity);
+    }
+
+    /**
+     * Positions the reader in front of the first element of the response's
+     * 'result' array. Call {@link #nextEntity()} to read the elements.
+     *
+     * @throws IOException
+     *             if the response could not be read, was malformed or had no
+     *             'result' array
+     */
+    void beginResultArray() throws IOException {
+        beginResult();
+        jsonReader.beginArray();
+    }
+
+    /**
+     * Reads the next entity of the 'result' array. Placeholder entities
+     * carrying an '_init' property are skipped.
+     *
+     * @return the next {@link APYEntity} or null if the end of the array was reached
+     * @throws IOException
+     *             if the response could not be read or was malformed
+     */
+    APYEntity nextEntity() throws IOException {
+        while (!resultArrayFinished) {
+            if (!jsonReader.hasNext()) {
+                jsonReader.endArray();
+                finishResponse();
+                resultArrayFinished = true;
+                return null;
+            }
+
+            APYEntity entity = readResultObject();
+            resultCount++;
+            if (!isPlaceholderRead()) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the next entity of the 'result' array into a new object of the
+     * class of the given mapper. Placeholder entities carrying an '_init'
+     * property are skipped.
+     *
+     * @param mapper
+     *            the {@link APYMapper} of the class to read the entity into
+     * @return the next object or null if the end of the array was reached
+     * @throws IOException
+     *             if the response could not be read or was malformed
+     */
+    <T> T nextObject(APYMapper<T> mapper) throws IOException {
+        while (!resultArrayFinished) {
+            if (!jsonReader.hasNext()) {
+                jsonReader.endArray();
+                finishResponse();
+                resultArrayFinished = true;
+                return null;
+            }
+
+            T object = readResultObject(mapper);
+            resultCount++;
+            if (!isPlaceholderRead()) {
+                return object;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the result object read last was a placeholder carrying
+     * an '_init' property, which is skipped.
+     */
+    private boolean isPlaceholderRead() {
+        // Filter out the _init object
+        // TODO Remove this as soon as we stopped returning the _init object
+        return placeholderRead;
+    }
+
+    /**
+     * Remembers a placeholder if the given '_data' property, whose value is
+     * about to be read, is a non-null '_init' property.
+     */
+    private void notePlaceholder(String propertyKey) throws IOException {
+        if (propertyKey.equals("_init") && jsonReader.peek() != APYJsonReader.Token.NULL) {
+            placeholderRead = true;
+        }
+    }
+
+    /**
+     * Returns the number of result objects read off the 'result' array so
+     * far, including skipped placeholders.
+     *
+     * @return the number of read result objects
+     */
+    int getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * Reads the entity contained in the response's 'result' object.
+     *
+     * @return the read {@link APYEntity}
+     * @throws IOException
+     *             if the response could not be read, was malformed or had no
+     *             'result' object
+     */
+    APYEntity readResultEntity() throws IOException {
+        beginResult();
+        APYEntity entity = readResultObject();
+        finishResponse();
+        return entity;
+    }
+
+    /**
+     * Reads the '_id' property of the response's 'result' object.
+     *
+     * @return the ID contained in the 'result' object
+     * @throws IOException
+     *             if the response could not be read, was malformed or had no
+     *             'result' object containing an '_id'
+     */
+    String readResultId() throws IOException {
+        beginResult();
+
+        String id = null;
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (jsonReader.nextName().equals(APYConstants.KEY_RESULT_OBJECT_ID)) {
+                id = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+        finishResponse();
+
+        if (id == null) {
+            throw new APYMalformedResponseException("The result object has no '_id' property.");
+        }
+        return id;
+    }
+
+    /**
+     * Closes the underlying response stream.
+     */
+    @Override
+    public void close() throws IOException {
+        jsonReader.close();
+    }
+
+    /**
+     * Positions the reader at the value of the response's 'result' property,
+     * skipping any preceding properties.
+     */
+    private void beginResult() throws IOException {
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (jsonReader.nextName().equals(APYConstants.KEY_RESPONSE_RESULT)) {
+                return;
+            }
+            jsonReader.skipValue();
+        }
+        throw new APYMalformedResponseException("The response has no 'result' property.");
+    }
+
+    /**
+     * Skips the properties following the 'result' property and consumes the
+     * end of the response, so the underlying connection can be reused.
+     */
+    private void finishResponse() throws IOException {
+        while (jsonReader.hasNext()) {
+            jsonReader.nextName();
+            jsonReader.skipValue();
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * Reads a single result object consisting of an '_id' and a '_data'
+     * property into an {@link APYEntity}.
+     */
+    private APYEntity readResultObject() throws IOException {
+        APYEntity entity = null;
+        String id = null;
+        placeholderRead = false;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(APYConstants.KEY_RESULT_OBJECT_ID)) {
+                id = jsonReader.nextString();
+            } else if (name.equals(APYConstants.KEY_RESPONSE_OBJECT_DATA)) {
+                entity = new APYEntity(entityName);
+                if (lazyDecoding) {
+                    readLazyEntityData(entity);
+                } else {
+                    readEntityData(entity);
+                }
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        if (entity == null) {
+            throw new APYMalformedResponseException("The result object has no '_data' property.");
+        }
+        if (id == null) {
+            throw new APYMalformedResponseException("The result object has no '_id' property.");
+        }
+
+        entity.setId(id);
+        return entity;
+    }
+
+    /**
+     * Reads a single result object consisting of an '_id' and a '_data'
+     * property into a new object of the class of the given mapper.
+     */
+    private <T> T readResultObject(APYMapper<T> mapper) throws IOException {
+        T object = null;
+        String id = null;
+        placeholderRead = false;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (name.equals(APYConstants.KEY_RESULT_OBJECT_ID)) {
+                id = jsonReader.nextString();
+            } else if (name.equals(APYConstants.KEY_RESPONSE_OBJECT_DATA)) {
+                object = mapper.newInstance();
+                readObjectData(mapper, object);
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        if (object == null) {
+            throw new APYMalformedResponseException("The result object has no '_data' property.");
+        }
+        if (id == null) {
+            throw new APYMalformedResponseException("The result object has no '_id' property.");
+        }
+
+        mapper.setId(object, id);
+        return object;
+    }
+
+    /**
+     * Reads a '_data' object into the fields of the given object using the
+     * given mapper. The timestamps are skipped.
+     */
+    private <T> void readObjectData(APYMapper<T> mapper, T object) throws IOException {
+        APYPropertyVisitor objectFiller = new ObjectFiller<T>(mapper, object);
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String propertyKey = jsonReader.nextName();
+            if (propertyKey.equalsIgnoreCase(APYConstants.KEY_ENTITY_CREATED_AT)
+                    || propertyKey.equalsIgnoreCase(APYConstants.KEY_ENTITY_UPDATED_AT)) {
+                jsonReader.skipValue();
+            } else {
+                notePlaceholder(propertyKey);
+                readProperty(propertyKey, objectFiller);
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * Reads a '_data' object into the properties of the given {@link APYEntity}.
+     */
+    private void readEntityData(APYEntity entity) throws IOException {
+        APYPropertyVisitor entityFiller = new EntityFiller(entity);
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String propertyKey = jsonReader.nextName();
+            if (propertyKey.equalsIgnoreCase(APYConstants.KEY_ENTITY_CREATED_AT)) {
+                // Convert the Python format ("seconds.milliseconds") to Java long format (milliseconds)
+                entity.setCreatedAt((long) (jsonReader.nextDouble() * 1000));
+            } else if (propertyKey.equalsIgnoreCase(APYConstants.KEY_ENTITY_UPDATED_AT)) {
+                // Convert the Python format ("seconds.milliseconds") to Java long format (milliseconds)
+                entity.setUpdatedAt((long) (jsonReader.nextDouble() * 1000));
+            } else {
+                notePlaceholder(propertyKey);
+                readProperty(propertyKey, entityFiller);
+            }
+        }
+        jsonReader.endObject();
+
+        // The entity was just loaded, nothing to save
+        entity.markClean();
+        entity.trimToSize();
+    }
+
+    /**
+     * Reads a '_data' object as compact JSON text kept by the given
+     * {@link APYEntity} until its properties are accessed. Only the
+     * timestamps are decoded right away.
+     */
+    private void readLazyEntityData(APYEntity entity) throws IOException {
+        StringBuilder lazyData = new StringBuilder();
+        lazyData.append('{');
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String propertyKey = jsonReader.nextName();
+            if (propertyKey.equalsIgnoreCase(APYConstants.KEY_ENTITY_CREATED_AT)) {
+                // Convert the Python format ("seconds.milliseconds") to Java long format (milliseconds)
+                entity.setCreatedAt((long) (jsonReader.nextDouble() * 1000));
+            } else if (propertyKey.equalsIgnoreCase(APYConstants.KEY_ENTITY_UPDATED_AT)) {
+                // Convert the Python format ("seconds.milliseconds") to Java long format (milliseconds)
+                entity.setUpdatedAt((long) (jsonReader.nextDouble() * 1000));
+            } else {
+                notePlaceholder(propertyKey);
+                if (lazyData.length() > 1) {
+                    lazyData.append(',');
+                }
+                APYJsonReader.appendQuoted(lazyData, propertyKey);
+                lazyData.append(':');
+                jsonReader.appendRawValue(lazyData);
+            }
+        }
+        jsonReader.endObject();
+
+        lazyData.append('}');
+        entity.setLazyData(lazyData.toString());
+    }
+
+    /**
+     * Reads a property value and hands it to the given visitor. Numbers and
+     * booleans are handed over typed, so they are neither kept as nor
+     * converted to strings. Integral numbers exceeding the range of long are
+     * handed over as strings to keep their precision, as are nested objects
+     * and arrays as their JSON text.
+     */
+    private void readProperty(String propertyKey, APYPropertyVisitor visitor) throws IOException {
+        switch (jsonReader.peek()) {
+        case BOOLEAN:
+            visitor.visitBoolean(propertyKey, jsonReader.nextBoolean());
+            break;
+        case NUMBER:
+            String number = jsonReader.nextString();
+            if (isIntegral(number)) {
+                try {
+                    visitor.visitLong(propertyKey, Long.parseLong(number));
+                } catch (NumberFormatException e) {
+                    visitor.visitString(propertyKey, number);
+                }
+            } else {
+                double value = Double.parseDouble(number);
+                if (Double.isInfinite(value)) {
+                    visitor.visitString(propertyKey, number);
+                } else {
+                    visitor.visitDouble(propertyKey, value);
+                }
+            }
+            break;
+        case NULL:
+            jsonReader.nextNull();
+            visitor.visitNull(propertyKey);
+            break;
+        case BEGIN_OBJECT:
+        case BEGIN_ARRAY:
+            visitor.visitString(propertyKey, jsonReader.nextRawValue());
+            break;
+        default:
+            visitor.visitString(propertyKey, jsonReader.nextString());
+            break;
+        }
+    }
+
+    /**
+     * Returns whether the given JSON number literal has neither fraction nor exponent.
+     */
+    private static boolean isIntegral(String number) {
+        for (int index = 0; index < number.length(); index++) {
+            char character = number.charAt(index);
+            if (character == '.' || character == 'e' || character == 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the properties handed over into an {@link APYEntity}.
+     */
+    private static final class EntityFiller implements APYPropertyVisitor {
+
+        private final APYEntity entity;
+
+        EntityFiller(APYEntity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public void visitString(String propertyKey, String propertyValue) {
+            entity.put(propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitLong(String propertyKey, long propertyValue) {
+            entity.putLong(propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitDouble(String propertyKey, double propertyValue) {
+            entity.putDouble(propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitBoolean(String propertyKey, boolean propertyValue) {
+            entity.putBoolean(propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitNull(String propertyKey) {
+            entity.put(propertyKey, null);
+        }
+    }
+
+    /**
+     * Hands the properties handed over to an {@link APYMapper} reading them
+     * into an object.
+     */
+    private static final class ObjectFiller<T> implements APYPropertyVisitor {
+
+        private final APYMapper<T> mapper;
+
+        private final T object;
+
+        ObjectFiller(APYMapper<T> mapper, T object) {
+            this.mapper = mapper;
+            this.object = object;
+        }
+
+        @Override
+        public void visitString(String propertyKey, String propertyValue) {
+            mapper.readString(object, propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitLong(String propertyKey, long propertyValue) {
+            mapper.readLong(object, propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitDouble(String propertyKey, double propertyValue) {
+            mapper.readDouble(object, propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitBoolean(String propertyKey, boolean propertyValue) {
+            mapper.readBoolean(object, propertyKey, propertyValue);
+        }
+
+        @Override
+        public void visitNull(String propertyKey) {
+            mapper.readNull(object, propertyKey);
+        }
+    }
+
+}
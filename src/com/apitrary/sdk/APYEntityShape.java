@@ -0,0 +1,222 @@
+package com.apitrary.sdk;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable, shared layout of the property keys of entities. Entities of the
+ * same type whose properties were put in the same order share one shape, so
+ * each key is held once per shape instead of once per entity, and each entity
+ * only needs a flat array of values.
+ * <p>
+ * Shapes form a tree per entity name: adding a key to a shape leads to a child
+ * shape which is created once and reused by all entities adding the same key.
+ * To keep the tree small for entities with diverging keys, the number of keys
+ * and children per shape as well as the total number of shapes are limited.
+ * Entities exceeding these limits fall back to a map. Instances of this class
+ * are thread-safe.
+ * </p>
+ */
+final class APYEntityShape {
+
+    /**
+     * The maximal number of keys of a shape.
+     */
+    static final int MAX_KEY_COUNT = 128;
+
+    /**
+     * The maximal number of child shapes of a shape.
+     */
+    private static final int MAX_TRANSITION_COUNT = 16;
+
+    /**
+     * The maximal number of shapes of all entity names together. Shapes are
+     * never evicted, so once this many were created all further keys fall
+     * back to a map.
+     */
+    private static final int MAX_SHAPE_COUNT = 1024;
+
+    /**
+     * The maximal number of keys of a shape whose keys are looked up by a
+     * linear scan instead of a hash table.
+     */
+    private static final int MAX_LINEAR_SCAN_KEY_COUNT = 8;
+
+    /**
+     * The empty root shapes by entity name.
+     */
+    private static final ConcurrentHashMap<String, APYEntityShape> ROOT_SHAPES =
+            new ConcurrentHashMap<String, APYEntityShape>();
+
+    /**
+     * The number of shapes created, at most {@link #MAX_SHAPE_COUNT}.
+     */
+    private static final AtomicInteger SHAPE_COUNT = new AtomicInteger();
+
+    /**
+     * The empty shape without children used once the shape budget is used
+     * up, so new entity names do not add roots.
+     */
+    private static final APYEntityShape DETACHED_ROOT_SHAPE = new APYEntityShape(new String[0]);
+
+    /**
+     * The keys in the order they were added.
+     */
+    private final String[] keys;
+
+    /**
+     * The open addressing hash table of the key indices plus one, zero marking
+     * a free slot, or null if the keys are scanned linearly.
+     */
+    private final int[] indexTable;
+
+    /**
+     * The child shapes by added key.
+     */
+    private final ConcurrentHashMap<String, APYEntityShape> transitions =
+            new ConcurrentHashMap<String, APYEntityShape>(4, 0.75f, 1);
+
+    private APYEntityShape(String[] keys) {
+        this.keys = keys;
+        if (keys.length > MAX_LINEAR_SCAN_KEY_COUNT) {
+            int[] table = new int[Integer.highestOneBit(keys.length) * 4];
+            for (int index = 0; index < keys.length; index++) {
+                int slot = slotOf(table, keys[index]);
+                table[slot] = index + 1;
+            }
+            this.indexTable = table;
+        } else {
+            this.indexTable = null;
+        }
+    }
+
+    /**
+     * Returns the empty root shape of the entities with the given name.
+     *
+     * @param entityName
+     *            the name of the entities
+     * @return the shared root {@link APYEntityShape}
+     */
+    static APYEntityShape root(String entityName) {
+        APYEntityShape rootShape = ROOT_SHAPES.get(entityName);
+        if (rootShape == null) {
+            if (!reserveShape()) {
+                return DETACHED_ROOT_SHAPE;
+            }
+            rootShape = new APYEntityShape(new String[0]);
+            APYEntityShape existingShape = ROOT_SHAPES.putIfAbsent(entityName, rootShape);
+            if (existingShape != null) {
+                SHAPE_COUNT.decrementAndGet();
+                rootShape = existingShape;
+            }
+        }
+        return rootShape;
+    }
+
+    /**
+     * Returns the number of keys of this shape.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the key at the given index.
+     *
+     * @param index
+     *            the index of the key
+     * @return the key at the given index
+     */
+    String keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the index of the given key.
+     *
+     * @param key
+     *            the key to look up
+     * @return the index of the key or -1 if this shape has no such key
+     */
+    int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        if (indexTable == null) {
+            for (int index = 0; index < keys.length; index++) {
+                if (key.equals(keys[index])) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+        return indexTable[slotOf(indexTable, key)] - 1;
+    }
+
+    /**
+     * Returns the shape with the given key added to the keys of this shape.
+     *
+     * @param key
+     *            the key to add, must not be a key of this shape yet
+     * @return the child {@link APYEntityShape} or null if the limits of the
+     *         shape tree were reached
+     */
+    APYEntityShape withKey(String key) {
+        APYEntityShape childShape = transitions.get(key);
+        if (childShape != null) {
+            return childShape;
+        }
+
+        if (this == DETACHED_ROOT_SHAPE || keys.length >= MAX_KEY_COUNT
+                || transitions.size() >= MAX_TRANSITION_COUNT || !reserveShape()) {
+            return null;
+        }
+
+        String[] childKeys = new String[keys.length + 1];
+        System.arraycopy(keys, 0, childKeys, 0, keys.length);
+        childKeys[keys.length] = key;
+
+        childShape = new APYEntityShape(childKeys);
+        APYEntityShape existingShape = transitions.putIfAbsent(key, childShape);
+        if (existingShape != null) {
+            SHAPE_COUNT.decrementAndGet();
+            return existingShape;
+        }
+        return childShape;
+    }
+
+    /**
+     * Counts a new shape against the shape budget.
+     *
+     * @return true if the shape may be created, false if the budget is used up
+     */
+    private static boolean reserveShape() {
+        while (true) {
+            int shapeCount = SHAPE_COUNT.get();
+            if (shapeCount >= MAX_SHAPE_COUNT) {
+                return false;
+            }
+            if (SHAPE_COUNT.compareAndSet(shapeCount, shapeCount + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the given hash table holding the given key or, if
+     * the key is missing, the free slot it would be put into. The keys are
+     * probed linearly.
+     */
+    private int slotOf(int[] table, String key) {
+        int mask = table.length - 1;
+        int hash = key.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (table[slot] != 0 && !key.equals(keys[table[slot] - 1])) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+}
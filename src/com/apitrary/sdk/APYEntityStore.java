@@ -0,0 +1,719 @@
+package com.apitrary.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Persistent store of entities keyed by entity name and ID, surviving process
+ * restarts. Pass it to {@link APYClient#setEntityStore(APYEntityStore)} to
+ * keep the fetched, created and updated entities on disk, and read them back
+ * with {@link #get(String, String)} and {@link #getAll(String)} on the next
+ * start without downloading them again.
+ * <p>
+ * The entities are appended to a log file, so writes never rewrite existing
+ * data. The log is read through a memory mapping, and the position and
+ * '_updatedAt' time of each entity are held in an index which is rebuilt by
+ * scanning the records when the store is opened. Appends are not synced to
+ * disk, so a crash or power loss may tear or corrupt the latest records; the
+ * log is then cut off at the first record failing its checksum, and the
+ * entities written since are fetched again. Superseded records are removed by
+ * compacting the log once they take more space than the live ones.
+ * </p>
+ * <p>
+ * Read entities are decoded lazily, see
+ * {@link APYClient#setLazyDecodingEnabled(boolean)}. Instances of this class
+ * are thread-safe. Do not open more than one store on the same directory.
+ * </p>
+ */
+public class APYEntityStore implements Closeable {
+
+    /**
+     * The name of the log file.
+     */
+    private static final String LOG_FILE_NAME = "entities.log";
+
+    /**
+     * The name of the file the log is compacted into.
+     */
+    private static final String COMPACTION_FILE_NAME = "entities.log.tmp";
+
+    /**
+     * The record type of a stored entity.
+     */
+    private static final byte RECORD_PUT = 1;
+
+    /**
+     * The record type of a removed entity.
+     */
+    private static final byte RECORD_REMOVE = 2;
+
+    /**
+     * The record type of a sync mark.
+     */
+    private static final byte RECORD_SYNC_MARK = 3;
+
+    /**
+     * The minimal number of superseded bytes before the log is compacted.
+     */
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+    /**
+     * The position and update time of a stored entity.
+     */
+    private static final class IndexEntry {
+
+        final int offset;
+
+        final int length;
+
+        final long updatedAt;
+
+        IndexEntry(int offset, int length, long updatedAt) {
+            this.offset = offset;
+            this.length = length;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    /**
+     * The directory of the log file.
+     */
+    private final File directory;
+
+    /**
+     * The log file, opened for reading and appending.
+     */
+    private RandomAccessFile logFile;
+
+    /**
+     * The read-only mapping of the log, remapped when records beyond its end
+     * are read.
+     */
+    private MappedByteBuffer mappedLog;
+
+    /**
+     * The length of the log in bytes.
+     */
+    private int logLength;
+
+    /**
+     * The index entries by ID, by lowercase entity name.
+     */
+    private final Map<String, Map<String, IndexEntry>> index = new HashMap<String, Map<String, IndexEntry>>();
+
+    /**
+     * The index entries of the sync marks, by lowercase entity name. The
+     * mark is kept as update time of the entry.
+     */
+    private final Map<String, IndexEntry> syncMarks = new HashMap<String, IndexEntry>();
+
+    /**
+     * The number of bytes taken by superseded records and removals.
+     */
+    private long garbageBytes;
+
+    /**
+     * Whether this store was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Opens the store kept in the given directory, creating it if necessary.
+     * On Android, pass a directory below the app's files directory.
+     *
+     * @param directory
+     *            the directory holding the store
+     * @throws IllegalArgumentException
+     *             if the directory was null
+     * @throws IOException
+     *             if the directory could not be created or the log could not
+     *             be read
+     */
+    public APYEntityStore(File directory) throws IllegalArgumentException, IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("The given directory was null.");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("The directory '".concat(directory.getPath()).concat("' could not be created."));
+        }
+
+        this.directory = directory;
+        open();
+    }
+
+    /**
+     * Returns the stored entity with the given name and ID.
+     *
+     * @param entityName
+     *            the name of the entity
+     * @param entityId
+     *            the ID of the entity
+     * @return a new {@link APYEntity} or null if no such entity is stored
+     * @throws IOException
+     *             if the entity could not be read
+     */
+    public synchronized APYEntity get(String entityName, String entityId) throws IOException {
+        ensureOpen();
+        Map<String, IndexEntry> entries = index.get(entityName.toLowerCase(Locale.US));
+        IndexEntry entry = entries != null ? entries.get(entityId) : null;
+        return entry != null ? readEntity(entry) : null;
+    }
+
+    /**
+     * Returns all stored entities with the given name, in the order they were
+     * first stored.
+     *
+     * @param entityName
+     *            the name of the entities
+     * @return a new list of new {@link APYEntity} instances, empty if none is stored
+     * @throws IOException
+     *             if the entities could not be read
+     */
+    public synchronized List<APYEntity> getAll(String entityName) throws IOException {
+        ensureOpen();
+        Map<String, IndexEntry> entries = index.get(entityName.toLowerCase(Locale.US));
+        if (entries == null) {
+            return new ArrayList<APYEntity>();
+        }
+
+        List<APYEntity> entities = new ArrayList<APYEntity>(entries.size());
+        for (IndexEntry entry : entries.values()) {
+            entities.add(readEntity(entry));
+        }
+        return entities;
+    }
+
+    /**
+     * Returns the '_updatedAt' time of the stored entity with the given name
+     * and ID, without reading the entity.
+     *
+     * @param entityName
+     *            the name of the entity
+     * @param entityId
+     *            the ID of the entity
+     * @return the time the entity was lastly updated (in milliseconds since
+     *         Jan. 1, 1970, midnight GMT), or -1 if no such entity is stored
+     */
+    public synchronized long getUpdatedAt(String entityName, String entityId) {
+        Map<String, IndexEntry> entries = index.get(entityName.toLowerCase(Locale.US));
+        IndexEntry entry = entries != null ? entries.get(entityId) : null;
+        return entry != null ? entry.updatedAt : -1;
+    }
+
+    /**
+     * Returns the IDs of all stored entities with the given name.
+     *
+     * @param entityName
+     *            the name of the entities
+     * @return a new list of the IDs, in the order the entities were first stored
+     */
+    public synchronized List<String> getIds(String entityName) {
+        Map<String, IndexEntry> entries = index.get(entityName.toLowerCase(Locale.US));
+        return entries != null ? new ArrayList<String>(entries.keySet()) : new ArrayList<String>();
+    }
+
+    /**
+     * Returns the number of stored entities.
+     *
+     * @return the number of entities of all names
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (Map<String, IndexEntry> entries : index.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    /**
+     * Stores the given entity, replacing a stored entity with the same name
+     * and ID.
+     *
+     * @param entity
+     *            the entity to store
+     * @throws IllegalArgumentException
+     *             if the entity was null or had no ID
+     * @throws IOException
+     *             if the entity could not be written
+     */
+    public void put(APYEntity entity) throws IllegalArgumentException, IOException {
+        putAll(Collections.singletonList(entity));
+    }
+
+    /**
+     * Stores the given entities, replacing stored entities with the same name
+     * and ID. The entities are appended to the log at once.
+     *
+     * @param entities
+     *            the entities to store
+     * @throws IllegalArgumentException
+     *             if the collection was null or contained null or an entity
+     *             without ID
+     * @throws IOException
+     *             if the entities could not be written
+     */
+    public void putAll(Collection<APYEntity> entities) throws IllegalArgumentException, IOException {
+        putAll(entities, false);
+    }
+
+    /**
+     * Stores the given fetched entities like {@link #putAll(Collection)}, but
+     * skips entities whose '_updatedAt' time equals the stored one, as they
+     * did not change since they were stored. Locally modified entities must
+     * be stored by {@link #putAll(Collection)}, as their '_updatedAt' time
+     * is only advanced by the next fetch.
+     *
+     * @param entities
+     *            the fetched entities to store
+     * @throws IllegalArgumentException
+     *             if the collection was null or contained null or an entity
+     *             without ID
+     * @throws IOException
+     *             if the entities could not be written
+     */
+    void putFetched(Collection<APYEntity> entities) throws IllegalArgumentException, IOException {
+        putAll(entities, true);
+    }
+
+    private synchronized void putAll(Collection<APYEntity> entities, boolean skipUnchanged)
+            throws IllegalArgumentException, IOException {
+        if (entities == null) {
+            throw new IllegalArgumentException("The given entities were null.");
+        }
+        for (APYEntity entity : entities) {
+            if (entity == null || APYUtils.isNullOrEmpty(entity.getId())) {
+                throw new IllegalArgumentException("The entities to store must have an ID.");
+            }
+        }
+        ensureOpen();
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        List<APYEntity> writtenEntities = new ArrayList<APYEntity>(entities.size());
+        List<Integer> recordLengths = new ArrayList<Integer>(entities.size());
+        for (APYEntity entity : entities) {
+            if (skipUnchanged) {
+                long storedUpdatedAt = getUpdatedAt(entity.getName(), entity.getId());
+                if (storedUpdatedAt > 0 && storedUpdatedAt == entity.getUpdatedAt() && !entity.isDirty()) {
+                    // Unchanged since it was stored
+                    continue;
+                }
+            }
+
+            int recordLength = writeRecord(records, RECORD_PUT, entity.getName(), entity.getId(),
+                    entity.getCreatedAt(), entity.getUpdatedAt(), APYRecordFormat.encodeProperties(entity));
+            writtenEntities.add(entity);
+            recordLengths.add(Integer.valueOf(recordLength));
+        }
+
+        int offset = append(records);
+        for (int index = 0; index < writtenEntities.size(); index++) {
+            APYEntity entity = writtenEntities.get(index);
+            int recordLength = recordLengths.get(index).intValue();
+            indexRecord(RECORD_PUT, entity.getName(), entity.getId(), offset, recordLength, entity.getUpdatedAt());
+            offset += recordLength;
+        }
+        compactIfWorthwhile();
+    }
+
+    /**
+     * Removes the stored entity with the given name and ID.
+     *
+     * @param entityName
+     *            the name of the entity
+     * @param entityId
+     *            the ID of the entity
+     * @return true if the entity was stored, false otherwise
+     * @throws IOException
+     *             if the removal could not be written
+     */
+    public boolean remove(String entityName, String entityId) throws IOException {
+        return removeAll(entityName, Collections.singletonList(entityId)) > 0;
+    }
+
+    /**
+     * Removes the stored entities with the given name and IDs. The removals
+     * are appended to the log at once.
+     *
+     * @param entityName
+     *            the name of the entities
+     * @param entityIds
+     *            the IDs of the entities
+     * @return the number of removed entities
+     * @throws IOException
+     *             if the removals could not be written
+     */
+    public synchronized int removeAll(String entityName, Collection<String> entityIds) throws IOException {
+        ensureOpen();
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        List<String> removedIds = new ArrayList<String>(entityIds.size());
+        List<Integer> recordLengths = new ArrayList<Integer>(entityIds.size());
+        for (String entityId : entityIds) {
+            if (getUpdatedAt(entityName, entityId) == -1 || removedIds.contains(entityId)) {
+                continue;
+            }
+
+            int recordLength = writeRecord(records, RECORD_REMOVE, entityName, entityId, 0, 0, new byte[0]);
+            removedIds.add(entityId);
+            recordLengths.add(Integer.valueOf(recordLength));
+        }
+
+        int offset = append(records);
+        for (int index = 0; index < removedIds.size(); index++) {
+            int recordLength = recordLengths.get(index).intValue();
+            indexRecord(RECORD_REMOVE, entityName, removedIds.get(index), offset, recordLength, 0);
+            offset += recordLength;
+        }
+        compactIfWorthwhile();
+        return removedIds.size();
+    }
+
+    /**
+     * Returns the sync mark of the given entity name, i.e. the '_updatedAt'
+     * time up to which the stored entities were synchronized with the backend.
+     *
+     * @param entityName
+     *            the name of the entities
+     * @return the sync mark (in milliseconds since Jan. 1, 1970, midnight
+     *         GMT), or -1 if the entities were never synchronized
+     */
+    public synchronized long getSyncMark(String entityName) {
+        IndexEntry entry = syncMarks.get(entityName.toLowerCase(Locale.US));
+        return entry != null ? entry.updatedAt : -1;
+    }
+
+    /**
+     * Sets the sync mark of the given entity name. It is kept along with the
+     * entities, so synchronization resumes from it after a restart.
+     *
+     * @param entityName
+     *            the name of the entities
+     * @param syncMark
+     *            the '_updatedAt' time up to which the stored entities are
+     *            synchronized, or -1 to synchronize all entities next time
+     * @throws IOException
+     *             if the sync mark could not be written
+     */
+    public synchronized void setSyncMark(String entityName, long syncMark) throws IOException {
+        ensureOpen();
+        if (getSyncMark(entityName) == syncMark) {
+            return;
+        }
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int recordLength = writeRecord(records, RECORD_SYNC_MARK, entityName, "", 0, syncMark, new byte[0]);
+        int offset = append(records);
+        indexRecord(RECORD_SYNC_MARK, entityName, "", offset, recordLength, syncMark);
+        compactIfWorthwhile();
+    }
+
+    /**
+     * Rewrites the log with the stored entities and sync marks only,
+     * dropping superseded records and removals. This happens automatically once they take more
+     * space than the stored entities.
+     *
+     * @throws IOException
+     *             if the log could not be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        ensureOpen();
+
+        List<IndexEntry> liveEntries = new ArrayList<IndexEntry>();
+        for (Map<String, IndexEntry> entries : index.values()) {
+            liveEntries.addAll(entries.values());
+        }
+        liveEntries.addAll(syncMarks.values());
+
+        File compactedFile = new File(directory, COMPACTION_FILE_NAME);
+        RandomAccessFile compactedLog = new RandomAccessFile(compactedFile, "rw");
+        try {
+            compactedLog.setLength(0);
+            ByteBuffer log = mapLog(logLength);
+            byte[] record = new byte[0];
+            for (IndexEntry entry : liveEntries) {
+                if (record.length < entry.length) {
+                    record = new byte[entry.length];
+                }
+                log.position(entry.offset);
+                log.get(record, 0, entry.length);
+                compactedLog.write(record, 0, entry.length);
+            }
+            compactedLog.getFD().sync();
+        } finally {
+            compactedLog.close();
+        }
+
+        // Reopening rebuilds the index with the compacted offsets
+        closeLog();
+        if (!compactedFile.renameTo(new File(directory, LOG_FILE_NAME))) {
+            open();
+            throw new IOException("The compacted log could not replace the log.");
+        }
+        open();
+    }
+
+    /**
+     * Closes the log file. Any further operation fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.clear();
+        syncMarks.clear();
+        closeLog();
+    }
+
+    /**
+     * Opens the log and rebuilds the index by scanning the records. The log
+     * is cut off at the first record failing its checksum.
+     */
+    private void open() throws IOException {
+        logFile = new RandomAccessFile(new File(directory, LOG_FILE_NAME), "rw");
+        long fileLength = logFile.length();
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IOException("The log exceeds the maximal size of a store.");
+        }
+
+        index.clear();
+        syncMarks.clear();
+        garbageBytes = 0;
+        logLength = 0;
+        mappedLog = null;
+
+        int length = (int) fileLength;
+        ByteBuffer log = mapLog(length);
+        int offset = 0;
+        while (offset + APYRecordFormat.HEADER_SIZE <= length) {
+            int bodyLength = log.getInt(offset);
+            if (bodyLength <= 0 || bodyLength > length - offset - APYRecordFormat.HEADER_SIZE) {
+                break;
+            }
+            int recordLength = APYRecordFormat.HEADER_SIZE + bodyLength;
+            if (!isValid(log, offset)) {
+                // Torn or corrupted by a crash, the records from here on are lost
+                break;
+            }
+
+            byte type;
+            String entityName;
+            String entityId;
+            long updatedAt;
+            try {
+                log.position(offset + APYRecordFormat.HEADER_SIZE);
+                DataInputStream body = new DataInputStream(new ByteBufferInputStream(log));
+                type = body.readByte();
+                entityName = body.readUTF();
+                entityId = body.readUTF();
+                body.readLong();
+                updatedAt = body.readLong();
+            } catch (IOException e) {
+                break;
+            }
+            if (type != RECORD_PUT && type != RECORD_REMOVE && type != RECORD_SYNC_MARK) {
+                break;
+            }
+
+            indexRecord(type, entityName, entityId, offset, recordLength, updatedAt);
+            offset += recordLength;
+        }
+
+        if (offset < length) {
+            logFile.setLength(offset);
+            mappedLog = null;
+        }
+        logLength = offset;
+    }
+
+    /**
+     * Reads the entity of the given index entry off the mapped log.
+     */
+    private APYEntity readEntity(IndexEntry entry) throws IOException {
+        ByteBuffer log = mapLog(entry.offset + entry.length);
+        if (!isValid(log, entry.offset)) {
+            throw new IOException("The stored entity is corrupted.");
+        }
+
+        log.position(entry.offset + APYRecordFormat.HEADER_SIZE);
+        DataInputStream body = new DataInputStream(new ByteBufferInputStream(log));
+        body.readByte();
+        APYEntity entity = new APYEntity(body.readUTF());
+        entity.setId(body.readUTF());
+        entity.setCreatedAt(body.readLong());
+        entity.setUpdatedAt(body.readLong());
+        byte[] data = new byte[body.readInt()];
+        body.readFully(data);
+        APYRecordFormat.decodeProperties(entity, data);
+        return entity;
+    }
+
+    /**
+     * Writes a record to the given stream.
+     *
+     * @return the length of the record including its header
+     */
+    private static int writeRecord(ByteArrayOutputStream records, byte type, String entityName, String entityId,
+            long createdAt, long updatedAt, byte[] data) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64 + data.length);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeByte(type);
+        body.writeUTF(entityName);
+        body.writeUTF(entityId);
+        body.writeLong(createdAt);
+        body.writeLong(updatedAt);
+        body.writeInt(data.length);
+        body.write(data);
+        body.flush();
+
+        return APYRecordFormat.writeRecord(records, bodyBytes.toByteArray());
+    }
+
+    /**
+     * Appends the given records to the log.
+     *
+     * @return the offset of the first appended record
+     */
+    private int append(ByteArrayOutputStream records) throws IOException {
+        int offset = logLength;
+        if (records.size() == 0) {
+            return offset;
+        }
+        if ((long) offset + records.size() > Integer.MAX_VALUE) {
+            throw new IOException("The log exceeds the maximal size of a store.");
+        }
+
+        logFile.seek(offset);
+        logFile.write(records.toByteArray());
+        logLength = offset + records.size();
+        return offset;
+    }
+
+    /**
+     * Applies a record to the index.
+     */
+    private void indexRecord(byte type, String entityName, String entityId, int offset, int recordLength,
+            long updatedAt) {
+        String nameKey = entityName.toLowerCase(Locale.US);
+        if (type == RECORD_SYNC_MARK) {
+            IndexEntry previousMark = syncMarks.put(nameKey, new IndexEntry(offset, recordLength, updatedAt));
+            if (previousMark != null) {
+                garbageBytes += previousMark.length;
+            }
+            return;
+        }
+
+        Map<String, IndexEntry> entries = index.get(nameKey);
+        if (entries == null) {
+            entries = new LinkedHashMap<String, IndexEntry>();
+            index.put(nameKey, entries);
+        }
+
+        IndexEntry previousEntry;
+        if (type == RECORD_PUT) {
+            previousEntry = entries.put(entityId, new IndexEntry(offset, recordLength, updatedAt));
+        } else {
+            previousEntry = entries.remove(entityId);
+            garbageBytes += recordLength;
+        }
+        if (previousEntry != null) {
+            garbageBytes += previousEntry.length;
+        }
+    }
+
+    /**
+     * Compacts the log if the superseded records take more space than the
+     * stored entities.
+     */
+    private void compactIfWorthwhile() throws IOException {
+        if (garbageBytes >= MIN_COMPACTION_GARBAGE && garbageBytes > logLength - garbageBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns whether the checksum of the record at the given offset matches.
+     */
+    private static boolean isValid(ByteBuffer log, int offset) {
+        int bodyLength = log.getInt(offset);
+        int expectedChecksum = log.getInt(offset + 4);
+
+        byte[] body = new byte[bodyLength];
+        log.position(offset + APYRecordFormat.HEADER_SIZE);
+        log.get(body);
+        return APYRecordFormat.checksum(body, 0, bodyLength) == expectedChecksum;
+    }
+
+    /**
+     * Returns a view of the mapped log covering at least the given number of
+     * bytes, remapping the log if it grew.
+     */
+    private ByteBuffer mapLog(int minLength) throws IOException {
+        if (mappedLog == null || mappedLog.capacity() < minLength) {
+            FileChannel channel = logFile.getChannel();
+            mappedLog = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.max(minLength, logLength));
+        }
+        return mappedLog.duplicate();
+    }
+
+    private void closeLog() throws IOException {
+        mappedLog = null;
+        if (logFile != null) {
+            logFile.close();
+            logFile = null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("The entity store was closed.");
+        }
+    }
+
+    /**
+     * {@link InputStream} reading from the current position of a
+     * {@link ByteBuffer}.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(target, offset, count);
+            return count;
+        }
+    }
+
+}
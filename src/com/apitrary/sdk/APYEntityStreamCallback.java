@@ -0,0 +1,40 @@
+package com.apitrary.sdk;
+
+/**
+ * Callback interface used by {@link APYClient#fetchAllStreaming(String, APYEntityStreamCallback)}
+ * to hand over entities while they are read off the connection.
+ * <p>
+ * <b>Notice:</b> All methods are called on the background thread reading the
+ * response. Post to the UI thread yourself if you need to touch views. The
+ * only exception is {@link #onError(APYException)} for an operation which
+ * was rejected before it started, e.g. because too many operations were
+ * pending. It is called on the callback executor of the
+ * {@link APYAsyncConfig}, which is the UI thread by default.
+ * </p>
+ */
+public interface APYEntityStreamCallback {
+
+    /**
+     * Called for every entity as soon as it was read.
+     *
+     * @param entity the read entity
+     * @return true to continue reading, false to stop and abort the connection
+     */
+    boolean onEntity(APYEntity entity);
+
+    /**
+     * Called once no further entities will be delivered, either because all
+     * entities were read or because {@link #onEntity(APYEntity)} returned false.
+     */
+    void onComplete();
+
+    /**
+     * Called if there was an error while trying to fetch the entities. No
+     * further entities are delivered afterwards. If the operation was
+     * rejected before it started, this is called on the callback executor.
+     *
+     * @param error an instance of {@link APYException} containing further information about the error
+     */
+    void onError(APYException error);
+
+}
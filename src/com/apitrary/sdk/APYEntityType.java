@@ -0,0 +1,32 @@
+package com.apitrary.sdk;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose objects are stored as entities of the given name. The
+ * apitrary mapper processor generates an {@link APYMapper} for each annotated
+ * class at compile time, which {@link APYClient#fetchAll(Class)} and
+ * {@link APYClient#create(Object)} use to read and write the objects without
+ * reflection.
+ * <p>
+ * The annotated class needs a non-private no-argument constructor. Its
+ * fields annotated with {@link APYProperty} are mapped to the properties of
+ * the entity, a field annotated with {@link APYId} receives the entity's ID.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface APYEntityType {
+
+    /**
+     * The case insensitive name of the entity, matching an entity's name of
+     * your apitrary API.
+     */
+    String value();
+
+}
@@ -0,0 +1,385 @@
+package com.apitrary.sdk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * Serializer writing the properties of an {@link APYEntity} as a UTF-8 encoded
+ * JSON object into a byte buffer, without building intermediate JSON objects
+ * or strings. The buffer is reused by all requests of a thread, and its size is
+ * the content length of the request body.
+ * <p>
+ * Use {@link #acquire()} to get the writer of the current thread and
+ * {@link #release()} once the body was written. Instances of this class are
+ * not thread-safe.
+ * </p>
+ */
+final class APYEntityWriter implements APYPropertyVisitor {
+
+    /**
+     * The initial size of the buffer.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    /**
+     * The maximal size of a buffer kept for reuse after it was released. Larger
+     * buffers are dropped so a single huge entity does not pin memory.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private static final byte[] NULL_LITERAL = { 'n', 'u', 'l', 'l' };
+    private static final byte[] TRUE_LITERAL = { 't', 'r', 'u', 'e' };
+    private static final byte[] FALSE_LITERAL = { 'f', 'a', 'l', 's', 'e' };
+
+    /**
+     * The writer of each thread.
+     */
+    private static final ThreadLocal<APYEntityWriter> WRITERS = new ThreadLocal<APYEntityWriter>() {
+        @Override
+        protected APYEntityWriter initialValue() {
+            return new APYEntityWriter();
+        }
+    };
+
+    /**
+     * The buffer holding the serialized entity.
+     */
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+    /**
+     * The number of bytes written into the buffer.
+     */
+    private int size;
+
+    /**
+     * Whether this writer is in use.
+     */
+    private boolean acquired;
+
+    /**
+     * Whether the next property is the first one of the object.
+     */
+    private boolean firstProperty;
+
+    /**
+     * The keys of the properties to write while visiting, or null to write all.
+     */
+    private Set<String> includedKeys;
+
+    /**
+     * Whether properties with a null value are written while visiting.
+     */
+    private boolean writeNulls;
+
+    private APYEntityWriter() {
+    }
+
+    /**
+     * Returns the empty writer of the current thread. If it is in use already,
+     * a new writer is returned.
+     *
+     * @return an empty {@link APYEntityWriter}
+     */
+    static APYEntityWriter acquire() {
+        APYEntityWriter writer = WRITERS.get();
+        if (writer.acquired) {
+            writer = new APYEntityWriter();
+        }
+        writer.acquired = true;
+        writer.size = 0;
+        return writer;
+    }
+
+    /**
+     * Hands this writer back for reuse by the next request of the thread.
+     */
+    void release() {
+        acquired = false;
+        size = 0;
+        if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * Writes all properties of the given entity as a JSON object. Properties
+     * with a null value are left out.
+     *
+     * @param entity
+     *            the entity to write
+     */
+    void writeEntity(APYEntity entity) {
+        includedKeys = null;
+        writeNulls = false;
+        beginObject();
+        entity.visitProperties(this);
+        endObject();
+    }
+
+    /**
+     * Writes the mapped fields of the given object as a JSON object. Fields
+     * with a null value are left out.
+     *
+     * @param mapper
+     *            the mapper of the object's class
+     * @param object
+     *            the object to write
+     */
+    <T> void writeObject(APYMapper<T> mapper, T object) {
+        includedKeys = null;
+        writeNulls = false;
+        beginObject();
+        mapper.write(object, this);
+        endObject();
+    }
+
+    /**
+     * Writes the properties of the given entity changed since it was last in
+     * sync with the backend as a JSON object. Removed properties are written
+     * with a null value.
+     *
+     * @param entity
+     *            the entity to write
+     */
+    void writeChanges(APYEntity entity) {
+        includedKeys = entity.getChangedKeys();
+        writeNulls = true;
+        beginObject();
+        if (!includedKeys.isEmpty()) {
+            entity.visitProperties(this);
+        }
+        for (String propertyKey : entity.getRemovedKeys()) {
+            writeKey(propertyKey);
+            writeBytes(NULL_LITERAL);
+        }
+        endObject();
+        includedKeys = null;
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return the size of the serialized entity in bytes
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Writes the serialized entity to the given stream.
+     *
+     * @param outputStream
+     *            the stream to write to
+     * @throws IOException
+     *             if writing failed
+     */
+    void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, size);
+    }
+
+    @Override
+    public void visitString(String propertyKey, String propertyValue) {
+        if (isIncluded(propertyKey)) {
+            writeKey(propertyKey);
+            writeString(propertyValue);
+        }
+    }
+
+    @Override
+    public void visitLong(String propertyKey, long propertyValue) {
+        if (isIncluded(propertyKey)) {
+            writeKey(propertyKey);
+            writeLong(propertyValue);
+        }
+    }
+
+    @Override
+    public void visitDouble(String propertyKey, double propertyValue) {
+        if (Double.isNaN(propertyValue) || Double.isInfinite(propertyValue)) {
+            // JSON can not represent the value, e.g. of a mapped field
+            visitNull(propertyKey);
+        } else if (isIncluded(propertyKey)) {
+            writeKey(propertyKey);
+            writeAscii(Double.toString(propertyValue));
+        }
+    }
+
+    @Override
+    public void visitBoolean(String propertyKey, boolean propertyValue) {
+        if (isIncluded(propertyKey)) {
+            writeKey(propertyKey);
+            writeBytes(propertyValue ? TRUE_LITERAL : FALSE_LITERAL);
+        }
+    }
+
+    @Override
+    public void visitNull(String propertyKey) {
+        if (writeNulls && isIncluded(propertyKey)) {
+            writeKey(propertyKey);
+            writeBytes(NULL_LITERAL);
+        }
+    }
+
+    private boolean isIncluded(String propertyKey) {
+        return includedKeys == null || includedKeys.contains(propertyKey);
+    }
+
+    private void beginObject() {
+        writeByte('{');
+        firstProperty = true;
+    }
+
+    private void endObject() {
+        writeByte('}');
+    }
+
+    private void writeKey(String propertyKey) {
+        if (!firstProperty) {
+            writeByte(',');
+        }
+        firstProperty = false;
+        writeString(propertyKey);
+        writeByte(':');
+    }
+
+    /**
+     * Writes the given string quoted and escaped as JSON string, encoded as UTF-8.
+     */
+    private void writeString(String value) {
+        int length = value.length();
+        // Every char takes at most 6 bytes, either escaped or as part of a surrogate pair
+        ensureCapacity(length * 6 + 2);
+
+        byte[] target = buffer;
+        int position = size;
+        target[position++] = '"';
+        for (int index = 0; index < length; index++) {
+            char c = value.charAt(index);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    target[position++] = (byte) c;
+                    continue;
+                }
+
+                target[position++] = '\\';
+                switch (c) {
+                case '"':
+                case '\\':
+                    target[position++] = (byte) c;
+                    break;
+                case '\n':
+                    target[position++] = 'n';
+                    break;
+                case '\r':
+                    target[position++] = 'r';
+                    break;
+                case '\t':
+                    target[position++] = 't';
+                    break;
+                case '\b':
+                    target[position++] = 'b';
+                    break;
+                case '\f':
+                    target[position++] = 'f';
+                    break;
+                default:
+                    position = writeUnicodeEscape(target, position, c);
+                }
+            } else if (c < 0x800) {
+                target[position++] = (byte) (0xc0 | (c >> 6));
+                target[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && index + 1 < length
+                    && Character.isLowSurrogate(value.charAt(index + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++index));
+                target[position++] = (byte) (0xf0 | (codePoint >> 18));
+                target[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                target[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                target[position++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                // A lone surrogate can not be encoded as UTF-8, keep it escaped
+                target[position++] = '\\';
+                position = writeUnicodeEscape(target, position, c);
+            } else {
+                target[position++] = (byte) (0xe0 | (c >> 12));
+                target[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                target[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        target[position++] = '"';
+        size = position;
+    }
+
+    /**
+     * Writes the hex digits of a \\u escape, the backslash already written.
+     */
+    private static int writeUnicodeEscape(byte[] target, int position, char c) {
+        target[position++] = 'u';
+        target[position++] = HEX_DIGITS[(c >> 12) & 0xf];
+        target[position++] = HEX_DIGITS[(c >> 8) & 0xf];
+        target[position++] = HEX_DIGITS[(c >> 4) & 0xf];
+        target[position++] = HEX_DIGITS[c & 0xf];
+        return position;
+    }
+
+    /**
+     * Writes the decimal digits of the given value without creating a string.
+     */
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[size++] = '-';
+            value = -value;
+        }
+
+        int digitCount = 1;
+        for (long remainder = value / 10; remainder > 0; remainder /= 10) {
+            digitCount++;
+        }
+
+        int position = size + digitCount;
+        size = position;
+        do {
+            buffer[--position] = (byte) ('0' + (value % 10));
+            value /= 10;
+        } while (value > 0);
+    }
+
+    private void writeAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int index = 0; index < length; index++) {
+            buffer[size++] = (byte) value.charAt(index);
+        }
+    }
+
+    private void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void ensureCapacity(int additionalBytes) {
+        int requiredSize = size + additionalBytes;
+        if (requiredSize > buffer.length) {
+            byte[] grownBuffer = new byte[Math.max(requiredSize, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grownBuffer, 0, size);
+            buffer = grownBuffer;
+        }
+    }
+
+}
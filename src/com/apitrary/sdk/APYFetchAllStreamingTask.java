@@ -0,0 +1,64 @@
+package com.apitrary.sdk;
+
+/**
+ * {@link APYAsyncTask} implementation used to asynchronously fetch entities
+ * from the apitrary backend and hand them over one by one while they are read.
+ * Uses a {@link APYEntityStreamCallback} to deliver the entities, which is
+ * called on the worker thread. Only the failure of a task which was rejected
+ * or failed outside the fetch is delivered on the callback executor.
+ */
+class APYFetchAllStreamingTask extends APYAsyncTask<Void> {
+
+    /**
+     * Callback used to hand over the entities and inform the caller about the outcome.
+     */
+    private APYEntityStreamCallback callback;
+
+    /**
+     * Invoker for the HTTP request.
+     */
+    private APYHttpRequestInvoker requestInvoker;
+
+    /**
+     * The name identifying the kind of entities to fetch.
+     */
+    private String entityName;
+
+    /**
+     * Constructs an instance of {@link APYFetchAllStreamingTask}.
+     * 
+     * @param requestInvoker
+     *            the {@link APYHttpRequestInvoker} instance used to invoke the
+     *            actual request.
+     * @param callback
+     *            the callback used to hand over the entities.
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     */
+    APYFetchAllStreamingTask(APYHttpRequestInvoker requestInvoker, APYEntityStreamCallback callback,
+            String entityName) {
+        this.requestInvoker = requestInvoker;
+        this.callback = callback;
+        this.entityName = entityName;
+    }
+
+    @Override
+    protected Void doInBackground() {
+        // The streaming fetch reports its outcome to the callback itself
+        requestInvoker.fetchAll(entityName, callback);
+        return null;
+    }
+
+    @Override
+    protected void onPostExecute(Void result) {
+        // Nothing to do, the callback was informed on the worker thread
+    }
+
+    @Override
+    protected void onFailure(Exception occuredException) {
+        callback.onError(new APYException(
+                "Entities could not be fetched. For further information about the actual problem, "
+                + "please inspect the 'cause' object.", occuredException));
+    }
+
+}
@@ -1,19 +1,13 @@
 package com.apitrary.sdk;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import android.os.AsyncTask;
-
 /**
- * {@link AsyncTask} implementation used to asynchronously fetch entities
+ * {@link APYAsyncTask} implementation used to asynchronously fetch entities
  * from the apitrary backend. Uses a {@link APYFetchAllCallback} to inform the
  * caller about the outcome.
- * <p>
- * <b>Notice:</b> The execute() method expects the entity name as single String parameter.
- * </p>
  */
-class APYFetchAllTask extends AsyncTask<String, Void, List<APYEntity>> {
+class APYFetchAllTask extends APYAsyncTask<List<APYEntity>> {
 
     /**
      * Callback used to inform the caller about the outcome.
@@ -21,56 +15,48 @@ class APYFetchAllTask extends AsyncTask<String, Void, List<APYEntity>> {
     private APYFetchAllCallback callback;
 
     /**
-     * Invoker for the HTTP request.
+     * Client executing the actual operation.
      */
-    private APYHttpRequestInvoker requestInvoker;
+    private APYClient client;
 
     /**
-     * Exception that might have occurred during "doInBackground()" and is
-     * evaluated in "onPostExecute()".
+     * The name identifying the kind of entities to fetch.
      */
-    private Exception occuredException;
+    private String entityName;
 
     /**
      * Constructs an instance of {@link APYFetchAllTask}.
      * 
-     * @param requestInvoker
-     *            the {@link APYHttpRequestInvoker} instance used to invoke the
-     *            actual request.
+     * @param client
+     *            the {@link APYClient} instance used to execute the actual
+     *            operation.
      * @param callback
      *            the callback used to inform the caller about the outcome.
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
      */
-    APYFetchAllTask(APYHttpRequestInvoker requestInvoker, APYFetchAllCallback callback) {
+    APYFetchAllTask(APYClient client, APYFetchAllCallback callback, String entityName) {
         // TODO Validate parameters
-        this.requestInvoker = requestInvoker;
+        this.client = client;
         this.callback = callback;
+        this.entityName = entityName;
     }
 
     @Override
-    protected List<APYEntity> doInBackground(String... params) {
-        String entityName = params[0];
-        List<APYEntity> resultEntities = new ArrayList<APYEntity>();
-
-        try {
-            resultEntities = requestInvoker.fetchAll(entityName);
-        } catch (IllegalArgumentException e) {
-            occuredException = e;
-        } catch (APYException e) {
-            occuredException = e;
-        }
-
-        return resultEntities;
+    protected List<APYEntity> doInBackground() throws APYException {
+        return client.fetchAll(entityName);
     }
 
     @Override
     protected void onPostExecute(List<APYEntity> fetchedEntities) {
-        if (occuredException != null) {
-            callback.onSuccess(fetchedEntities);
-        } else {
-            callback.onError(new APYException(
-                    "Entities could not be fetched. For further information about the actual problem, "
-                    + "please inspect the 'cause' object.", occuredException));
-        }
+        callback.onSuccess(fetchedEntities);
+    }
+
+    @Override
+    protected void onFailure(Exception occuredException) {
+        callback.onError(new APYException(
+                "Entities could not be fetched. For further information about the actual problem, "
+                + "please inspect the 'cause' object.", occuredException));
     }
 
 }
@@ -0,0 +1,93 @@
+package com.apitrary.sdk;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of {@link APYClient#fetchMany(String, java.util.Collection)}. Every
+ * requested ID is contained in exactly one of the fetched entities, the
+ * missing IDs or the failed IDs.
+ */
+public class APYFetchManyResult {
+
+    /**
+     * The fetched entities by ID, in the order of the requested IDs.
+     */
+    private final Map<String, APYEntity> entities = new LinkedHashMap<String, APYEntity>();
+
+    /**
+     * The IDs no entity exists for.
+     */
+    private final Set<String> missingIds = new LinkedHashSet<String>();
+
+    /**
+     * The errors of the IDs that could not be fetched for other reasons.
+     */
+    private final Map<String, APYException> failures = new LinkedHashMap<String, APYException>();
+
+    /**
+     * Returns the fetched entities.
+     *
+     * @return an unmodifiable map of the fetched entities by ID, in the order
+     *         of the requested IDs
+     */
+    public Map<String, APYEntity> getEntities() {
+        return Collections.unmodifiableMap(entities);
+    }
+
+    /**
+     * Returns the requested IDs no entity exists for on the apitrary backend.
+     *
+     * @return an unmodifiable set of the missing IDs
+     */
+    public Set<String> getMissingIds() {
+        return Collections.unmodifiableSet(missingIds);
+    }
+
+    /**
+     * Returns the errors of the IDs that could not be fetched for other
+     * reasons than a missing entity, e.g. backend errors.
+     *
+     * @return an unmodifiable map of the errors by ID
+     */
+    public Map<String, APYException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Returns whether any ID could not be fetched for other reasons than a
+     * missing entity.
+     *
+     * @return true if there was at least one failure, false otherwise
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    void addEntity(String entityId, APYEntity entity) {
+        entities.put(entityId, entity);
+    }
+
+    void addMissingId(String entityId) {
+        missingIds.add(entityId);
+    }
+
+    void addFailure(String entityId, APYException error) {
+        failures.put(entityId, error);
+    }
+
+    /**
+     * Adds all entries of the given result to this result.
+     *
+     * @param result the result to merge into this one
+     */
+    void merge(APYFetchManyResult result) {
+        entities.putAll(result.entities);
+        missingIds.addAll(result.missingIds);
+        failures.putAll(result.failures);
+    }
+
+}
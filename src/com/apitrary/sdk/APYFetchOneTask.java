@@ -1,16 +1,11 @@
 package com.apitrary.sdk;
 
-import android.os.AsyncTask;
-
 /**
- * {@link AsyncTask} implementation used to asynchronously fetch an entity
+ * {@link APYAsyncTask} implementation used to asynchronously fetch an entity
  * from the apitrary backend. Uses a {@link APYFetchOneCallback} to inform the
  * caller about the outcome.
- * <p>
- * <b>Notice:</b> The execute() method expects the entity name and the entity ID as String parameters.
- * </p>
  */
-class APYFetchOneTask extends AsyncTask<String, Void, APYEntity> {
+class APYFetchOneTask extends APYAsyncTask<APYEntity> {
 
     /**
      * Callback used to inform the caller about the outcome.
@@ -18,58 +13,57 @@ class APYFetchOneTask extends AsyncTask<String, Void, APYEntity> {
     private APYFetchOneCallback callback;
 
     /**
-     * Invoker for the HTTP request.
+     * Client executing the actual operation.
      */
-    private APYHttpRequestInvoker requestInvoker;
+    private APYClient client;
 
     /**
-     * Exception that might have occurred during "doInBackground()" and is
-     * evaluated in "onPostExecute()".
+     * The name identifying the kind of entity to fetch.
      */
-    private Exception occuredException;
+    private String entityName;
 
+    /**
+     * The ID of the entity to fetch.
+     */
+    private String entityId;
 
     /**
-     * Constructs an instance of {@link APYFetchAllTask}.
+     * Constructs an instance of {@link APYFetchOneTask}.
      * 
-     * @param requestInvoker
-     *            the {@link APYHttpRequestInvoker} instance used to invoke the
-     *            actual request.
+     * @param client
+     *            the {@link APYClient} instance used to execute the actual
+     *            operation.
      * @param callback
      *            the callback used to inform the caller about the outcome.
+     * @param entityName
+     *            the name identifying the kind of entity to fetch
+     * @param entityId
+     *            the ID of the entity to fetch
      */
-    APYFetchOneTask(APYHttpRequestInvoker requestInvoker, APYFetchOneCallback callback) {
+    APYFetchOneTask(APYClient client, APYFetchOneCallback callback,
+            String entityName, String entityId) {
         // TODO Validate parameters
-        this.requestInvoker = requestInvoker;
+        this.client = client;
         this.callback = callback;
+        this.entityName = entityName;
+        this.entityId = entityId;
     }
-    
-    @Override
-    protected APYEntity doInBackground(String... params) {
-        String entityName = params[0];
-        String entityId = params[1];
-
-        APYEntity fetchedEntity = null;
-        try {
-            fetchedEntity = requestInvoker.fetchOne(entityName, entityId);
-        } catch (IllegalArgumentException e) {
-            occuredException = e;
-        } catch (APYException e) {
-            occuredException = e;
-        }
 
-        return fetchedEntity;
+    @Override
+    protected APYEntity doInBackground() throws APYException {
+        return client.fetchOne(entityName, entityId);
     }
 
     @Override
     protected void onPostExecute(APYEntity fetchedEntity) {
-        if (occuredException == null) {
-            callback.onSuccess(fetchedEntity);
-        } else {
-            callback.onError(new APYException(
-                    "Entity could not be fetched. For further information about the actual problem, "
-                    + "please inspect the 'cause' object.", occuredException));
-        }
+        callback.onSuccess(fetchedEntity);
+    }
+
+    @Override
+    protected void onFailure(Exception occuredException) {
+        callback.onError(new APYException(
+                "Entity could not be fetched. For further information about the actual problem, "
+                + "please inspect the 'cause' object.", occuredException));
     }
 
 }
@@ -0,0 +1,20 @@
+package com.apitrary.sdk;
+
+/**
+ * Function applied to the result of an {@link APYFuture}.
+ *
+ * @param <T> the type of the input
+ * @param <R> the type of the output
+ */
+public interface APYFunction<T, R> {
+
+    /**
+     * Applies this function to the given input.
+     *
+     * @param input the result of the preceding future
+     * @return the output of the function
+     * @throws APYException if the function failed, which fails the chained future
+     */
+    R apply(T input) throws APYException;
+
+}
@@ -0,0 +1,441 @@
+package com.apitrary.sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Composable result of an asynchronous operation. In addition to the blocking
+ * {@link Future} methods, callbacks can be attached and futures can be chained
+ * with {@link #then(APYFunction)} and {@link #thenCompose(APYFunction)} or
+ * joined with {@link #allOf(List)} without blocking a thread.
+ * <p>
+ * <b>Notice:</b> Callbacks and functions attached without an {@link Executor}
+ * are called on the thread completing the future, usually a worker thread of
+ * the {@link APYClient}, or directly on the attaching thread if the future is
+ * already done. Keep them short or pass an {@link Executor}.
+ * </p>
+ *
+ * @param <T> the type of the operation's result
+ */
+public class APYFuture<T> implements Future<T> {
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    /**
+     * The state of this future, guarded by this.
+     */
+    private int state = PENDING;
+
+    /**
+     * The result if this future succeeded.
+     */
+    private T result;
+
+    /**
+     * The error if this future failed or was cancelled.
+     */
+    private APYException error;
+
+    /**
+     * Listeners to notify on completion, guarded by this. Null once completed.
+     */
+    private List<Runnable> listeners = new ArrayList<Runnable>();
+
+    /**
+     * Constructs a pending {@link APYFuture}.
+     */
+    APYFuture() {
+    }
+
+    /**
+     * Returns an already succeeded future holding the given result.
+     *
+     * @param result the result of the future
+     * @return a completed {@link APYFuture}
+     */
+    public static <T> APYFuture<T> completed(T result) {
+        APYFuture<T> future = new APYFuture<T>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Returns a future that succeeds with the results of all given futures, in
+     * the same order, once all of them succeeded, or fails as soon as one of
+     * them failed.
+     *
+     * @param futures the futures to join
+     * @return an {@link APYFuture} of the list of all results
+     * @throws IllegalArgumentException if the given list was null
+     */
+    public static <T> APYFuture<List<T>> allOf(final List<APYFuture<T>> futures) throws IllegalArgumentException {
+        if (futures == null) {
+            throw new IllegalArgumentException("The given list of futures was null.");
+        }
+
+        final APYFuture<List<T>> joinedFuture = new APYFuture<List<T>>();
+        if (futures.isEmpty()) {
+            joinedFuture.complete(Collections.<T>emptyList());
+            return joinedFuture;
+        }
+
+        final AtomicInteger pendingCount = new AtomicInteger(futures.size());
+        for (APYFuture<T> future : futures) {
+            future.addCallback(new APYFutureCallback<T>() {
+                @Override
+                public void onSuccess(T result) {
+                    if (pendingCount.decrementAndGet() == 0) {
+                        List<T> results = new ArrayList<T>(futures.size());
+                        for (APYFuture<T> completedFuture : futures) {
+                            results.add(completedFuture.getResult());
+                        }
+                        joinedFuture.complete(results);
+                    }
+                }
+
+                @Override
+                public void onError(APYException error) {
+                    joinedFuture.fail(error);
+                }
+            });
+        }
+        return joinedFuture;
+    }
+
+    /**
+     * Attaches a callback called once this future is done.
+     *
+     * @param callback the callback to attach
+     * @throws IllegalArgumentException if the given callback was null
+     */
+    public void addCallback(APYFutureCallback<? super T> callback) throws IllegalArgumentException {
+        addCallback(callback, null);
+    }
+
+    /**
+     * Attaches a callback called on the given executor once this future is done.
+     *
+     * @param callback the callback to attach
+     * @param executor the executor to call the callback on, or null to call it directly
+     * @throws IllegalArgumentException if the given callback was null
+     */
+    public void addCallback(final APYFutureCallback<? super T> callback, final Executor executor)
+            throws IllegalArgumentException {
+        if (callback == null) {
+            throw new IllegalArgumentException("The given callback was null.");
+        }
+
+        addListener(new Runnable() {
+            @Override
+            public void run() {
+                Runnable notification = new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isSucceeded()) {
+                            callback.onSuccess(getResult());
+                        } else {
+                            callback.onError(getError());
+                        }
+                    }
+                };
+
+                if (executor != null) {
+                    executor.execute(notification);
+                } else {
+                    notification.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a future that succeeds with the result of applying the given
+     * function to the result of this future.
+     *
+     * @param function the function to apply
+     * @return an {@link APYFuture} of the function's result
+     * @throws IllegalArgumentException if the given function was null
+     */
+    public <R> APYFuture<R> then(final APYFunction<? super T, ? extends R> function) throws IllegalArgumentException {
+        if (function == null) {
+            throw new IllegalArgumentException("The given function was null.");
+        }
+
+        final APYFuture<R> chainedFuture = new APYFuture<R>();
+        addCallback(new APYFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                try {
+                    chainedFuture.complete(function.apply(result));
+                } catch (APYException e) {
+                    chainedFuture.fail(e);
+                } catch (RuntimeException e) {
+                    chainedFuture.fail(new APYException(e));
+                }
+            }
+
+            @Override
+            public void onError(APYException error) {
+                chainedFuture.fail(error);
+            }
+        });
+        return chainedFuture;
+    }
+
+    /**
+     * Returns a future that completes like the future returned by the given
+     * function, which is applied to the result of this future.
+     *
+     * @param function the function starting the next operation
+     * @return an {@link APYFuture} of the next operation's result
+     * @throws IllegalArgumentException if the given function was null
+     */
+    public <R> APYFuture<R> thenCompose(final APYFunction<? super T, APYFuture<R>> function)
+            throws IllegalArgumentException {
+        if (function == null) {
+            throw new IllegalArgumentException("The given function was null.");
+        }
+
+        final APYFuture<R> chainedFuture = new APYFuture<R>();
+        addCallback(new APYFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                APYFuture<R> nextFuture;
+                try {
+                    nextFuture = function.apply(result);
+                } catch (APYException e) {
+                    chainedFuture.fail(e);
+                    return;
+                } catch (RuntimeException e) {
+                    chainedFuture.fail(new APYException(e));
+                    return;
+                }
+
+                if (nextFuture == null) {
+                    chainedFuture.fail(new APYException("The composing function returned null."));
+                    return;
+                }
+
+                nextFuture.addCallback(new APYFutureCallback<R>() {
+                    @Override
+                    public void onSuccess(R nextResult) {
+                        chainedFuture.complete(nextResult);
+                    }
+
+                    @Override
+                    public void onError(APYException error) {
+                        chainedFuture.fail(error);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(APYException error) {
+                chainedFuture.fail(error);
+            }
+        });
+        return chainedFuture;
+    }
+
+    /**
+     * Cancels this future if it is not done yet. Operations which did not
+     * start yet are not executed. Callbacks are informed through onError().
+     *
+     * @param mayInterruptIfRunning ignored, running requests are not interrupted
+     * @return true if this future was cancelled, false if it was already done
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return finish(CANCELLED, null, new APYException("The operation was cancelled.", new CancellationException()));
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != PENDING;
+    }
+
+    /**
+     * Waits until this future is done and returns its result.
+     *
+     * @throws ExecutionException
+     *             if the operation failed. The cause is an {@link APYException}.
+     * @throws CancellationException
+     *             if this future was cancelled
+     * @throws InterruptedException
+     *             if the current thread was interrupted while waiting
+     */
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (state == PENDING) {
+            wait();
+        }
+        return reportResult();
+    }
+
+    /**
+     * Waits at most for the given time until this future is done and returns its result.
+     *
+     * @throws ExecutionException
+     *             if the operation failed. The cause is an {@link APYException}.
+     * @throws CancellationException
+     *             if this future was cancelled
+     * @throws InterruptedException
+     *             if the current thread was interrupted while waiting
+     * @throws TimeoutException
+     *             if this future was not done in time
+     */
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long remainingNanos = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + remainingNanos;
+        while (state == PENDING) {
+            if (remainingNanos <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            remainingNanos = deadline - System.nanoTime();
+        }
+        return reportResult();
+    }
+
+    /**
+     * Waits until this future is done, ignoring interrupts, and returns its
+     * result. The interrupt flag is restored afterwards.
+     *
+     * @return the result of the operation
+     * @throws APYException
+     *             if the operation failed or was cancelled
+     */
+    T await() throws APYException {
+        boolean interrupted = false;
+        try {
+            synchronized (this) {
+                while (state == PENDING) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (state != SUCCEEDED) {
+                    throw error;
+                }
+                return result;
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Completes this future with the given result.
+     *
+     * @param result the result
+     * @return true if this future was completed, false if it was already done
+     */
+    boolean complete(T result) {
+        return finish(SUCCEEDED, result, null);
+    }
+
+    /**
+     * Completes this future with the given error.
+     *
+     * @param error the error
+     * @return true if this future was completed, false if it was already done
+     */
+    boolean fail(APYException error) {
+        return finish(FAILED, null, error);
+    }
+
+    /**
+     * Registers a listener run once this future is done, directly if it
+     * already is.
+     *
+     * @param listener the listener to run
+     */
+    void addListener(Runnable listener) {
+        synchronized (this) {
+            if (state == PENDING) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * Returns true if this future succeeded.
+     */
+    synchronized boolean isSucceeded() {
+        return state == SUCCEEDED;
+    }
+
+    /**
+     * Returns the result if this future succeeded, null otherwise.
+     */
+    synchronized T getResult() {
+        return result;
+    }
+
+    /**
+     * Returns the error if this future failed or was cancelled, null otherwise.
+     */
+    synchronized APYException getError() {
+        return error;
+    }
+
+    /**
+     * Moves this future into the given final state and runs the listeners.
+     */
+    private boolean finish(int finalState, T finalResult, APYException finalError) {
+        List<Runnable> completedListeners;
+        synchronized (this) {
+            if (state != PENDING) {
+                return false;
+            }
+            state = finalState;
+            result = finalResult;
+            error = finalError;
+            completedListeners = listeners;
+            listeners = null;
+            notifyAll();
+        }
+
+        for (Runnable listener : completedListeners) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the result or throws the exception matching the final state.
+     */
+    private T reportResult() throws ExecutionException {
+        if (state == CANCELLED) {
+            throw (CancellationException) new CancellationException("The operation was cancelled.").initCause(error);
+        } else if (state == FAILED) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.apitrary.sdk;
+
+/**
+ * Callback interface used by an {@link APYFuture} to inform the caller about
+ * the operations outcome.
+ *
+ * @param <T> the type of the operation's result
+ */
+public interface APYFutureCallback<T> {
+
+    /**
+     * Called if the operation succeeded.
+     *
+     * @param result the result of the operation
+     */
+    void onSuccess(T result);
+
+    /**
+     * Called if the operation failed or was cancelled.
+     *
+     * @param error an instance of {@link APYException} containing further information about the error
+     */
+    void onError(APYException error);
+
+}
@@ -0,0 +1,170 @@
+package com.apitrary.sdk;
+
+/**
+ * Configuration of hedged read requests of an {@link APYClient}. A read
+ * which has not been answered within a delay derived from the recent
+ * response times, e.g. their 95th percentile, is sent a second time. The
+ * first response is used and the other request is cancelled. Hedging cuts
+ * the response times caused by a few slow backend responses at the cost of
+ * a small amount of extra requests.
+ * <p>
+ * The extra load is capped: every read earns a fraction of a hedge, and a
+ * hedge is only sent while this budget is not used up. If the backend is
+ * slow as a whole, most reads exceed the delay, the budget runs out and
+ * hedging stops instead of doubling the load.
+ * </p>
+ */
+public class APYHedgingPolicy {
+
+    /**
+     * The default percentile of the response times used as hedging delay.
+     */
+    public static final double DEFAULT_PERCENTILE = 0.95;
+
+    /**
+     * The default minimal hedging delay in milliseconds.
+     */
+    public static final long DEFAULT_MIN_DELAY = 10;
+
+    /**
+     * The default ratio of hedges to reads.
+     */
+    public static final double DEFAULT_MAX_EXTRA_LOAD = 0.05;
+
+    /**
+     * The default number of hedges the budget holds at most.
+     */
+    public static final int DEFAULT_MAX_HEDGE_TOKENS = 10;
+
+    /**
+     * The percentile of the response times used as hedging delay.
+     */
+    private double percentile = DEFAULT_PERCENTILE;
+
+    /**
+     * The minimal hedging delay in milliseconds.
+     */
+    private long minDelay = DEFAULT_MIN_DELAY;
+
+    /**
+     * The ratio of hedges to reads.
+     */
+    private double maxExtraLoad = DEFAULT_MAX_EXTRA_LOAD;
+
+    /**
+     * The number of hedges the budget holds at most.
+     */
+    private int maxHedgeTokens = DEFAULT_MAX_HEDGE_TOKENS;
+
+    /**
+     * Returns the percentile of the response times used as hedging delay.
+     *
+     * @return the percentile as a fraction, e.g. 0.95
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Sets the percentile of the recent response times used as hedging
+     * delay, e.g. 0.95 to hedge the reads slower than 95 percent of the
+     * recent ones. Reads are only hedged once enough response times were
+     * recorded.
+     *
+     * @param percentile the percentile as a fraction, must be > 0 and < 1
+     * @throws IllegalArgumentException
+     *             if the given percentile was not within (0, 1)
+     */
+    public void setPercentile(double percentile) throws IllegalArgumentException {
+        if (!(percentile > 0 && percentile < 1)) {
+            throw new IllegalArgumentException("The percentile must be > 0 and < 1.");
+        }
+        this.percentile = percentile;
+    }
+
+    /**
+     * Returns the minimal hedging delay.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * Sets the minimal hedging delay, which applies if the percentile of the
+     * response times is shorter.
+     *
+     * @param minDelay the delay in milliseconds, must be >= 0
+     * @throws IllegalArgumentException
+     *             if the given delay was negative
+     */
+    public void setMinDelay(long minDelay) throws IllegalArgumentException {
+        if (minDelay < 0) {
+            throw new IllegalArgumentException("The minimal delay must be >= 0.");
+        }
+        this.minDelay = minDelay;
+    }
+
+    /**
+     * Returns the ratio of hedges to reads.
+     *
+     * @return the maximal extra load as a fraction
+     */
+    public double getMaxExtraLoad() {
+        return maxExtraLoad;
+    }
+
+    /**
+     * Sets the ratio of hedges to reads, e.g. 0.05 to send at most five
+     * extra requests per hundred reads once the budget is used up.
+     *
+     * @param maxExtraLoad the maximal extra load as a fraction, must be >= 0
+     * @throws IllegalArgumentException
+     *             if the given ratio was negative or not a number
+     */
+    public void setMaxExtraLoad(double maxExtraLoad) throws IllegalArgumentException {
+        if (!(maxExtraLoad >= 0)) {
+            throw new IllegalArgumentException("The maximal extra load must be >= 0.");
+        }
+        this.maxExtraLoad = maxExtraLoad;
+    }
+
+    /**
+     * Returns the number of hedges the budget holds at most.
+     *
+     * @return the maximal number of hedge tokens
+     */
+    public int getMaxHedgeTokens() {
+        return maxHedgeTokens;
+    }
+
+    /**
+     * Sets the number of hedges the budget holds at most, i.e. the number
+     * of hedges allowed in a burst. The budget starts full.
+     *
+     * @param maxHedgeTokens the maximal number of hedge tokens, must be >= 0
+     * @throws IllegalArgumentException
+     *             if the given number was negative
+     */
+    public void setMaxHedgeTokens(int maxHedgeTokens) throws IllegalArgumentException {
+        if (maxHedgeTokens < 0) {
+            throw new IllegalArgumentException("The maximal number of hedge tokens must be >= 0.");
+        }
+        this.maxHedgeTokens = maxHedgeTokens;
+    }
+
+    /**
+     * Returns a copy of this policy, so later changes do not affect a client
+     * the policy was set on.
+     */
+    APYHedgingPolicy copy() {
+        APYHedgingPolicy copy = new APYHedgingPolicy();
+        copy.percentile = percentile;
+        copy.minDelay = minDelay;
+        copy.maxExtraLoad = maxExtraLoad;
+        copy.maxHedgeTokens = maxHedgeTokens;
+        return copy;
+    }
+
+}
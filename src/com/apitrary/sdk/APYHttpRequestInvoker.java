@@ -1,25 +1,21 @@
 package com.apitrary.sdk;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.charset.CharacterCodingException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import android.os.Build;
 import android.util.Log;
 
 import com.apitrary.sdk.APYException.APYExceptionDetailCode;
@@ -48,30 +44,391 @@ class APYHttpRequestInvoker {
     /**
      * The timeout for any request in milliseconds.
      */
-    private int timeout;
+    private volatile int timeout;
+
+    /**
+     * The shared transport used to open and release connections.
+     */
+    private final APYHttpTransport transport;
+
+    /**
+     * The store of validators sent with conditional requests, or null if
+     * conditional requests are disabled.
+     */
+    private volatile APYValidatorStore validatorStore;
+
+    /**
+     * The minimal size in bytes of a request body to be sent gzip compressed,
+     * or 0 if request bodies are never compressed.
+     */
+    private volatile int requestCompressionThreshold;
+
+    /**
+     * Whether fetched entities keep their properties as JSON text which is
+     * decoded on first access.
+     */
+    private volatile boolean lazyDecodingEnabled;
+
+    /**
+     * The policy of retrying failed idempotent requests, or null if requests
+     * are not retried.
+     */
+    private volatile APYRetryPolicy retryPolicy;
+
+    /**
+     * The budget limiting the retries of all requests, set along with the
+     * retry policy.
+     */
+    private volatile APYRetryBudget retryBudget;
+
+    /**
+     * The hedger of read requests, or null if reads are not hedged.
+     */
+    private volatile APYRequestHedger requestHedger;
+
+    /**
+     * The source of the backoff jitter.
+     */
+    private final Random random = new Random();
 
     /**
      * Constructs an instance of {@link APYHttpRequestInvoker} used to invoke
-     * HTTP requests on the given URL.
+     * HTTP requests on the given URL. A single instance is meant to be shared by
+     * all requests of an {@link APYClient} and is safe for concurrent use.
      * 
      * @param apiUrl the API URL to invoke HTTP requests on
+     * @param apiKey the API key used to access the backend API
      * @param timeout the request timeout in milliseconds. If < 1 no timeout is set
+     * @param transport the {@link APYHttpTransport} used to open connections
      */
-    APYHttpRequestInvoker(URL apiUrl, String apiKey, int timeout) {
+    APYHttpRequestInvoker(URL apiUrl, String apiKey, int timeout, APYHttpTransport transport) {
         // TODO Validate the URL and timeout
         this.apiUrl = apiUrl;
         this.apiKey = apiKey;
         this.timeout = timeout;
+        this.transport = transport;
+    }
+
+    /**
+     * Sets the timeout used for any subsequent request.
+     *
+     * @param timeout the request timeout in milliseconds. If < 1 no timeout is set
+     */
+    void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the store of validators sent with conditional fetch requests.
+     *
+     * @param validatorStore the {@link APYValidatorStore} to use, or null to disable conditional requests
+     */
+    void setValidatorStore(APYValidatorStore validatorStore) {
+        this.validatorStore = validatorStore;
+    }
+
+    /**
+     * Sets the minimal size of a request body to be sent gzip compressed.
+     *
+     * @param requestCompressionThreshold the size in bytes, or 0 to never compress request bodies
+     */
+    void setRequestCompressionThreshold(int requestCompressionThreshold) {
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    /**
+     * Sets whether fetched entities are decoded lazily.
+     *
+     * @param lazyDecodingEnabled true to decode the properties of fetched entities on first access
+     */
+    void setLazyDecodingEnabled(boolean lazyDecodingEnabled) {
+        this.lazyDecodingEnabled = lazyDecodingEnabled;
+    }
+
+    /**
+     * Sets the policy of retrying failed idempotent requests and starts a new
+     * retry budget.
+     *
+     * @param retryPolicy the {@link APYRetryPolicy} to apply, or null to never retry requests
+     */
+    void setRetryPolicy(APYRetryPolicy retryPolicy) {
+        this.retryBudget = retryPolicy != null ? new APYRetryBudget(retryPolicy) : null;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the policy of hedging slow read requests. The previous hedger is
+     * shut down and the recorded response times are dropped.
+     *
+     * @param hedgingPolicy the {@link APYHedgingPolicy} to apply, or null to never hedge requests
+     */
+    void setHedgingPolicy(APYHedgingPolicy hedgingPolicy) {
+        APYRequestHedger previousHedger = requestHedger;
+        requestHedger = hedgingPolicy != null ? new APYRequestHedger(hedgingPolicy) : null;
+        if (previousHedger != null) {
+            previousHedger.shutdown();
+        }
+    }
+
+    /**
+     * Executes the given idempotent request, retrying it according to the
+     * retry policy if it failed with a network error or an error on the
+     * backend side and the retry budget allows it.
+     *
+     * @param request
+     *            the request to execute
+     * @return the result of the request
+     * @throws APYException
+     *             the error of the last attempt
+     */
+    private <T> T executeIdempotent(Request<T> request) throws APYException {
+        APYRetryPolicy policy = retryPolicy;
+        APYRetryBudget budget = retryBudget;
+        if (policy == null || budget == null) {
+            return request.execute();
+        }
+
+        budget.onRequest();
+        long backoff = Math.min(policy.getInitialBackoff(), policy.getMaxBackoff());
+        for (int attempt = 1;; attempt++) {
+            try {
+                return request.execute();
+            } catch (APYException e) {
+                if (attempt >= policy.getMaxAttempts() || !isRetryable(e) || !budget.tryAcquire()) {
+                    throw e;
+                }
+
+                // Full jitter: wait a random time up to the current backoff
+                long delay = (long) (random.nextDouble() * backoff);
+                Log.d(LOG_TAG, "Retrying the failed request in ".concat(String.valueOf(delay)).concat(" ms: ")
+                        .concat(String.valueOf(e.getMessage())));
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(backoff * 2, policy.getMaxBackoff());
+            }
+        }
+    }
+
+    /**
+     * Returns whether a request failing with the given error may succeed when
+     * retried, i.e. whether it failed with an error on the backend side or
+     * while connecting to or reading from the network.
+     */
+    private static boolean isRetryable(APYException error) {
+        return error.getDetailCode() == APYExceptionDetailCode.BACKEND_ERROR || isNetworkFailure(error.getCause());
+    }
+
+    /**
+     * Returns whether the given cause of a failed request is an error of the
+     * network connection. A response which could not be read, a request
+     * which timed out waiting for a pooled connection and a request which
+     * was cancelled or interrupted did not fail on the network.
+     *
+     * @param cause
+     *            the cause of the failure, may be null
+     * @return true if the request failed connecting to or reading from the network
+     */
+    static boolean isNetworkFailure(Throwable cause) {
+        if (!(cause instanceof IOException)) {
+            return false;
+        }
+        if (cause instanceof APYMalformedResponseException || cause instanceof CharacterCodingException
+                || cause instanceof APYHttpTransport.PermitTimeoutException) {
+            return false;
+        }
+        return !(cause instanceof InterruptedIOException) || cause instanceof SocketTimeoutException;
+    }
+
+    /**
+     * Fetches all entities for the given entity (type) name from the apitrary
+     * backend. If conditional requests are enabled and the collection was not
+     * modified since it was last fetched, the stored entities are returned.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param query
+     *            the query parameters appended to the request URL, see
+     *            {@link APYQuery#toQueryString()}, or an empty string
+     * @return a list of all (matching) entities
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    List<APYEntity> fetchAll(final String entityName, final String query)
+            throws IllegalArgumentException, APYException {
+        return executeIdempotent(new Request<List<APYEntity>>() {
+            @Override
+            public List<APYEntity> execute() throws APYException {
+                return fetchAllOnce(entityName, query);
+            }
+        });
+    }
+
+    /**
+     * Sends a single request fetching all entities, see {@link #fetchAll(String, String)}.
+     */
+    private List<APYEntity> fetchAllOnce(String entityName, String query) throws IllegalArgumentException, APYException {
+        // Validate the entity name
+        if (APYUtils.isNullOrEmpty(entityName)) {
+            throw new IllegalArgumentException("The given entity name was null or empty.");
+        }
+
+        String resource = entityName.toLowerCase(Locale.US).concat(query);
+        APYValidatorStore store = validatorStore;
+        APYValidatorStore.Validated validated = store != null ? store.get(resource) : null;
+
+        APYEntityIterator iterator = openFetchAll(entityName, query, validated, null);
+        if (iterator == null) {
+            // 304 - Not Modified
+            return validated.copyEntities();
+        }
+
+        try {
+            String etag = iterator.getHeaderField("ETag");
+            String lastModified = iterator.getHeaderField("Last-Modified");
 
-        disableConnectionReuseIfNecessary();
+            List<APYEntity> resultEntities = new ArrayList<APYEntity>();
+            APYEntity resultEntity;
+            while ((resultEntity = iterator.readEntity()) != null) {
+                resultEntities.add(resultEntity);
+            }
+
+            if (store != null) {
+                store.put(resource, etag, lastModified, resultEntities);
+            }
+            return resultEntities;
+        } catch (IOException e) {
+            throw new APYException("Entities of type '".concat(entityName).concat("' could not be fetched."), e);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * Fetches all entities of the given mapper's entity name from the apitrary
+     * backend and reads them directly into objects of the mapped class.
+     * 
+     * @param mapper
+     *            the {@link APYMapper} of the class to read the entities into
+     * @param query
+     *            the query parameters appended to the request URL, see
+     *            {@link APYQuery#toQueryString()}, or an empty string
+     * @return a list of all (matching) objects
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    <T> List<T> fetchAll(final APYMapper<T> mapper, final String query) throws APYException {
+        return executeIdempotent(new Request<List<T>>() {
+            @Override
+            public List<T> execute() throws APYException {
+                return fetchAllOnce(mapper, query);
+            }
+        });
+    }
+
+    /**
+     * Sends a single request fetching all objects, see {@link #fetchAll(APYMapper, String)}.
+     */
+    private <T> List<T> fetchAllOnce(APYMapper<T> mapper, String query) throws APYException {
+        String entityName = mapper.getEntityName();
+        APYEntityIterator iterator = openFetchAll(entityName, query, null, null);
+        try {
+            List<T> resultObjects = new ArrayList<T>();
+            T resultObject;
+            while ((resultObject = iterator.readObject(mapper)) != null) {
+                resultObjects.add(resultObject);
+            }
+            return resultObjects;
+        } catch (IOException e) {
+            throw new APYException("Entities of type '".concat(entityName).concat("' could not be fetched."), e);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * Fetches all entities for the given entity (type) name from the apitrary
+     * backend and hands them over to the given callback one by one while they
+     * are read. The callback is called on the current thread.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param callback
+     *            the {@link APYEntityStreamCallback} to hand the entities over to
+     */
+    void fetchAll(String entityName, APYEntityStreamCallback callback) {
+        APYEntityIterator iterator;
+        try {
+            iterator = openFetchAll(entityName);
+        } catch (IllegalArgumentException e) {
+            callback.onError(new APYException("Entities could not be fetched. For further information about the "
+                    + "actual problem, please inspect the 'cause' object.", e));
+            return;
+        } catch (APYException e) {
+            callback.onError(e);
+            return;
+        }
+
+        try {
+            APYEntity entity;
+            while ((entity = iterator.readEntity()) != null) {
+                if (!callback.onEntity(entity)) {
+                    Log.d(LOG_TAG, "Stopped fetching entities of type '".concat(entityName).concat("' early."));
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            callback.onError(new APYException(
+                    "Entities of type '".concat(entityName).concat("' could not be fetched."), e));
+            return;
+        } finally {
+            iterator.close();
+        }
+        callback.onComplete();
+    }
+
+    /**
+     * Sends the request fetching all entities for the given entity (type) name
+     * and returns an {@link APYEntityIterator} reading the entities off the
+     * response while they arrive. The caller must close the returned iterator.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @return an {@link APYEntityIterator} positioned in front of the first entity
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    APYEntityIterator openFetchAll(String entityName) throws IllegalArgumentException, APYException {
+        return openFetchAll(entityName, "", null, null);
     }
 
     /**
-     * Fetches all entities for the given entity (type) name from the apitrary backend.
+     * Fetches a page of the entities for the given entity (type) name from the
+     * apitrary backend.
      * 
      * @param entityName
      *            the name identifying the kind of entities to fetch
-     * @return a list of all entities
+     * @param offset
+     *            the number of entities to skip
+     * @param pageSize
+     *            the maximal number of entities of the page
+     * @return the fetched {@link APYPage}
      * @throws IllegalArgumentException
      *             if the given entity name was null or empty
      * @throws APYException
@@ -80,60 +437,130 @@ class APYHttpRequestInvoker {
      *             <li>if anything else went wrong</li>
      *             </ul>
      */
-    List<APYEntity> fetchAll(String entityName) throws IllegalArgumentException, APYException {
+    APYPage fetchPage(final String entityName, final int offset, final int pageSize)
+            throws IllegalArgumentException, APYException {
+        return executeIdempotent(new Request<APYPage>() {
+            @Override
+            public APYPage execute() throws APYException {
+                APYRequestHedger hedger = requestHedger;
+                if (hedger == null) {
+                    return fetchPageOnce(entityName, offset, pageSize, null);
+                }
+                return hedger.execute("fetchPage", new APYRequestHedger.HedgedRequest<APYPage>() {
+                    @Override
+                    public APYPage execute(APYCancellationToken cancellationToken) throws APYException {
+                        return fetchPageOnce(entityName, offset, pageSize, cancellationToken);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Sends a single request fetching a page, see {@link #fetchPage(String, int, int)}.
+     * The connection is attached to the given token, if any, so the request
+     * can be cancelled.
+     */
+    private APYPage fetchPageOnce(String entityName, int offset, int pageSize,
+            APYCancellationToken cancellationToken) throws IllegalArgumentException, APYException {
+        String query = "&offset=".concat(String.valueOf(offset)).concat("&limit=").concat(String.valueOf(pageSize));
+        APYEntityIterator iterator = openFetchAll(entityName, query, null, cancellationToken);
+        try {
+            List<APYEntity> resultEntities = new ArrayList<APYEntity>(pageSize);
+            APYEntity resultEntity;
+            while ((resultEntity = iterator.readEntity()) != null) {
+                resultEntities.add(resultEntity);
+            }
+            return new APYPage(entityName, offset, pageSize, iterator.getResultCount(), resultEntities);
+        } catch (IOException e) {
+            throw new APYException("Entities of type '".concat(entityName).concat("' could not be fetched."), e);
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * Sends the request fetching all entities for the given entity (type) name,
+     * conditional on the given validators, and returns an
+     * {@link APYEntityIterator} reading the entities off the response while
+     * they arrive. The caller must close the returned iterator.
+     * 
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param query
+     *            the query parameters appended to the request URL, each
+     *            starting with '&amp;', or an empty string
+     * @param validated
+     *            the validators of the previous response or null to send an
+     *            unconditional request
+     * @param cancellationToken
+     *            the token the connection is attached to, or null if the
+     *            request can not be cancelled
+     * @return an {@link APYEntityIterator} positioned in front of the first
+     *         entity or null if the collection was not modified
+     * @throws IllegalArgumentException
+     *             if the given entity name was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    private APYEntityIterator openFetchAll(String entityName, String query, APYValidatorStore.Validated validated,
+            APYCancellationToken cancellationToken) throws IllegalArgumentException, APYException {
         // Validate the entity name
         if (APYUtils.isNullOrEmpty(entityName)) {
             throw new IllegalArgumentException("The given entity name was null or empty.");
         }
 
+        HttpURLConnection connection = null;
         try {
             // The full URL the request will be sent to
-            URL requestUrl = new URL(apiUrl, entityName.toLowerCase(Locale.US).concat("&apiKey=").concat(apiKey));
+            URL requestUrl = new URL(apiUrl,
+                    entityName.toLowerCase(Locale.US).concat("&apiKey=").concat(apiKey).concat(query));
 
             Log.d(LOG_TAG, "GET ".concat(requestUrl.toString()));
 
-            HttpURLConnection connection = prepareGetConnection(requestUrl, timeout);
+            connection = prepareGetConnection(requestUrl, timeout,
+                    cancellationToken == null || cancellationToken.waitsForConnection());
+            if (cancellationToken != null) {
+                cancellationToken.attach(transport, connection);
+            }
+            if (validated != null) {
+                validated.applyTo(connection);
+            }
             connection.connect();
 
             // Handle the response
-            int responseCode; responseCode = connection.getResponseCode();
+            int responseCode = connection.getResponseCode();
             String responseMessage = connection.getResponseMessage();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && validated != null) {
+                // 304 - Not Modified, the caller serves the stored entities
+                Log.d(LOG_TAG, "Entities of type '".concat(entityName).concat("' were not modified. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+                return null;
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
                 // Everything is fine
 
                 Log.d(LOG_TAG, "Successfully fetched the entities. HTTP status: "
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
 
-                // Extract the JSON response object form the response stream
-                JSONObject responseJsonObject = getResponseJson(connection.getInputStream());
-
-                // Extract the JSON 'result' array
-                JSONArray jsonResultArray = getResultArrayFromResponseJson(responseJsonObject);
-
-                // Iterate over all single result objects and convert those into APYEntity instances
-                JSONObject singleJsonResultObject = null;
-                List<APYEntity> resultEntities = new ArrayList<APYEntity>();
-                APYEntity resultEntity = null;
-                for (int index = 0; index < jsonResultArray.length(); index++) {
-                    singleJsonResultObject = jsonResultArray.getJSONObject(index);
-
-                    // Convert the _data object into an APYEntity
-                    JSONObject jsonDataObject = getResultObjectData(singleJsonResultObject);
-                    resultEntity = APYUtils.convertFromJson(entityName, jsonDataObject);
-                    
-                    // Get the value for the _id and set it into our APYEntity 
-                    resultEntity.setId(getResultObjectId(singleJsonResultObject));
-
-                    // Filter out the _init object
-                    // TODO Remove this as soon as we stopped returning the _init object
-                    if (resultEntity.get("_init") != null) {
-                        continue;
-                    }
-                    resultEntities.add(resultEntity);
+                // Position a streaming reader in front of the first result
+                // object and hand the connection over to the iterator
+                APYEntityReader entityReader = new APYEntityReader(
+                        APYHttpTransport.getResponseStream(connection), entityName, lazyDecodingEnabled);
+                try {
+                    entityReader.beginResultArray();
+                } catch (IOException e) {
+                    entityReader.close();
+                    throw e;
                 }
-                return resultEntities;
-            } else if (responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR) {
-                // 500 - Internal Server Error
+
+                APYEntityIterator iterator = new APYEntityIterator(transport, connection, entityReader, entityName);
+                connection = null;
+                return iterator;
+            } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // 5xx - Server Error, e.g. 500 - Internal Server Error
                 Log.i(LOG_TAG,
                         "Entities of type '".concat(entityName).concat("' could not be fetched. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
@@ -148,19 +575,28 @@ class APYHttpRequestInvoker {
                         "Entities of type '".concat(entityName).concat("' could not be fetched. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
             }
+        } catch (APYException e) {
+            // Keep the detail code of the exceptions thrown above
+            throw e;
         } catch (Exception e) {
             throw new APYException("Entities of type '".concat(entityName).concat("' could not be fetched."), e);
+        } finally {
+            transport.release(connection, true);
         }
     }
 
     /**
      * Fetches the entity for the given entity (type) name matching the given entity ID from the apitrary
-     * backend.
+     * backend. If conditional requests are enabled and the entity was not
+     * modified since it was last fetched, a copy of the stored entity is returned.
      * 
      * @param entityName
      *            the name identifying the kind of entity to fetch
      * @param entityId
      *            the ID of the entity to fetch
+     * @param query
+     *            the query parameters appended to the request URL, see
+     *            {@link APYQuery#toQueryString()}, or an empty string
      * @return the fetched {@link APYEntity} or null if none could be found
      * @throws IllegalArgumentException
      *             if the given entity name or ID was null or empty
@@ -171,7 +607,32 @@ class APYHttpRequestInvoker {
      *             <li>if anything else went wrong</li>
      *             </ul>
      */
-    APYEntity fetchOne(String entityName, String entityId) throws IllegalArgumentException, APYException {
+    APYEntity fetchOne(final String entityName, final String entityId, final String query)
+            throws IllegalArgumentException, APYException {
+        return executeIdempotent(new Request<APYEntity>() {
+            @Override
+            public APYEntity execute() throws APYException {
+                APYRequestHedger hedger = requestHedger;
+                if (hedger == null) {
+                    return fetchOneOnce(entityName, entityId, query, null);
+                }
+                return hedger.execute("fetchOne", new APYRequestHedger.HedgedRequest<APYEntity>() {
+                    @Override
+                    public APYEntity execute(APYCancellationToken cancellationToken) throws APYException {
+                        return fetchOneOnce(entityName, entityId, query, cancellationToken);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Sends a single request fetching an entity, see {@link #fetchOne(String, String, String)}.
+     * The connection is attached to the given token, if any, so the request
+     * can be cancelled.
+     */
+    private APYEntity fetchOneOnce(String entityName, String entityId, String query,
+            APYCancellationToken cancellationToken) throws IllegalArgumentException, APYException {
         // Validate the entity name
         if (APYUtils.isNullOrEmpty(entityName)) {
             throw new IllegalArgumentException("The given entity name was null or empty.");
@@ -181,42 +642,70 @@ class APYHttpRequestInvoker {
             throw new IllegalArgumentException("The given entity ID was null or empty.");
         }
 
+        String path = entityName.toLowerCase(Locale.US).concat("/").concat(entityId);
+        String resource = path.concat(query);
+        APYValidatorStore store = validatorStore;
+        APYValidatorStore.Validated validated = store != null ? store.get(resource) : null;
+
+        HttpURLConnection connection = null;
         try {
             // The full URL the request will be sent to
-            URL requestUrl = new URL(apiUrl,
-                    entityName.toLowerCase(Locale.US).concat("/").concat(entityId).concat("&apiKey=").concat(apiKey));
+            URL requestUrl = new URL(apiUrl, path.concat("&apiKey=").concat(apiKey).concat(query));
 
             Log.d(LOG_TAG, "GET ".concat(requestUrl.toString()));
 
-            HttpURLConnection connection = prepareGetConnection(requestUrl, timeout);
+            connection = prepareGetConnection(requestUrl, timeout,
+                    cancellationToken == null || cancellationToken.waitsForConnection());
+            if (cancellationToken != null) {
+                cancellationToken.attach(transport, connection);
+            }
+            if (validated != null) {
+                validated.applyTo(connection);
+            }
             connection.connect();
 
             // Handle the response
             int responseCode = connection.getResponseCode();
             String responseMessage = connection.getResponseMessage();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && validated != null) {
+                // 304 - Not Modified, serve the stored entity
+                Log.d(LOG_TAG, "Entity of type '".concat(entityName).concat("' (id: ")
+                        .concat(entityId).concat(") was not modified. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+
+                return validated.copyEntities().get(0);
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
                 // Everything is fine
 
                 Log.d(LOG_TAG, "Successfully fetched entity of type '".concat(entityName).concat("' (id: ")
                         .concat(entityId).concat("). HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
 
-                // Extract the JSON response object form the response stream
-                JSONObject responseJsonObject = getResponseJson(connection.getInputStream());
-
-                // Extract the JSON 'result' object
-                JSONObject jsonResultObject = getResultObjectFromResponseJson(responseJsonObject);
-
-                // Convert the _data object into an APYEntity
-                JSONObject jsonDataObject = getResultObjectData(jsonResultObject);
-                APYEntity fetchedEntity = APYUtils.convertFromJson(entityName, jsonDataObject);
-
-                // Get the value for the _id and set it into our APYEntity
-                fetchedEntity.setId(getResultObjectId(jsonResultObject));
+                // Read the 'result' object off the response and convert it into an APYEntity
+                APYEntity resultEntity;
+                APYEntityReader entityReader = new APYEntityReader(
+                        APYHttpTransport.getResponseStream(connection), entityName, lazyDecodingEnabled);
+                try {
+                    resultEntity = entityReader.readResultEntity();
+                } finally {
+                    entityReader.close();
+                }
 
-                return fetchedEntity;
+                if (store != null) {
+                    if (resultEntity != null) {
+                        store.put(resource, connection.getHeaderField("ETag"),
+                                connection.getHeaderField("Last-Modified"), Collections.singletonList(resultEntity));
+                    } else {
+                        store.remove(resource);
+                    }
+                }
+                return resultEntity;
             } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
                 // 404 - Not found
+                if (store != null) {
+                    store.remove(resource);
+                }
+
                 Log.d(LOG_TAG, "Entity to fetch (name: ".concat(entityName)
                         .concat(", id: ").concat(entityId).concat(") could not be found. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
@@ -224,8 +713,8 @@ class APYHttpRequestInvoker {
                         "Entity to fetch (name: ".concat(entityName).concat(", id: ").concat(entityId)
                         .concat(") could not be found. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
-            } else if (responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR) {
-                // 500 - Internal Server Error
+            } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // 5xx - Server Error, e.g. 500 - Internal Server Error
                 Log.d(LOG_TAG,
                         "Entity (name: ".concat(entityName).concat(", id: ").concat(entityId)
                         .concat(") could not be fetched. HTTP status: ")
@@ -242,8 +731,13 @@ class APYHttpRequestInvoker {
                         "Entity of type '".concat(entityName).concat("' could not be fetched. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
             }
+        } catch (APYException e) {
+            // Keep the detail code of the exceptions thrown above
+            throw e;
         } catch (Exception e) {
             throw new APYException("Entity of type '".concat(entityName).concat("' could not be fetched."), e);
+        } finally {
+            transport.release(connection, true);
         }
     }
 
@@ -271,26 +765,97 @@ class APYHttpRequestInvoker {
             throw new IllegalArgumentException("The name of the given entity was null or empty.");
         }
 
-        String entityName = entity.getName();
+        // Serialize the entity as UTF-8 encoded JSON into the thread's buffer
+        APYEntityWriter writer = APYEntityWriter.acquire();
+        try {
+            writer.writeEntity(entity);
 
+            // Set the returned ID on the entity
+            entity.setId(create(entity.getName(), writer));
+        } finally {
+            writer.release();
+        }
+        entity.markClean();
+
+        return entity;
+    }
+
+    /**
+     * Creates the given object on the apitrary backend, serialized by the
+     * given {@link APYMapper}.
+     * 
+     * @param mapper
+     *            the mapper of the object's class
+     * @param object
+     *            the object to create
+     * @return the created object
+     * @throws IllegalArgumentException
+     *             if the object was null
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    <T> T create(APYMapper<T> mapper, T object) throws IllegalArgumentException, APYException {
+        // Validate the object
+        if (object == null) {
+            throw new IllegalArgumentException("The given object was null.");
+        }
+
+        // Serialize the object as UTF-8 encoded JSON into the thread's buffer
+        APYEntityWriter writer = APYEntityWriter.acquire();
+        try {
+            writer.writeObject(mapper, object);
+
+            // Set the returned ID on the object
+            mapper.setId(object, create(mapper.getEntityName(), writer));
+        } finally {
+            writer.release();
+        }
+
+        return object;
+    }
+
+    /**
+     * Sends the serialized entity held by the given writer to the apitrary
+     * backend to be created.
+     * 
+     * @param entityName
+     *            the name of the entity to create
+     * @param writer
+     *            the writer holding the serialized entity
+     * @return the ID of the created entity
+     * @throws APYException
+     *             <ul>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    private String create(String entityName, APYEntityWriter writer) throws APYException {
+        HttpURLConnection connection = null;
         try {
             // The full URL the request will be sent to
-            URL requestUrl = new URL(apiUrl, entity.getName().toLowerCase(Locale.US).concat("&apiKey=").concat(apiKey));
+            URL requestUrl = new URL(apiUrl, entityName.toLowerCase(Locale.US).concat("&apiKey=").concat(apiKey));
 
             Log.d(LOG_TAG, "POST ".concat(requestUrl.toString()));
-    
-            // Convert the entity into a JSONObject
-            JSONObject jsonObject = APYUtils.convertToJson(entity);
-    
-            // The JSON bytes to be written
-            byte[] jsonBytes = jsonObject.toString().getBytes();
-    
-            HttpURLConnection connection = preparePostConnection(requestUrl, timeout, jsonBytes.length);
-    
+
+            // The JSON bytes are compressed if worthwhile
+            byte[] compressedBytes = compressRequestBody(writer);
+            int contentLength = compressedBytes != null ? compressedBytes.length : writer.size();
+
+            connection = preparePostConnection(requestUrl, timeout, contentLength);
+            if (compressedBytes != null) {
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+
             // Write the JSON bytes into the request body
-            OutputStream outputStream = new BufferedOutputStream(connection.getOutputStream());
-            outputStream.write(jsonBytes);
-            outputStream.flush();
+            OutputStream outputStream = connection.getOutputStream();
+            if (compressedBytes != null) {
+                outputStream.write(compressedBytes);
+            } else {
+                writer.writeTo(outputStream);
+            }
             outputStream.close();
     
             // Handle the response
@@ -302,18 +867,10 @@ class APYHttpRequestInvoker {
                 Log.d(LOG_TAG, "Successfully created entity '".concat(entityName).concat("'. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
 
-                // Extract the JSON response object form the response stream
-                JSONObject responseJsonObject = getResponseJson(connection.getInputStream());
-
-                // Extract the JSON 'result' object
-                JSONObject jsonResultObject = getResultObjectFromResponseJson(responseJsonObject);
-
-                // Get the returned ID of the updated entity and set it on the entity
-                entity.setId(getResultObjectId(jsonResultObject));
-
-                return entity;
-            } else if (responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR) {
-                // 500 - Internal Server Error
+                // Get the returned ID of the created entity
+                return readResultId(connection, entityName);
+            } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // 5xx - Server Error, e.g. 500 - Internal Server Error
                 Log.i(LOG_TAG,
                         "Entity of type '".concat(entityName).concat("' could not be created. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
@@ -328,8 +885,13 @@ class APYHttpRequestInvoker {
                         "Entity of type '".concat(entityName).concat("' could not be created. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
             }
+        } catch (APYException e) {
+            // Keep the detail code of the exceptions thrown above
+            throw e;
         } catch (Exception e) {
             throw new APYException("Entity of type '".concat(entityName).concat("' could not be created."), e);
+        } finally {
+            transport.release(connection, true);
         }
     }
 
@@ -348,7 +910,19 @@ class APYHttpRequestInvoker {
      *             <li>if anything else went wrong</li>
      *             </ul>
      */
-    APYEntity update(APYEntity entity) throws IllegalArgumentException, APYException {
+    APYEntity update(final APYEntity entity) throws IllegalArgumentException, APYException {
+        return executeIdempotent(new Request<APYEntity>() {
+            @Override
+            public APYEntity execute() throws APYException {
+                return updateOnce(entity);
+            }
+        });
+    }
+
+    /**
+     * Sends a single request updating an entity, see {@link #update(APYEntity)}.
+     */
+    private APYEntity updateOnce(APYEntity entity) throws IllegalArgumentException, APYException {
         // Validate the entity
         if (entity == null) {
             throw new IllegalArgumentException("The given entity was null.");
@@ -365,6 +939,7 @@ class APYHttpRequestInvoker {
         String entityName = entity.getName();
         String entityId = entity.getId();
 
+        HttpURLConnection connection = null;
         try {
             // The full URL the request will be sent to
             URL requestUrl = new URL(apiUrl,
@@ -372,19 +947,31 @@ class APYHttpRequestInvoker {
 
             Log.d(LOG_TAG, "PUT ".concat(requestUrl.toString()));
 
-            // Convert the entity into a JSONObject
-            JSONObject jsonObject = APYUtils.convertToJson(entity);
-    
-            // The JSON bytes to be written
-            byte[] jsonBytes = jsonObject.toString().getBytes();
-    
-            HttpURLConnection connection = preparePutConnection(requestUrl, timeout, jsonBytes.length);
+            // Serialize the entity as UTF-8 encoded JSON into the thread's buffer
+            APYEntityWriter writer = APYEntityWriter.acquire();
+            try {
+                writer.writeEntity(entity);
 
-            // Write the JSON bytes into the request body
-            OutputStream outputStream = new BufferedOutputStream(connection.getOutputStream());
-            outputStream.write(jsonBytes);
-            outputStream.flush();
-            outputStream.close();
+                // The JSON bytes are compressed if worthwhile
+                byte[] compressedBytes = compressRequestBody(writer);
+                int contentLength = compressedBytes != null ? compressedBytes.length : writer.size();
+
+                connection = preparePutConnection(requestUrl, timeout, contentLength);
+                if (compressedBytes != null) {
+                    connection.setRequestProperty("Content-Encoding", "gzip");
+                }
+
+                // Write the JSON bytes into the request body
+                OutputStream outputStream = connection.getOutputStream();
+                if (compressedBytes != null) {
+                    outputStream.write(compressedBytes);
+                } else {
+                    writer.writeTo(outputStream);
+                }
+                outputStream.close();
+            } finally {
+                writer.release();
+            }
 
             // Handle the response
             int responseCode = connection.getResponseCode();
@@ -396,14 +983,9 @@ class APYHttpRequestInvoker {
                         .concat(entityId).concat("). HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
 
-                // Extract the JSON response object form the response stream
-                JSONObject responseJsonObject = getResponseJson(connection.getInputStream());
-
-                // Extract the JSON 'result' object
-                JSONObject jsonResultObject = getResultObjectFromResponseJson(responseJsonObject);
-
-                // Get the returned ID of the updated entity and re-set it on the entity 
-                entity.setId(getResultObjectId(jsonResultObject));
+                // Get the returned ID of the updated entity and re-set it on the entity
+                entity.setId(readResultId(connection, entityName));
+                entity.markClean();
 
                 return entity;
             } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
@@ -416,8 +998,8 @@ class APYHttpRequestInvoker {
                         "Entity to update (name: ".concat(entityName).concat(", id: ").concat(entityId)
                         .concat(") could not be found. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
-            } else if (responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR) {
-                // 500 - Internal Server Error
+            } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // 5xx - Server Error, e.g. 500 - Internal Server Error
                 Log.d(LOG_TAG,
                         "Entity (name: ".concat(entityName).concat(", id: ").concat(entityId)
                         .concat(") could not be updated. HTTP status: ")
@@ -436,9 +1018,152 @@ class APYHttpRequestInvoker {
                         .concat(") could not be updated. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
             }
+        } catch (APYException e) {
+            // Keep the detail code of the exceptions thrown above
+            throw e;
         } catch (Exception e) {
             throw new APYException("Entity of type '".concat(entityName)
                     .concat("' (id: ").concat(entityId).concat(") could not be updated."), e);
+        } finally {
+            transport.release(connection, true);
+        }
+    }
+
+    /**
+     * Sends the changed and removed properties of the given entity to the
+     * apitrary backend as a partial update. As {@link HttpURLConnection} does
+     * not support the PATCH method, a POST request overriding its method by
+     * the X-HTTP-Method-Override header is sent.
+     * 
+     * @param entity
+     *            the entity to patch
+     * @return the patched {@link APYEntity}
+     * @throws IllegalArgumentException
+     *             if the entity was null or if its name or ID was null or empty
+     * @throws APYException
+     *             <ul>
+     *             <li>if the entity to patch could not be found on the apitrary backend</li>
+     *             <li>if there was an error on the backend side</li>
+     *             <li>if anything else went wrong</li>
+     *             </ul>
+     */
+    APYEntity patch(final APYEntity entity) throws IllegalArgumentException, APYException {
+        return executeIdempotent(new Request<APYEntity>() {
+            @Override
+            public APYEntity execute() throws APYException {
+                return patchOnce(entity);
+            }
+        });
+    }
+
+    /**
+     * Sends a single request patching an entity, see {@link #patch(APYEntity)}.
+     */
+    private APYEntity patchOnce(APYEntity entity) throws IllegalArgumentException, APYException {
+        // Validate the entity
+        if (entity == null) {
+            throw new IllegalArgumentException("The given entity was null.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getName())) {
+            throw new IllegalArgumentException("The name of the given entity was null or empty.");
+        }
+
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+
+        String entityName = entity.getName();
+        String entityId = entity.getId();
+
+        HttpURLConnection connection = null;
+        try {
+            // The full URL the request will be sent to
+            URL requestUrl = new URL(apiUrl,
+                    entityName.toLowerCase(Locale.US).concat("/").concat(entityId).concat("&apiKey=").concat(apiKey));
+
+            Log.d(LOG_TAG, "PATCH ".concat(requestUrl.toString()));
+
+            // Serialize the changes of the entity as UTF-8 encoded JSON into the thread's buffer
+            APYEntityWriter writer = APYEntityWriter.acquire();
+            try {
+                writer.writeChanges(entity);
+
+                // The JSON bytes are compressed if worthwhile
+                byte[] compressedBytes = compressRequestBody(writer);
+                int contentLength = compressedBytes != null ? compressedBytes.length : writer.size();
+
+                connection = preparePostConnection(requestUrl, timeout, contentLength);
+                connection.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+                if (compressedBytes != null) {
+                    connection.setRequestProperty("Content-Encoding", "gzip");
+                }
+
+                // Write the JSON bytes into the request body
+                OutputStream outputStream = connection.getOutputStream();
+                if (compressedBytes != null) {
+                    outputStream.write(compressedBytes);
+                } else {
+                    writer.writeTo(outputStream);
+                }
+                outputStream.close();
+            } finally {
+                writer.release();
+            }
+
+            // Handle the response
+            int responseCode = connection.getResponseCode();
+            String responseMessage = connection.getResponseMessage();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                // Everything is fine
+
+                Log.d(LOG_TAG, "Successfully patched entity of type '".concat(entityName).concat("' (id: ")
+                        .concat(entityId).concat("). HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+
+                // Get the returned ID of the patched entity and re-set it on the entity
+                entity.setId(readResultId(connection, entityName));
+                entity.markClean();
+
+                return entity;
+            } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                // 404 - Not found
+                Log.d(LOG_TAG,
+                        "Entity to patch (name: ".concat(entityName)
+                        .concat(", id: ").concat(entityId).concat(") could not be found. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+                throw new APYException(APYExceptionDetailCode.ENTITY_NOT_FOUND,
+                        "Entity to patch (name: ".concat(entityName).concat(", id: ").concat(entityId)
+                        .concat(") could not be found. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+            } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // 5xx - Server Error, e.g. 500 - Internal Server Error
+                Log.d(LOG_TAG,
+                        "Entity (name: ".concat(entityName).concat(", id: ").concat(entityId)
+                        .concat(") could not be patched. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+                throw new APYException(APYExceptionDetailCode.BACKEND_ERROR,
+                        "Entity (name: ".concat(entityName).concat(", id: ").concat(entityId)
+                        .concat(") could not be patched. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+            } else {
+                Log.i(LOG_TAG,
+                        "Entity of type '".concat(entityName).concat("' (id: ").concat(entityId)
+                        .concat(") could not be patched. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+                throw new APYException(
+                        "Entity of type '".concat(entityName).concat("' (id: ").concat(entityId)
+                        .concat(") could not be patched. HTTP status: ")
+                        .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
+            }
+        } catch (APYException e) {
+            // Keep the detail code of the exceptions thrown above
+            throw e;
+        } catch (Exception e) {
+            throw new APYException("Entity of type '".concat(entityName)
+                    .concat("' (id: ").concat(entityId).concat(") could not be patched."), e);
+        } finally {
+            transport.release(connection, true);
         }
     }
 
@@ -474,6 +1199,7 @@ class APYHttpRequestInvoker {
         String entityName = entity.getName();
         String entityId = entity.getId();
 
+        HttpURLConnection connection = null;
         try {
             // The full URL the request will be sent to
             URL requestUrl = new URL(apiUrl,
@@ -481,7 +1207,7 @@ class APYHttpRequestInvoker {
 
             Log.d(LOG_TAG, "DELETE ".concat(requestUrl.toString()));
 
-            HttpURLConnection connection = prepareDeleteConnection(requestUrl, timeout);
+            connection = prepareDeleteConnection(requestUrl, timeout);
             connection.connect();
 
             // Handle the response
@@ -494,14 +1220,14 @@ class APYHttpRequestInvoker {
                         .concat(entityId).concat("). HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
 
-                // Extract the JSON response object form the response stream
-                JSONObject responseJsonObject = getResponseJson(connection.getInputStream());
-
-                // Extract the JSON 'result' object
-                JSONObject jsonResultObject = getResultObjectFromResponseJson(responseJsonObject);
+                // Forget the validators of the deleted entity
+                APYValidatorStore store = validatorStore;
+                if (store != null) {
+                    store.remove(entityName.toLowerCase(Locale.US).concat("/").concat(entityId));
+                }
 
                 // Get the returned ID of the deleted entity and return it to the caller
-                return getResultObjectId(jsonResultObject);
+                return readResultId(connection, entityName);
             } else if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
                 // 404 - Not found
                 Log.d(LOG_TAG,
@@ -512,8 +1238,8 @@ class APYHttpRequestInvoker {
                         "Entity to delete (name: ".concat(entityName).concat(", id: ").concat(entityId)
                         .concat(") could not be found. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
-            } else if (responseCode == HttpURLConnection.HTTP_INTERNAL_ERROR) {
-                // 500 - Internal Server Error
+            } else if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                // 5xx - Server Error, e.g. 500 - Internal Server Error
                 Log.d(LOG_TAG,
                         "Entity (name: ".concat(entityName).concat(", id: ").concat(entityId)
                         .concat(") could not be deleted. HTTP status: ")
@@ -530,9 +1256,14 @@ class APYHttpRequestInvoker {
                         "Entity of type '".concat(entityName).concat("' could not be deleted. HTTP status: ")
                         .concat(String.valueOf(responseCode)).concat(" - ").concat(responseMessage));
             }
+        } catch (APYException e) {
+            // Keep the detail code of the exceptions thrown above
+            throw e;
         } catch (Exception e) {
             throw new APYException("Entity of type '".concat(entityName)
                     .concat("' (id: ").concat(entityId).concat(") could not be deleted."), e);
+        } finally {
+            transport.release(connection, true);
         }
     }
 
@@ -545,6 +1276,8 @@ class APYHttpRequestInvoker {
      *            the URL to send the request to
      * @param timeout
      *            the maximal timeout in milliseconds
+     * @param waitForConnection
+     *            false to fail at once if all pooled connections are in use
      * @throws MalformedURLException
      *             when the given URL was malformed
      * @throws SocketTimeoutException
@@ -552,15 +1285,13 @@ class APYHttpRequestInvoker {
      * @throws IOException
      *             when there was a problem setting up the connection object
      */
-    private static HttpURLConnection prepareGetConnection(URL requestUrl, int timeout) 
+    private HttpURLConnection prepareGetConnection(URL requestUrl, int timeout, boolean waitForConnection)
             throws MalformedURLException, SocketTimeoutException, IOException {
-        HttpURLConnection connection = (HttpURLConnection) requestUrl.openConnection();
-        connection.setRequestMethod("GET");
+        HttpURLConnection connection = transport.openConnection(requestUrl, "GET", timeout, waitForConnection);
         connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", APYHttpTransport.ACCEPTED_ENCODINGS);
         connection.setDoInput(true);
         connection.setUseCaches(true);
-        connection.setConnectTimeout(timeout);
-        connection.setReadTimeout(timeout);
         return connection;
     }
 
@@ -585,18 +1316,16 @@ class APYHttpRequestInvoker {
      * @throws IOException
      *             when there was a problem setting up the connection object
      */
-    private static HttpURLConnection preparePostConnection(URL requestUrl, int timeout,
+    private HttpURLConnection preparePostConnection(URL requestUrl, int timeout,
             int contentLength) throws MalformedURLException, IOException {
-        HttpURLConnection connection = (HttpURLConnection) requestUrl.openConnection();
-        connection.setRequestMethod("POST");
+        HttpURLConnection connection = transport.openConnection(requestUrl, "POST", timeout);
         connection.setRequestProperty("Content-Type", "application/json");
         connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", APYHttpTransport.ACCEPTED_ENCODINGS);
         connection.setDoOutput(true);
         connection.setDoInput(true);
         connection.setUseCaches(false);
         connection.setFixedLengthStreamingMode(contentLength);
-        connection.setConnectTimeout(timeout);
-        connection.setReadTimeout(timeout);
         return connection;
     }
 
@@ -621,18 +1350,16 @@ class APYHttpRequestInvoker {
      * @throws IOException
      *             when there was a problem setting up the connection object
      */
-    private static HttpURLConnection preparePutConnection(URL requestUrl, int timeout,
+    private HttpURLConnection preparePutConnection(URL requestUrl, int timeout,
             int contentLength) throws MalformedURLException, IOException {
-        HttpURLConnection connection = (HttpURLConnection) requestUrl.openConnection();
-        connection.setRequestMethod("PUT");
+        HttpURLConnection connection = transport.openConnection(requestUrl, "PUT", timeout);
         connection.setRequestProperty("Content-Type", "application/json");
         connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", APYHttpTransport.ACCEPTED_ENCODINGS);
         connection.setDoOutput(true);
         connection.setDoInput(true);
         connection.setUseCaches(false);
         connection.setFixedLengthStreamingMode(contentLength);
-        connection.setConnectTimeout(timeout);
-        connection.setReadTimeout(timeout);
         return connection;
     }
 
@@ -654,150 +1381,81 @@ class APYHttpRequestInvoker {
      * @throws IOException
      *             when there was a problem setting up the connection object
      */
-    private static HttpURLConnection prepareDeleteConnection(URL requestUrl, int timeout)
+    private HttpURLConnection prepareDeleteConnection(URL requestUrl, int timeout)
             throws MalformedURLException, IOException {
-        HttpURLConnection connection = (HttpURLConnection) requestUrl.openConnection();
-        connection.setRequestMethod("DELETE");
+        HttpURLConnection connection = transport.openConnection(requestUrl, "DELETE", timeout);
         connection.setRequestProperty("Accept", "application/json");
+        connection.setRequestProperty("Accept-Encoding", APYHttpTransport.ACCEPTED_ENCODINGS);
         connection.setUseCaches(false);
-        connection.setConnectTimeout(timeout);
-        connection.setReadTimeout(timeout);
         return connection;
     }
     
     /**
-     * Reads the JSON out of the given response {@link InputStream} and converts
-     * it into a {@link JSONObject}.
+     * Compresses the request body serialized by the given writer with gzip if
+     * it reaches the request compression threshold.
      * 
-     * @param responseStream
-     *            the {@link InputStream} to read the JSON response data from
-     * @return a {@link JSONObject} created of the response stream's contents
+     * @param writer
+     *            the writer holding the uncompressed request body
+     * @return the compressed body or null if the body should be sent
+     *         uncompressed, because it is below the threshold or compression
+     *         did not make it smaller
      * @throws IOException
-     *             if there was a problem reading the response stream
+     *             if the body could not be compressed
      */
-    private static JSONObject getResponseJson(InputStream responseStream) throws JSONException, IOException {
-        InputStream inputStream = new BufferedInputStream(responseStream);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+    private byte[] compressRequestBody(APYEntityWriter writer) throws IOException {
+        int threshold = requestCompressionThreshold;
+        int size = writer.size();
+        if (threshold <= 0 || size < threshold) {
+            return null;
+        }
 
-        String responseLine = null;
-        StringBuilder responseStringBuilder = new StringBuilder();
+        ByteArrayOutputStream compressedStream = new ByteArrayOutputStream(size / 2);
+        GZIPOutputStream gzipStream = new GZIPOutputStream(compressedStream);
         try {
-        while ((responseLine = reader.readLine()) != null) {
-            responseStringBuilder.append(responseLine);
-        }
+            writer.writeTo(gzipStream);
         } finally {
-            inputStream.close();
-        }
-
-        String responseJson = responseStringBuilder.toString();
-        return new JSONObject(responseJson);
-    }
-
-    /**
-     * Prior to Froyo, HttpURLConnection had some frustrating bugs. In
-     * particular, calling close() on a readable InputStream could poison the
-     * connection pool. Work around this by disabling connection pooling.
-     * See http://android-developers.blogspot.de/2011/09/androids-http-clients.html
-     */
-    private void disableConnectionReuseIfNecessary() {
-        // HTTP connection reuse which was buggy pre-froyo
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
-            System.setProperty("http.keepAlive", "false");
+            gzipStream.close();
         }
-    }
 
-    /**
-     * Returns the value of the 'statusCode' property contained in the response
-     * JSONObject.
-     * 
-     * @param responseJson
-     *            the response {@link JSONObject} retrieved from an
-     *            {@link InputStream}
-     * @return the int value of the 'statusCode' property
-     * @throws JSONException
-     *             if there was no property 'statusCode' in the JSON or if the
-     *             value was not an int
-     */
-    @SuppressWarnings("unused")
-    private static int getStatusCodeFromResponseJson(JSONObject responseJson) throws JSONException {
-        return responseJson.getInt(APYConstants.KEY_RESPONSE_STATUS_CODE);
+        byte[] compressedBody = compressedStream.toByteArray();
+        return compressedBody.length < size ? compressedBody : null;
     }
 
     /**
-     * Returns the value of the 'statusMessage' property contained in the response
-     * JSONObject.
+     * Reads the '_id' property of the 'result' object out of the given
+     * connection's response stream.
      * 
-     * @param responseJson
-     *            the response {@link JSONObject} retrieved from an
-     *            {@link InputStream}
-     * @return the String value of the 'statusMessage' property
-     * @throws JSONException
-     *             if there was no property 'statusMessage' in the JSON or if the
-     *             value was not a String
-     */
-    @SuppressWarnings("unused")
-    private static String getStatusMessageFromResponseJson(JSONObject responseJson) throws JSONException {
-        return responseJson.getString(APYConstants.KEY_RESPONSE_STATUS_MESSAGE);
-    }
-
-    /**
-     * Returns the {@link JSONObject} value of the 'result' property contained in the response
-     * JSONObject.
-     * 
-     * @param responseJson
-     *            the response {@link JSONObject} retrieved from an
-     *            {@link InputStream}
-     * @return the {@link JSONObject} value of the 'result' property
-     * @throws JSONException
-     *             if there was no property 'result' in the JSON or if the
-     *             value was not a {@link JSONObject}
-     */
-    private static JSONObject getResultObjectFromResponseJson(JSONObject responseJson) throws JSONException {
-        return responseJson.getJSONObject(APYConstants.KEY_RESPONSE_RESULT);
-    }
-
-    /**
-     * Returns the {@link JSONArray} value of the 'result' property contained in the response
-     * JSONObject.
-     * 
-     * @param responseJson
-     *            the response {@link JSONObject} retrieved from an
-     *            {@link InputStream}
-     * @return the {@link JSONArray} value of the 'result' property
-     * @throws JSONException
-     *             if there was no property 'result' in the JSON or if the
-     *             value was not a {@link JSONArray}
+     * @param connection
+     *            the connection to read the response from
+     * @param entityName
+     *            the name of the entity the response belongs to
+     * @return the ID contained in the response's 'result' object
+     * @throws IOException
+     *             if there was a problem reading the response stream or if the
+     *             response contained no ID
      */
-    private static JSONArray getResultArrayFromResponseJson(JSONObject responseJson) throws JSONException {
-        return responseJson.getJSONArray(APYConstants.KEY_RESPONSE_RESULT);
+    private static String readResultId(HttpURLConnection connection, String entityName) throws IOException {
+        APYEntityReader entityReader = new APYEntityReader(APYHttpTransport.getResponseStream(connection), entityName);
+        try {
+            return entityReader.readResultId();
+        } finally {
+            entityReader.close();
+        }
     }
 
     /**
-     * Returns the ID of the given result object.
-     * 
-     * @param resultObject
-     *            a single result {@link JSONObject} read from a JSON response stream
-     * @return the String ID of the given result object
-     * @throws JSONException
-     *             if there was no property '_id' in the JSON or if the
-     *             value was not a String
+     * A single attempt of a request.
      */
-    private static String getResultObjectId(JSONObject resultObject) throws JSONException {
-        return resultObject.getString(APYConstants.KEY_RESULT_OBJECT_ID);
-    }
-
-    /**
-     * Returns the data of the given result object.
-     * 
-     * @param resultObject
-     *            a single result {@link JSONObject} read from a JSON response stream
-     * @return the data {@link JSONObject} of the given result object
-     * @throws JSONException
-     *             if there was no property '_data' in the JSON or if the
-     *             value was not a {@link JSONObject}
-     */
-    private static JSONObject getResultObjectData(JSONObject resultObject) throws JSONException {
-        return resultObject.getJSONObject(APYConstants.KEY_RESPONSE_OBJECT_DATA);
+    private interface Request<T> {
+
+        /**
+         * Sends the request.
+         *
+         * @return the result of the request
+         * @throws APYException
+         *             if the request failed
+         */
+        T execute() throws APYException;
     }
 
 }
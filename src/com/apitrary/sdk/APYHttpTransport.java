@@ -0,0 +1,363 @@
+package com.apitrary.sdk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import android.os.Build;
+
+/**
+ * Long-lived, thread-safe HTTP transport shared by all requests of an
+ * {@link APYClient}. It opens the {@link HttpURLConnection}s, bounds the number
+ * of connections the client uses concurrently and hands finished connections
+ * back to the platform's keep-alive pool so that subsequent requests reuse
+ * warm sockets. The size of that pool and its idle eviction are left to the
+ * platform.
+ */
+class APYHttpTransport {
+
+    /**
+     * Size of the buffer used to drain unread response bodies.
+     */
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    /**
+     * The maximal number of bytes drained from an unread response body. Larger
+     * remainders are cheaper to discard by closing the socket.
+     */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    /**
+     * Size of the buffer used to inflate compressed response bodies.
+     */
+    private static final int INFLATE_BUFFER_SIZE = 8192;
+
+    /**
+     * The content encodings accepted for response bodies.
+     */
+    static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    /**
+     * Permits limiting the number of concurrently used connections.
+     */
+    private final Semaphore connectionPermits;
+
+    /**
+     * The connections currently in use, each of which holds one permit.
+     */
+    private final Map<HttpURLConnection, Boolean> openConnections =
+            new ConcurrentHashMap<HttpURLConnection, Boolean>();
+
+    /**
+     * Whether finished connections are handed back to the keep-alive pool.
+     */
+    private final boolean keepAliveEnabled;
+
+    /**
+     * Constructs an instance of {@link APYHttpTransport} using the given pool
+     * configuration.
+     *
+     * @param poolConfig
+     *            the {@link APYConnectionPoolConfig} to apply
+     * @throws IllegalArgumentException
+     *             if the given configuration was null
+     */
+    APYHttpTransport(APYConnectionPoolConfig poolConfig) throws IllegalArgumentException {
+        if (poolConfig == null) {
+            throw new IllegalArgumentException("The given connection pool config was null.");
+        }
+
+        connectionPermits = new Semaphore(poolConfig.getMaxConnections(), true);
+        keepAliveEnabled = poolConfig.isKeepAliveEnabled();
+        disableKeepAlivePreFroyo();
+    }
+
+    /**
+     * Opens an {@link HttpURLConnection} for the given URL and request method.
+     * Blocks until a connection permit is available, at most for the given
+     * timeout. Every opened connection must be handed back by calling
+     * {@link #release(HttpURLConnection, boolean)}.
+     *
+     * @param requestUrl
+     *            the URL to send the request to
+     * @param requestMethod
+     *            the HTTP request method
+     * @param timeout
+     *            the connect and read timeout in milliseconds. If < 1 no timeout is set
+     * @return the opened {@link HttpURLConnection}
+     * @throws SocketTimeoutException
+     *             if no connection permit became available within the timeout
+     * @throws IOException
+     *             when there was a problem setting up the connection object
+     */
+    HttpURLConnection openConnection(URL requestUrl, String requestMethod, int timeout) throws IOException {
+        return openConnection(requestUrl, requestMethod, timeout, true);
+    }
+
+    /**
+     * Opens an {@link HttpURLConnection} for the given URL and request method
+     * like {@link #openConnection(URL, String, int)}, optionally failing at
+     * once instead of waiting if all connections are in use.
+     *
+     * @param requestUrl
+     *            the URL to send the request to
+     * @param requestMethod
+     *            the HTTP request method
+     * @param timeout
+     *            the connect and read timeout in milliseconds. If < 1 no timeout is set
+     * @param waitForPermit
+     *            false to fail at once if no connection permit is available
+     * @return the opened {@link HttpURLConnection}
+     * @throws SocketTimeoutException
+     *             if no connection permit became available in time
+     * @throws IOException
+     *             when there was a problem setting up the connection object
+     */
+    HttpURLConnection openConnection(URL requestUrl, String requestMethod, int timeout, boolean waitForPermit)
+            throws IOException {
+        if (!waitForPermit) {
+            acquirePermitNow();
+        } else {
+            acquirePermit(timeout);
+        }
+
+        HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) requestUrl.openConnection();
+            connection.setRequestMethod(requestMethod);
+            if (!keepAliveEnabled) {
+                connection.setRequestProperty("Connection", "close");
+            }
+            if (timeout > 0) {
+                connection.setConnectTimeout(timeout);
+                connection.setReadTimeout(timeout);
+            }
+        } catch (IOException e) {
+            connectionPermits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            connectionPermits.release();
+            throw e;
+        }
+
+        openConnections.put(connection, Boolean.TRUE);
+        return connection;
+    }
+
+    /**
+     * Hands the given connection back. A reusable connection has its unread
+     * error body drained so the socket can return to the keep-alive pool, any
+     * other connection is disconnected, as is every connection if keep-alive
+     * is disabled. Releasing a connection more than once has no effect.
+     *
+     * @param connection
+     *            the connection to release, may be null
+     * @param reusable
+     *            false if the response body was abandoned before it was fully
+     *            read and the socket must not be reused
+     */
+    void release(HttpURLConnection connection, boolean reusable) {
+        if (connection == null || openConnections.remove(connection) == null) {
+            return;
+        }
+
+        try {
+            if (reusable && keepAliveEnabled) {
+                drain(connection.getErrorStream());
+            } else {
+                connection.disconnect();
+            }
+        } finally {
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * Returns the response body stream of the given connection, decoding a
+     * gzip or deflate content encoding on the fly. The body is inflated while
+     * it is read, so it is never buffered as a whole.
+     * <p>
+     * <b>Notice:</b> The platform only decompresses responses transparently
+     * as long as the Accept-Encoding header is not set explicitly. Requests
+     * advertising {@link #ACCEPTED_ENCODINGS} must read their responses
+     * through this method.
+     * </p>
+     *
+     * @param connection
+     *            the connection to read the response from
+     * @return the decoded response body stream
+     * @throws IOException
+     *             if the response stream could not be opened
+     */
+    static InputStream getResponseStream(HttpURLConnection connection) throws IOException {
+        InputStream stream = connection.getInputStream();
+        String contentEncoding = connection.getContentEncoding();
+        if (contentEncoding == null) {
+            return stream;
+        }
+
+        contentEncoding = contentEncoding.trim().toLowerCase(Locale.US);
+        if ("gzip".equals(contentEncoding) || "x-gzip".equals(contentEncoding)) {
+            return new GZIPInputStream(stream, INFLATE_BUFFER_SIZE);
+        } else if ("deflate".equals(contentEncoding)) {
+            return openDeflateStream(stream);
+        }
+        return stream;
+    }
+
+    /**
+     * Opens a stream inflating the given deflate encoded stream. Although the
+     * deflate content encoding is defined as zlib wrapped data, some servers
+     * send raw deflate data, so the format is detected by the zlib header.
+     */
+    private static InputStream openDeflateStream(InputStream stream) throws IOException {
+        PushbackInputStream pushbackStream = new PushbackInputStream(stream, 2);
+        int firstByte = pushbackStream.read();
+        int secondByte = firstByte != -1 ? pushbackStream.read() : -1;
+        if (secondByte != -1) {
+            pushbackStream.unread(secondByte);
+        }
+        if (firstByte != -1) {
+            pushbackStream.unread(firstByte);
+        }
+
+        // zlib header: compression method 8 and a header checksum divisible by 31
+        boolean zlibWrapped = firstByte != -1 && secondByte != -1
+                && (firstByte & 0x0f) == 8 && ((firstByte << 8) | secondByte) % 31 == 0;
+
+        return new InflaterInputStream(pushbackStream, new Inflater(!zlibWrapped), INFLATE_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // An Inflater passed in is not ended by InflaterInputStream
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the number of connections currently in use.
+     *
+     * @return the number of connections in use
+     */
+    int getOpenConnectionCount() {
+        return openConnections.size();
+    }
+
+    /**
+     * Acquires a connection permit, waiting at most for the given timeout.
+     *
+     * @param timeout
+     *            the timeout in milliseconds. If < 1 waits indefinitely
+     * @throws PermitTimeoutException
+     *             if no permit became available within the timeout
+     * @throws InterruptedIOException
+     *             if the current thread was interrupted while waiting
+     */
+    private void acquirePermit(int timeout) throws InterruptedIOException {
+        try {
+            if (timeout > 0) {
+                if (!connectionPermits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new PermitTimeoutException();
+                }
+            } else {
+                connectionPermits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a pooled connection.");
+        }
+    }
+
+    /**
+     * Acquires a connection permit if one is available right away, honoring
+     * the requests waiting for one.
+     *
+     * @throws PermitTimeoutException
+     *             if no permit was available
+     * @throws InterruptedIOException
+     *             if the current thread was interrupted
+     */
+    private void acquirePermitNow() throws InterruptedIOException {
+        try {
+            if (!connectionPermits.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                throw new PermitTimeoutException();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a pooled connection.");
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of the given stream and closes it.
+     *
+     * @param stream
+     *            the stream to drain, may be null
+     */
+    private static void drain(InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+
+        try {
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            int drainedBytes = 0;
+            int readBytes;
+            while (drainedBytes < MAX_DRAIN_BYTES && (readBytes = stream.read(buffer)) != -1) {
+                drainedBytes += readBytes;
+            }
+        } catch (IOException e) {
+            // The socket is unusable anyway, closing it below is all we can do
+        } finally {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    /**
+     * Prior to Froyo, HttpURLConnection had some frustrating bugs. In
+     * particular, calling close() on a readable InputStream could poison the
+     * connection pool. Work around this by disabling connection pooling.
+     * See http://android-developers.blogspot.de/2011/09/androids-http-clients.html
+     */
+    private static void disableKeepAlivePreFroyo() {
+        // HTTP connection reuse which was buggy pre-froyo
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
+            System.setProperty("http.keepAlive", "false");
+        }
+    }
+
+    /**
+     * Exception indicating that no connection became available within the
+     * timeout because all connections of the pool were in use. The request
+     * was not sent.
+     */
+    static final class PermitTimeoutException extends SocketTimeoutException {
+
+        private static final long serialVersionUID = -4312779254315840658L;
+
+        PermitTimeoutException() {
+            super("Timed out waiting for a pooled connection.");
+        }
+    }
+
+}
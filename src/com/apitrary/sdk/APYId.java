@@ -0,0 +1,18 @@
+package com.apitrary.sdk;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field of a class annotated with {@link APYEntityType} receiving
+ * the ID of the entity. The field must be a non-private, non-static and
+ * non-final String field.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface APYId {
+}
@@ -0,0 +1,753 @@
+package com.apitrary.sdk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Pull parser reading a JSON document token by token from a {@link Reader}.
+ * Only the currently read token is held in memory, so arbitrarily large
+ * documents can be processed with a small, constant buffer.
+ * <p>
+ * <b>Notice:</b> Instances of this class are not thread-safe.
+ * </p>
+ */
+class APYJsonReader implements Closeable {
+
+    /**
+     * The kinds of tokens returned by {@link APYJsonReader#peek()}.
+     */
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /**
+     * The number of chars read from the underlying reader at once.
+     */
+    private static final int BUFFER_SIZE = 2048;
+
+    // Scopes of the nesting stack
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_OBJECT = 2;
+    private static final int DANGLING_NAME = 3;
+    private static final int NONEMPTY_OBJECT = 4;
+    private static final int EMPTY_ARRAY = 5;
+    private static final int NONEMPTY_ARRAY = 6;
+
+    /**
+     * The reader to read the JSON document from.
+     */
+    private final Reader in;
+
+    /**
+     * Buffer holding chars read from the underlying reader.
+     */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /**
+     * Position of the next char to read in the buffer.
+     */
+    private int pos;
+
+    /**
+     * Number of valid chars in the buffer.
+     */
+    private int limit;
+
+    /**
+     * Number of chars consumed before the current buffer contents, used for
+     * error messages.
+     */
+    private long bufferStartOffset;
+
+    /**
+     * Stack of the scopes the reader is currently nested in.
+     */
+    private int[] stack = new int[32];
+
+    /**
+     * Number of scopes on the stack.
+     */
+    private int stackSize;
+
+    /**
+     * The token returned by the last call to {@link #peek()} that was not yet
+     * consumed, or null.
+     */
+    private Token peeked;
+
+    /**
+     * Constructs an instance of {@link APYJsonReader} reading from the given
+     * {@link Reader}. The reader is not buffered any further, so there is no
+     * need to wrap it into a {@link java.io.BufferedReader}.
+     *
+     * @param in
+     *            the reader to read the JSON document from
+     * @throws IllegalArgumentException
+     *             if the given reader was null
+     */
+    APYJsonReader(Reader in) throws IllegalArgumentException {
+        if (in == null) {
+            throw new IllegalArgumentException("The given reader was null.");
+        }
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Returns the type of the next token without consuming it.
+     *
+     * @return the type of the next token
+     * @throws IOException
+     *             if the document could not be read or was malformed
+     */
+    Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int scope = stack[stackSize - 1];
+        int c;
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+            c = nextNonWhitespace();
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            }
+            pos--;
+        } else if (scope == NONEMPTY_ARRAY) {
+            c = nextNonWhitespace();
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Expected ',' or ']'");
+            }
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+            c = nextNonWhitespace();
+            if (scope == NONEMPTY_OBJECT) {
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Expected ',' or '}'");
+                }
+                c = nextNonWhitespace();
+            } else if (c == '}') {
+                return peeked = Token.END_OBJECT;
+            }
+            if (c != '"') {
+                throw syntaxError("Expected name");
+            }
+            return peeked = Token.NAME;
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace() != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (nextNonWhitespaceOrEnd() == -1) {
+                return peeked = Token.END_DOCUMENT;
+            }
+            throw syntaxError("Expected end of document");
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+        case '{':
+            return peeked = Token.BEGIN_OBJECT;
+        case '[':
+            return peeked = Token.BEGIN_ARRAY;
+        case '"':
+            return peeked = Token.STRING;
+        case 't':
+        case 'f':
+            pos--;
+            return peeked = Token.BOOLEAN;
+        case 'n':
+            pos--;
+            return peeked = Token.NULL;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                pos--;
+                return peeked = Token.NUMBER;
+            }
+            throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    /**
+     * Returns true if the current object or array has another element.
+     *
+     * @return true if there is another element, false otherwise
+     * @throws IOException
+     *             if the document could not be read or was malformed
+     */
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    /**
+     * Consumes the opening brace of an object.
+     *
+     * @throws IOException
+     *             if the next token is not the beginning of an object
+     */
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+        peeked = null;
+    }
+
+    /**
+     * Consumes the closing brace of the current object.
+     *
+     * @throws IOException
+     *             if the next token is not the end of an object
+     */
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+        peeked = null;
+    }
+
+    /**
+     * Consumes the opening bracket of an array.
+     *
+     * @throws IOException
+     *             if the next token is not the beginning of an array
+     */
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+        peeked = null;
+    }
+
+    /**
+     * Consumes the closing bracket of the current array.
+     *
+     * @throws IOException
+     *             if the next token is not the end of an array
+     */
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+        peeked = null;
+    }
+
+    /**
+     * Consumes the next property name.
+     *
+     * @return the property name
+     * @throws IOException
+     *             if the next token is not a property name
+     */
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        peeked = null;
+        return readQuoted();
+    }
+
+    /**
+     * Consumes the next string, number or boolean value and returns its
+     * textual representation. Numbers and booleans are returned as written in
+     * the document.
+     *
+     * @return the textual value
+     * @throws IOException
+     *             if the next token is not a string, number or boolean
+     */
+    String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readQuoted();
+        } else if (token == Token.NUMBER || token == Token.BOOLEAN) {
+            peeked = null;
+            return readLiteral(token);
+        }
+        throw syntaxError("Expected a string but was " + token);
+    }
+
+    /**
+     * Consumes the next boolean value.
+     *
+     * @return the boolean value
+     * @throws IOException
+     *             if the next token is not a boolean
+     */
+    boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        peeked = null;
+        return readLiteral(Token.BOOLEAN).equals("true");
+    }
+
+    /**
+     * Consumes the next number, or string containing a number, as double.
+     *
+     * @return the double value
+     * @throws IOException
+     *             if the next token is neither a number nor a numeric string
+     */
+    double nextDouble() throws IOException {
+        String value = nextNumericString();
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a double but was '" + value + "'");
+        }
+    }
+
+    /**
+     * Consumes the next number, or string containing a number, as long.
+     *
+     * @return the long value
+     * @throws IOException
+     *             if the next token is neither a number nor a numeric string,
+     *             or if the number is not integral
+     */
+    long nextLong() throws IOException {
+        String value = nextNumericString();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Expected a long but was '" + value + "'");
+        }
+    }
+
+    /**
+     * Consumes the next null literal.
+     *
+     * @throws IOException
+     *             if the next token is not null
+     */
+    void nextNull() throws IOException {
+        expect(Token.NULL);
+        peeked = null;
+        readLiteral(Token.NULL);
+    }
+
+    /**
+     * Skips the next value, recursively skipping nested objects and arrays.
+     *
+     * @throws IOException
+     *             if the document could not be read or was malformed
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = peek();
+            switch (token) {
+            case BEGIN_OBJECT:
+                beginObject();
+                depth++;
+                break;
+            case BEGIN_ARRAY:
+                beginArray();
+                depth++;
+                break;
+            case END_OBJECT:
+                endObject();
+                depth--;
+                break;
+            case END_ARRAY:
+                endArray();
+                depth--;
+                break;
+            case NAME:
+            case STRING:
+                peeked = null;
+                skipQuoted();
+                break;
+            case NUMBER:
+            case BOOLEAN:
+            case NULL:
+                peeked = null;
+                readLiteral(token);
+                break;
+            default:
+                throw syntaxError("Unexpected " + token);
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Consumes the next value, including nested objects and arrays, and
+     * returns it as compact JSON text.
+     *
+     * @return the JSON text of the value
+     * @throws IOException
+     *             if the document could not be read or was malformed
+     */
+    String nextRawValue() throws IOException {
+        StringBuilder rawValue = new StringBuilder();
+        appendRawValue(rawValue);
+        return rawValue.toString();
+    }
+
+    /**
+     * Closes the underlying reader.
+     */
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stack[0] = NONEMPTY_DOCUMENT;
+        stackSize = 1;
+        in.close();
+    }
+
+    /**
+     * Appends the given string as quoted and escaped JSON string to the given
+     * {@link StringBuilder}.
+     *
+     * @param target
+     *            the builder to append to
+     * @param value
+     *            the string to quote
+     */
+    static void appendQuoted(StringBuilder target, String value) {
+        target.append('"');
+        for (int index = 0, length = value.length(); index < length; index++) {
+            char c = value.charAt(index);
+            switch (c) {
+            case '"':
+            case '\\':
+                target.append('\\').append(c);
+                break;
+            case '\n':
+                target.append("\\n");
+                break;
+            case '\r':
+                target.append("\\r");
+                break;
+            case '\t':
+                target.append("\\t");
+                break;
+            case '\b':
+                target.append("\\b");
+                break;
+            case '\f':
+                target.append("\\f");
+                break;
+            default:
+                if (c < 0x20) {
+                    target.append(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    target.append(c);
+                }
+            }
+        }
+        target.append('"');
+    }
+
+    /**
+     * Consumes the next value, including nested objects and arrays, and
+     * appends it as compact JSON text to the given builder.
+     *
+     * @param target
+     *            the builder to append to
+     * @throws IOException
+     *             if the document could not be read or was malformed
+     */
+    void appendRawValue(StringBuilder target) throws IOException {
+        Token token = peek();
+        switch (token) {
+        case BEGIN_OBJECT:
+            beginObject();
+            target.append('{');
+            while (hasNext()) {
+                if (target.charAt(target.length() - 1) != '{') {
+                    target.append(',');
+                }
+                appendQuoted(target, nextName());
+                target.append(':');
+                appendRawValue(target);
+            }
+            endObject();
+            target.append('}');
+            break;
+        case BEGIN_ARRAY:
+            beginArray();
+            target.append('[');
+            while (hasNext()) {
+                if (target.charAt(target.length() - 1) != '[') {
+                    target.append(',');
+                }
+                appendRawValue(target);
+            }
+            endArray();
+            target.append(']');
+            break;
+        case STRING:
+            appendQuoted(target, nextString());
+            break;
+        case NUMBER:
+        case BOOLEAN:
+            target.append(nextString());
+            break;
+        case NULL:
+            nextNull();
+            target.append("null");
+            break;
+        default:
+            throw syntaxError("Expected a value but was " + token);
+        }
+    }
+
+    /**
+     * Consumes the next number or string token and returns its text.
+     */
+    private String nextNumericString() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER || token == Token.STRING) {
+            return nextString();
+        }
+        throw syntaxError("Expected a number but was " + token);
+    }
+
+    /**
+     * Throws if the next token is not of the given type.
+     */
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+    }
+
+    /**
+     * Pushes a new scope onto the nesting stack.
+     */
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    /**
+     * Reads the string whose opening quote was already consumed, resolving
+     * escape sequences.
+     */
+    private String readQuoted() throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    if (builder == null) {
+                        return new String(buffer, start, pos - start - 1);
+                    }
+                    builder.append(buffer, start, pos - start - 1);
+                    return builder.toString();
+                } else if (c == '\\') {
+                    if (builder == null) {
+                        builder = new StringBuilder();
+                    }
+                    builder.append(buffer, start, pos - start - 1);
+                    builder.append(readEscapeCharacter());
+                    start = pos;
+                }
+            }
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            builder.append(buffer, start, pos - start);
+            if (!fillBuffer(1)) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Skips the string whose opening quote was already consumed.
+     */
+    private void skipQuoted() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return;
+                } else if (c == '\\') {
+                    readEscapeCharacter();
+                }
+            }
+            if (!fillBuffer(1)) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    /**
+     * Reads the escape sequence following a backslash.
+     */
+    private char readEscapeCharacter() throws IOException {
+        if (pos == limit && !fillBuffer(1)) {
+            throw syntaxError("Unterminated escape sequence");
+        }
+
+        char escaped = buffer[pos++];
+        switch (escaped) {
+        case 'u':
+            if (pos + 4 > limit && !fillBuffer(4)) {
+                throw syntaxError("Unterminated escape sequence");
+            }
+            int result = 0;
+            for (int index = pos, end = pos + 4; index < end; index++) {
+                char c = buffer[index];
+                result <<= 4;
+                if (c >= '0' && c <= '9') {
+                    result += c - '0';
+                } else if (c >= 'a' && c <= 'f') {
+                    result += c - 'a' + 10;
+                } else if (c >= 'A' && c <= 'F') {
+                    result += c - 'A' + 10;
+                } else {
+                    throw syntaxError("Malformed unicode escape sequence");
+                }
+            }
+            pos += 4;
+            return (char) result;
+        case 't':
+            return '\t';
+        case 'b':
+            return '\b';
+        case 'n':
+            return '\n';
+        case 'r':
+            return '\r';
+        case 'f':
+            return '\f';
+        case '"':
+        case '\\':
+        case '/':
+            return escaped;
+        default:
+            throw syntaxError("Invalid escape sequence '\\" + escaped + "'");
+        }
+    }
+
+    /**
+     * Reads the unquoted literal (number, boolean or null) starting at the
+     * current position and validates it against the given token type.
+     */
+    private String readLiteral(Token token) throws IOException {
+        StringBuilder builder = null;
+        while (true) {
+            int start = pos;
+            while (pos < limit && !isLiteralDelimiter(buffer[pos])) {
+                pos++;
+            }
+            if (pos < limit) {
+                String literal;
+                if (builder == null) {
+                    literal = new String(buffer, start, pos - start);
+                } else {
+                    literal = builder.append(buffer, start, pos - start).toString();
+                }
+                return validateLiteral(literal, token);
+            }
+            if (builder == null) {
+                builder = new StringBuilder();
+            }
+            builder.append(buffer, start, pos - start);
+            if (!fillBuffer(1)) {
+                return validateLiteral(builder.toString(), token);
+            }
+        }
+    }
+
+    /**
+     * Validates the given literal against the given token type.
+     */
+    private String validateLiteral(String literal, Token token) throws IOException {
+        if (token == Token.BOOLEAN) {
+            if (literal.equals("true") || literal.equals("false")) {
+                return literal;
+            }
+        } else if (token == Token.NULL) {
+            if (literal.equals("null")) {
+                return literal;
+            }
+        } else if (token == Token.NUMBER) {
+            boolean valid = literal.length() > 0;
+            for (int index = 0; valid && index < literal.length(); index++) {
+                char c = literal.charAt(index);
+                valid = (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+            }
+            if (valid) {
+                return literal;
+            }
+        }
+        throw syntaxError("Malformed literal '" + literal + "'");
+    }
+
+    /**
+     * Returns true if the given char terminates an unquoted literal.
+     */
+    private static boolean isLiteralDelimiter(char c) {
+        return c == ',' || c == ':' || c == ']' || c == '}' || c == '[' || c == '{' || c == '"'
+                || c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Returns the next non-whitespace char, failing at the end of the input.
+     */
+    private int nextNonWhitespace() throws IOException {
+        int c = nextNonWhitespaceOrEnd();
+        if (c == -1) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return c;
+    }
+
+    /**
+     * Returns the next non-whitespace char or -1 at the end of the input.
+     */
+    private int nextNonWhitespaceOrEnd() throws IOException {
+        while (pos < limit || fillBuffer(1)) {
+            char c = buffer[pos++];
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the unread chars to the beginning of the buffer and reads from
+     * the underlying reader until at least the given number of chars is
+     * available.
+     *
+     * @return true if the requested number of chars is available
+     */
+    private boolean fillBuffer(int minimum) throws IOException {
+        bufferStartOffset += pos;
+        limit -= pos;
+        if (limit > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit);
+        }
+        pos = 0;
+
+        int readChars;
+        while (limit < minimum && (readChars = in.read(buffer, limit, buffer.length - limit)) != -1) {
+            limit += readChars;
+        }
+        return limit >= minimum;
+    }
+
+    /**
+     * Creates an {@link IOException} describing a malformed document.
+     */
+    private IOException syntaxError(String message) {
+        return new APYMalformedResponseException(message + " at character " + (bufferStartOffset + pos) + ".");
+    }
+
+}
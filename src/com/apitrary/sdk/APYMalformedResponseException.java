@@ -0,0 +1,18 @@
+package com.apitrary.sdk;
+
+import java.io.IOException;
+
+/**
+ * Exception indicating that a response of the backend could not be read
+ * because it is not valid JSON or lacks a required property. In contrast to
+ * other {@link IOException}s, sending the request again does not help.
+ */
+class APYMalformedResponseException extends IOException {
+
+    private static final long serialVersionUID = 2731907450235648163L;
+
+    APYMalformedResponseException(String message) {
+        super(message);
+    }
+
+}
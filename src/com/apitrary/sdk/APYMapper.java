@@ -0,0 +1,187 @@
+package com.apitrary.sdk;
+
+/**
+ * Maps objects of a class annotated with {@link APYEntityType} to and from
+ * apitrary entities without reflection. Subclasses are generated at compile
+ * time by the apitrary mapper processor and named after the mapped class
+ * with the suffix "_APYMapper". They are not meant to be written by hand.
+ * <p>
+ * While reading, each property is handed over by the method matching the
+ * type it was sent with. Properties the mapped class has no field for, or
+ * whose value can not be converted to the type of the field, are ignored.
+ * Instances of this class must be stateless and thread-safe.
+ * </p>
+ *
+ * @param <T>
+ *            the mapped class
+ */
+public abstract class APYMapper<T> {
+
+    /**
+     * Constructs an instance of {@link APYMapper}.
+     */
+    protected APYMapper() {
+    }
+
+    /**
+     * Returns the name of the entities the objects are stored as.
+     *
+     * @return the entity name
+     */
+    public abstract String getEntityName();
+
+    /**
+     * Returns a new, empty object of the mapped class.
+     *
+     * @return the new object
+     */
+    public abstract T newInstance();
+
+    /**
+     * Returns the ID of the given object.
+     *
+     * @param object
+     *            the mapped object
+     * @return the ID or null if the object has none or the class has no ID field
+     */
+    public String getId(T object) {
+        return null;
+    }
+
+    /**
+     * Sets the ID of the given object. Does nothing if the class has no ID field.
+     *
+     * @param object
+     *            the mapped object
+     * @param id
+     *            the ID of the entity
+     */
+    public void setId(T object, String id) {
+    }
+
+    /**
+     * Reads a string property into the given object.
+     *
+     * @param object
+     *            the mapped object
+     * @param propertyKey
+     *            the key of the property
+     * @param propertyValue
+     *            the value of the property, never null
+     */
+    public void readString(T object, String propertyKey, String propertyValue) {
+    }
+
+    /**
+     * Reads a long property into the given object.
+     *
+     * @param object
+     *            the mapped object
+     * @param propertyKey
+     *            the key of the property
+     * @param propertyValue
+     *            the value of the property
+     */
+    public void readLong(T object, String propertyKey, long propertyValue) {
+    }
+
+    /**
+     * Reads a double property into the given object.
+     *
+     * @param object
+     *            the mapped object
+     * @param propertyKey
+     *            the key of the property
+     * @param propertyValue
+     *            the value of the property
+     */
+    public void readDouble(T object, String propertyKey, double propertyValue) {
+    }
+
+    /**
+     * Reads a boolean property into the given object.
+     *
+     * @param object
+     *            the mapped object
+     * @param propertyKey
+     *            the key of the property
+     * @param propertyValue
+     *            the value of the property
+     */
+    public void readBoolean(T object, String propertyKey, boolean propertyValue) {
+    }
+
+    /**
+     * Reads a property with a null value into the given object.
+     *
+     * @param object
+     *            the mapped object
+     * @param propertyKey
+     *            the key of the property
+     */
+    public void readNull(T object, String propertyKey) {
+    }
+
+    /**
+     * Hands the mapped fields of the given object to the given visitor.
+     *
+     * @param object
+     *            the mapped object
+     * @param visitor
+     *            the {@link APYPropertyVisitor} to hand the properties to
+     */
+    public abstract void write(T object, APYPropertyVisitor visitor);
+
+    /**
+     * Parses the given string property as long, like {@link APYEntity#getLong(String, long)}.
+     *
+     * @param propertyValue
+     *            the value to parse
+     * @param defaultValue
+     *            the value to return if the string is no number
+     * @return the parsed value or the default value
+     */
+    protected static long parseLong(String propertyValue, long defaultValue) {
+        try {
+            return Long.parseLong(propertyValue.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses the given string property as double, like {@link APYEntity#getDouble(String, double)}.
+     *
+     * @param propertyValue
+     *            the value to parse
+     * @param defaultValue
+     *            the value to return if the string is no number
+     * @return the parsed value or the default value
+     */
+    protected static double parseDouble(String propertyValue, double defaultValue) {
+        try {
+            return Double.parseDouble(propertyValue);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Parses the given string property as boolean, like {@link APYEntity#getBoolean(String, boolean)}.
+     *
+     * @param propertyValue
+     *            the value to parse
+     * @param defaultValue
+     *            the value to return if the string is neither "true" nor "false"
+     * @return the parsed value or the default value
+     */
+    protected static boolean parseBoolean(String propertyValue, boolean defaultValue) {
+        if ("true".equalsIgnoreCase(propertyValue)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(propertyValue)) {
+            return false;
+        }
+        return defaultValue;
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.apitrary.sdk;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up the {@link APYMapper} generated for a class annotated with
+ * {@link APYEntityType}. Each mapper is loaded once and shared afterwards.
+ */
+final class APYMapperRegistry {
+
+    /**
+     * The suffix of the names of generated mappers.
+     */
+    static final String MAPPER_SUFFIX = "_APYMapper";
+
+    /**
+     * The loaded mappers by mapped class.
+     */
+    private static final ConcurrentHashMap<Class<?>, APYMapper<?>> MAPPERS =
+            new ConcurrentHashMap<Class<?>, APYMapper<?>>();
+
+    private APYMapperRegistry() {
+    }
+
+    /**
+     * Returns the mapper generated for the given class.
+     *
+     * @param type
+     *            the mapped class
+     * @return the {@link APYMapper} of the class
+     * @throws IllegalArgumentException
+     *             if the class was null or no mapper was generated for it
+     */
+    @SuppressWarnings("unchecked")
+    static <T> APYMapper<T> get(Class<T> type) throws IllegalArgumentException {
+        if (type == null) {
+            throw new IllegalArgumentException("The given class was null.");
+        }
+
+        APYMapper<?> mapper = MAPPERS.get(type);
+        if (mapper == null) {
+            mapper = load(type);
+            APYMapper<?> existingMapper = MAPPERS.putIfAbsent(type, mapper);
+            if (existingMapper != null) {
+                mapper = existingMapper;
+            }
+        }
+        return (APYMapper<T>) mapper;
+    }
+
+    /**
+     * Instantiates the mapper generated for the given class.
+     */
+    private static APYMapper<?> load(Class<?> type) throws IllegalArgumentException {
+        String mapperName = type.getName().concat(MAPPER_SUFFIX);
+        try {
+            Class<?> mapperClass = Class.forName(mapperName, true, type.getClassLoader());
+            return (APYMapper<?>) mapperClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("No mapper was generated for class '".concat(type.getName())
+                    .concat("'. Is it annotated with @APYEntityType and the mapper processor enabled?"), e);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("The mapper '".concat(mapperName).concat("' could not be loaded."), e);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.apitrary.sdk;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of the entities of a collection, fetched by
+ * {@link APYClient#fetchPage(String, int, int)}. Pass it to
+ * {@link APYClient#fetchNextPage(APYPage)} to fetch the following page.
+ */
+public class APYPage {
+
+    /**
+     * The name of the fetched entities.
+     */
+    private final String entityName;
+
+    /**
+     * The number of entities skipped before this page.
+     */
+    private final int offset;
+
+    /**
+     * The maximal number of entities of a page.
+     */
+    private final int pageSize;
+
+    /**
+     * The number of entities the backend returned for this page, including
+     * placeholders which were filtered out.
+     */
+    private final int resultCount;
+
+    /**
+     * The entities of this page.
+     */
+    private final List<APYEntity> entities;
+
+    /**
+     * Constructs an instance of {@link APYPage}.
+     *
+     * @param entityName
+     *            the name of the fetched entities
+     * @param offset
+     *            the number of entities skipped before this page
+     * @param pageSize
+     *            the maximal number of entities of a page
+     * @param resultCount
+     *            the number of entities returned by the backend
+     * @param entities
+     *            the entities of this page
+     */
+    APYPage(String entityName, int offset, int pageSize, int resultCount, List<APYEntity> entities) {
+        this.entityName = entityName;
+        this.offset = offset;
+        this.pageSize = pageSize;
+        this.resultCount = resultCount;
+        this.entities = Collections.unmodifiableList(entities);
+    }
+
+    /**
+     * Returns the name of the fetched entities.
+     *
+     * @return the entity name
+     */
+    public String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * Returns the entities of this page.
+     *
+     * @return an unmodifiable list of the entities, empty if there were none
+     */
+    public List<APYEntity> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Returns the number of entities skipped before this page.
+     *
+     * @return the offset of this page
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the maximal number of entities of a page.
+     *
+     * @return the page size
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Returns whether there may be a following page. This is the case if
+     * this page is full, so the following page may still turn out empty.
+     *
+     * @return true if the following page should be fetched, false if this is
+     *         the last page
+     */
+    public boolean hasNextPage() {
+        return resultCount >= pageSize;
+    }
+
+    /**
+     * Returns the offset of the following page.
+     *
+     * @return the number of entities to skip to fetch the following page
+     */
+    public int getNextOffset() {
+        return offset + resultCount;
+    }
+
+}
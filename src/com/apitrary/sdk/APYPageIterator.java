@@ -0,0 +1,141 @@
+package com.apitrary.sdk;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link Iterator} handing over the pages of a collection, see
+ * {@link APYClient#fetchAllPages(String, int)}. While the caller processes a
+ * page, the following page is already fetched in the background, so at most
+ * two pages are held in memory and the network transfer overlaps with the
+ * processing.
+ * <p>
+ * Empty pages are skipped. Call {@link #close()} when stopping early to
+ * cancel the pending fetch.
+ * </p>
+ * <p>
+ * <b>Notice:</b> As {@link Iterator} does not allow checked exceptions,
+ * {@link #hasNext()} and {@link #next()} throw an {@link IllegalStateException}
+ * whose cause is an {@link APYException} if a page could not be fetched.
+ * Instances of this class are not thread-safe.
+ * </p>
+ */
+public class APYPageIterator implements Iterator<APYPage>, Closeable {
+
+    /**
+     * The client fetching the pages.
+     */
+    private final APYClient client;
+
+    /**
+     * The fetch of the following page, or null if there is none.
+     */
+    private APYFuture<APYPage> pendingPage;
+
+    /**
+     * The page fetched ahead by {@link #hasNext()}, or null.
+     */
+    private APYPage nextPage;
+
+    /**
+     * Whether this iterator was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs an instance of {@link APYPageIterator} and starts fetching
+     * the first page.
+     *
+     * @param client
+     *            the {@link APYClient} fetching the pages
+     * @param entityName
+     *            the name identifying the kind of entities to fetch
+     * @param pageSize
+     *            the maximal number of entities of a page
+     */
+    APYPageIterator(APYClient client, String entityName, int pageSize) {
+        this.client = client;
+        this.pendingPage = client.fetchPageFuture(entityName, 0, pageSize);
+    }
+
+    /**
+     * Returns true if there is another page. Waits for the pending fetch if
+     * necessary and starts fetching the page after it.
+     *
+     * @throws IllegalStateException
+     *             if the next page could not be fetched. The cause is an
+     *             {@link APYException} describing the problem.
+     */
+    @Override
+    public boolean hasNext() throws IllegalStateException {
+        while (nextPage == null && pendingPage != null && !closed) {
+            APYPage page;
+            try {
+                page = pendingPage.await();
+            } catch (APYException e) {
+                pendingPage = null;
+                throw new IllegalStateException(e);
+            }
+
+            // Fetch the following page while the caller processes this one
+            pendingPage = page.hasNextPage()
+                    ? client.fetchPageFuture(page.getEntityName(), page.getNextOffset(), page.getPageSize())
+                    : null;
+
+            if (!page.getEntities().isEmpty()) {
+                nextPage = page;
+            }
+        }
+        return nextPage != null;
+    }
+
+    /**
+     * Returns the next page.
+     *
+     * @throws NoSuchElementException
+     *             if there are no more pages
+     * @throws IllegalStateException
+     *             if the next page could not be fetched. The cause is an
+     *             {@link APYException} describing the problem.
+     */
+    @Override
+    public APYPage next() throws NoSuchElementException, IllegalStateException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        APYPage page = nextPage;
+        nextPage = null;
+        return page;
+    }
+
+    /**
+     * Not supported.
+     *
+     * @throws UnsupportedOperationException
+     *             always
+     */
+    @Override
+    public void remove() throws UnsupportedOperationException {
+        throw new UnsupportedOperationException("Pages can not be removed from an APYPageIterator.");
+    }
+
+    /**
+     * Cancels the pending fetch of the following page. Calling this method
+     * more than once has no effect.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        nextPage = null;
+
+        if (pendingPage != null) {
+            pendingPage.cancel(false);
+            pendingPage = null;
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.apitrary.sdk;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field of a class annotated with {@link APYEntityType} to a property
+ * of the entity. The field must be neither private, static nor final, and of
+ * one of the types String, boolean, int, long, float or double.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface APYProperty {
+
+    /**
+     * The key of the property, the name of the field if empty.
+     */
+    String value() default "";
+
+}
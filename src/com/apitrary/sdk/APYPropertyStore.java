@@ -0,0 +1,519 @@
+package com.apitrary.sdk;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compact storage of the properties of an {@link APYEntity}. The keys are held
+ * by a shared {@link APYEntityShape}, the values by a flat array indexed like
+ * the keys of the shape. Removed properties leave a marker in the array, so
+ * the shape is kept. If the shape tree does not allow to add a key, the store
+ * falls back to a map for the rest of its life.
+ * <p>
+ * Numbers and booleans are kept unboxed: their slot in the value array holds
+ * a type marker while the value itself is held by a parallel array of longs,
+ * which is only allocated once the first primitive value is stored.
+ * </p>
+ * <p>
+ * Properties are iterated in the order they were added. Instances of this
+ * class are not thread-safe.
+ * </p>
+ */
+final class APYPropertyStore {
+
+    /**
+     * Type of a property which does not exist.
+     */
+    static final int TYPE_ABSENT = 0;
+
+    /**
+     * Type of a string property, including null values.
+     */
+    static final int TYPE_STRING = 1;
+
+    /**
+     * Type of a long property.
+     */
+    static final int TYPE_LONG = 2;
+
+    /**
+     * Type of a double property.
+     */
+    static final int TYPE_DOUBLE = 3;
+
+    /**
+     * Type of a boolean property.
+     */
+    static final int TYPE_BOOLEAN = 4;
+
+    /**
+     * Marker of a removed property in the value array.
+     */
+    private static final Object REMOVED = new Object();
+
+    /**
+     * Markers of primitive values in the value array.
+     */
+    private static final Object LONG_VALUE = new Object();
+    private static final Object DOUBLE_VALUE = new Object();
+    private static final Object BOOLEAN_VALUE = new Object();
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    /**
+     * The shape holding the keys, or null if the store fell back to a map.
+     */
+    private APYEntityShape shape;
+
+    /**
+     * The string values or type markers indexed like the keys of the shape.
+     * May be longer than the shape.
+     */
+    private Object[] values;
+
+    /**
+     * The primitive values indexed like the keys of the shape, or null if no
+     * primitive value was stored yet. Doubles are held as their raw bits,
+     * booleans as 0 or 1.
+     */
+    private long[] primitiveValues;
+
+    /**
+     * The properties if the store fell back to a map, null otherwise. Primitive
+     * values are boxed in this mode.
+     */
+    private Map<String, Object> fallbackProperties;
+
+    /**
+     * Constructs an empty {@link APYPropertyStore} starting at the given shape.
+     *
+     * @param rootShape
+     *            the empty root shape of the entity type
+     */
+    APYPropertyStore(APYEntityShape rootShape) {
+        this.shape = rootShape;
+        this.values = NO_VALUES;
+    }
+
+    /**
+     * Returns the type of the property with the given key.
+     *
+     * @param key
+     *            the key of the property
+     * @return one of the TYPE constants, {@link #TYPE_ABSENT} if there is no such property
+     */
+    int getType(String key) {
+        if (fallbackProperties != null) {
+            if (!fallbackProperties.containsKey(key)) {
+                return TYPE_ABSENT;
+            }
+            return typeOf(fallbackProperties.get(key));
+        }
+
+        int index = shape.indexOf(key);
+        return index >= 0 ? typeAt(index) : TYPE_ABSENT;
+    }
+
+    /**
+     * Returns whether there is a property with the given key.
+     *
+     * @param key
+     *            the key of the property
+     * @return true if there is such a property, even with a null value
+     */
+    boolean containsKey(String key) {
+        return getType(key) != TYPE_ABSENT;
+    }
+
+    /**
+     * Returns the value of the given key as string. Primitive values are
+     * formatted.
+     *
+     * @param key
+     *            the key of the property
+     * @return the value or null if there is no such property
+     */
+    String getString(String key) {
+        Object value = getValue(key);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Returns the value of the given key as {@link String}, {@link Long},
+     * {@link Double} or {@link Boolean}.
+     *
+     * @param key
+     *            the key of the property
+     * @return the value or null if there is no such property
+     */
+    Object getValue(String key) {
+        if (fallbackProperties != null) {
+            return fallbackProperties.get(key);
+        }
+
+        int index = shape.indexOf(key);
+        return index >= 0 ? valueAt(index) : null;
+    }
+
+    /**
+     * Returns the raw primitive value of the given key. Doubles are returned
+     * as their raw bits, booleans as 0 or 1.
+     *
+     * @param key
+     *            the key of a property of a primitive type
+     * @return the raw primitive value
+     */
+    long getPrimitive(String key) {
+        if (fallbackProperties != null) {
+            return toPrimitive(fallbackProperties.get(key));
+        }
+        return primitiveValues[shape.indexOf(key)];
+    }
+
+    /**
+     * Sets the string value of the given key.
+     *
+     * @param key
+     *            the key of the property
+     * @param value
+     *            the value to set
+     * @return true if the property was added or its type or value changed
+     */
+    boolean putString(String key, String value) {
+        if (fallbackProperties != null) {
+            return putFallback(key, value);
+        }
+
+        int index = slotOf(key);
+        if (index < 0) {
+            fallbackProperties.put(key, value);
+            return true;
+        }
+
+        Object previousValue = values[index];
+        values[index] = value;
+        return previousValue == REMOVED || previousValue == LONG_VALUE || previousValue == DOUBLE_VALUE
+                || previousValue == BOOLEAN_VALUE
+                || (previousValue == null ? value != null : !previousValue.equals(value));
+    }
+
+    /**
+     * Sets the long value of the given key.
+     *
+     * @param key
+     *            the key of the property
+     * @param value
+     *            the value to set
+     * @return true if the property was added or its type or value changed
+     */
+    boolean putLong(String key, long value) {
+        return putPrimitive(key, LONG_VALUE, value);
+    }
+
+    /**
+     * Sets the double value of the given key.
+     *
+     * @param key
+     *            the key of the property
+     * @param value
+     *            the value to set
+     * @return true if the property was added or its type or value changed
+     */
+    boolean putDouble(String key, double value) {
+        return putPrimitive(key, DOUBLE_VALUE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Sets the boolean value of the given key.
+     *
+     * @param key
+     *            the key of the property
+     * @param value
+     *            the value to set
+     * @return true if the property was added or its type or value changed
+     */
+    boolean putBoolean(String key, boolean value) {
+        return putPrimitive(key, BOOLEAN_VALUE, value ? 1L : 0L);
+    }
+
+    /**
+     * Removes the property with the given key.
+     *
+     * @param key
+     *            the key of the property
+     * @return true if there was such a property, false otherwise
+     */
+    boolean remove(String key) {
+        if (fallbackProperties != null) {
+            if (!fallbackProperties.containsKey(key)) {
+                return false;
+            }
+            fallbackProperties.remove(key);
+            return true;
+        }
+
+        int index = shape.indexOf(key);
+        if (index < 0 || values[index] == REMOVED) {
+            return false;
+        }
+        values[index] = REMOVED;
+        return true;
+    }
+
+    /**
+     * Shrinks the value arrays to the number of keys, e.g. once an entity was
+     * completely read.
+     */
+    void trimToSize() {
+        if (fallbackProperties != null) {
+            return;
+        }
+
+        int size = shape.size();
+        if (values.length > size) {
+            Object[] trimmedValues = new Object[size];
+            System.arraycopy(values, 0, trimmedValues, 0, size);
+            values = trimmedValues;
+        }
+        if (primitiveValues != null && primitiveValues.length > size) {
+            long[] trimmedPrimitiveValues = new long[size];
+            System.arraycopy(primitiveValues, 0, trimmedPrimitiveValues, 0, size);
+            primitiveValues = trimmedPrimitiveValues;
+        }
+    }
+
+    /**
+     * Hands all properties to the given visitor in the order they were added,
+     * each by the method matching its type.
+     *
+     * @param visitor
+     *            the visitor to hand the properties to
+     */
+    void accept(APYPropertyVisitor visitor) {
+        if (fallbackProperties != null) {
+            for (Map.Entry<String, Object> property : fallbackProperties.entrySet()) {
+                Object value = property.getValue();
+                if (value == null) {
+                    visitor.visitNull(property.getKey());
+                } else if (value instanceof String) {
+                    visitor.visitString(property.getKey(), (String) value);
+                } else {
+                    visitPrimitive(visitor, property.getKey(), typeOf(value), toPrimitive(value));
+                }
+            }
+            return;
+        }
+
+        for (int index = 0; index < shape.size(); index++) {
+            Object value = values[index];
+            if (value == REMOVED) {
+                continue;
+            } else if (value == null) {
+                visitor.visitNull(shape.keyAt(index));
+            } else if (value instanceof String) {
+                visitor.visitString(shape.keyAt(index), (String) value);
+            } else {
+                visitPrimitive(visitor, shape.keyAt(index), typeAt(index), primitiveValues[index]);
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of all properties with their values formatted as strings.
+     *
+     * @return a new map of all properties in the order they were added
+     */
+    Map<String, String> toMap() {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        if (fallbackProperties != null) {
+            for (Map.Entry<String, Object> property : fallbackProperties.entrySet()) {
+                Object value = property.getValue();
+                properties.put(property.getKey(), value != null ? value.toString() : null);
+            }
+            return properties;
+        }
+
+        for (int index = 0; index < shape.size(); index++) {
+            if (values[index] != REMOVED) {
+                Object value = valueAt(index);
+                properties.put(shape.keyAt(index), value != null ? value.toString() : null);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Returns a copy of this store sharing its shape.
+     *
+     * @return a new {@link APYPropertyStore} holding the same properties
+     */
+    APYPropertyStore copy() {
+        APYPropertyStore copy = new APYPropertyStore(shape);
+        if (fallbackProperties != null) {
+            copy.fallbackProperties = new LinkedHashMap<String, Object>(fallbackProperties);
+            return copy;
+        }
+
+        int size = shape.size();
+        if (size > 0) {
+            copy.values = new Object[size];
+            System.arraycopy(values, 0, copy.values, 0, size);
+            if (primitiveValues != null) {
+                copy.primitiveValues = new long[size];
+                System.arraycopy(primitiveValues, 0, copy.primitiveValues, 0, size);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Stores a primitive value of the type given by its marker.
+     */
+    private boolean putPrimitive(String key, Object typeMarker, long value) {
+        if (fallbackProperties != null) {
+            return putFallback(key, box(typeMarker, value));
+        }
+
+        int index = slotOf(key);
+        if (index < 0) {
+            fallbackProperties.put(key, box(typeMarker, value));
+            return true;
+        }
+
+        if (primitiveValues == null) {
+            primitiveValues = new long[values.length];
+        }
+        boolean changed = values[index] != typeMarker || primitiveValues[index] != value;
+        values[index] = typeMarker;
+        primitiveValues[index] = value;
+        return changed;
+    }
+
+    /**
+     * Returns the index of the slot of the given key, adding the key to the
+     * shape if necessary. Returns -1 if the store fell back to a map instead.
+     */
+    private int slotOf(String key) {
+        int index = shape.indexOf(key);
+        if (index >= 0) {
+            return index;
+        }
+
+        APYEntityShape nextShape = shape.withKey(key);
+        if (nextShape == null) {
+            fallBackToMap();
+            return -1;
+        }
+
+        index = shape.size();
+        if (index == values.length) {
+            int capacity = Math.max(4, index * 2);
+            Object[] grownValues = new Object[capacity];
+            System.arraycopy(values, 0, grownValues, 0, index);
+            values = grownValues;
+            if (primitiveValues != null) {
+                long[] grownPrimitiveValues = new long[capacity];
+                System.arraycopy(primitiveValues, 0, grownPrimitiveValues, 0, index);
+                primitiveValues = grownPrimitiveValues;
+            }
+        }
+        values[index] = REMOVED;
+        shape = nextShape;
+        return index;
+    }
+
+    /**
+     * Stores a boxed value in fallback mode.
+     */
+    private boolean putFallback(String key, Object value) {
+        boolean existed = fallbackProperties.containsKey(key);
+        Object previousValue = fallbackProperties.put(key, value);
+        return !existed || (previousValue == null ? value != null : !previousValue.equals(value));
+    }
+
+    /**
+     * Returns the type of the slot with the given index.
+     */
+    private int typeAt(int index) {
+        Object value = values[index];
+        if (value == REMOVED) {
+            return TYPE_ABSENT;
+        } else if (value == LONG_VALUE) {
+            return TYPE_LONG;
+        } else if (value == DOUBLE_VALUE) {
+            return TYPE_DOUBLE;
+        } else if (value == BOOLEAN_VALUE) {
+            return TYPE_BOOLEAN;
+        }
+        return TYPE_STRING;
+    }
+
+    /**
+     * Returns the value of the slot with the given index, boxing primitive values.
+     */
+    private Object valueAt(int index) {
+        Object value = values[index];
+        if (value == REMOVED) {
+            return null;
+        } else if (value == LONG_VALUE || value == DOUBLE_VALUE || value == BOOLEAN_VALUE) {
+            return box(value, primitiveValues[index]);
+        }
+        return value;
+    }
+
+    /**
+     * Moves the properties into a map, which is used from now on.
+     */
+    private void fallBackToMap() {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        for (int index = 0; index < shape.size(); index++) {
+            if (values[index] != REMOVED) {
+                properties.put(shape.keyAt(index), valueAt(index));
+            }
+        }
+        fallbackProperties = properties;
+        shape = null;
+        values = null;
+        primitiveValues = null;
+    }
+
+    private static void visitPrimitive(APYPropertyVisitor visitor, String key, int type, long value) {
+        if (type == TYPE_LONG) {
+            visitor.visitLong(key, value);
+        } else if (type == TYPE_DOUBLE) {
+            visitor.visitDouble(key, Double.longBitsToDouble(value));
+        } else {
+            visitor.visitBoolean(key, value != 0);
+        }
+    }
+
+    private static int typeOf(Object value) {
+        if (value instanceof Long) {
+            return TYPE_LONG;
+        } else if (value instanceof Double) {
+            return TYPE_DOUBLE;
+        } else if (value instanceof Boolean) {
+            return TYPE_BOOLEAN;
+        }
+        return TYPE_STRING;
+    }
+
+    private static Object box(Object typeMarker, long value) {
+        if (typeMarker == LONG_VALUE) {
+            return Long.valueOf(value);
+        } else if (typeMarker == DOUBLE_VALUE) {
+            return Double.valueOf(Double.longBitsToDouble(value));
+        }
+        return Boolean.valueOf(value != 0);
+    }
+
+    private static long toPrimitive(Object value) {
+        if (value instanceof Long) {
+            return ((Long) value).longValue();
+        } else if (value instanceof Double) {
+            return Double.doubleToRawLongBits(((Double) value).doubleValue());
+        }
+        return ((Boolean) value).booleanValue() ? 1L : 0L;
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.apitrary.sdk;
+
+/**
+ * Visitor of the properties of an {@link APYEntity}, see
+ * {@link APYEntity#visitProperties(APYPropertyVisitor)}. Each property is
+ * handed over by the method matching the type it is stored with, so values are
+ * neither copied nor converted.
+ */
+public interface APYPropertyVisitor {
+
+    /**
+     * Called for a string property.
+     *
+     * @param propertyKey the key of the property
+     * @param propertyValue the value of the property, never null
+     */
+    void visitString(String propertyKey, String propertyValue);
+
+    /**
+     * Called for a long property.
+     *
+     * @param propertyKey the key of the property
+     * @param propertyValue the value of the property
+     */
+    void visitLong(String propertyKey, long propertyValue);
+
+    /**
+     * Called for a double property.
+     *
+     * @param propertyKey the key of the property
+     * @param propertyValue the value of the property
+     */
+    void visitDouble(String propertyKey, double propertyValue);
+
+    /**
+     * Called for a boolean property.
+     *
+     * @param propertyKey the key of the property
+     * @param propertyValue the value of the property
+     */
+    void visitBoolean(String propertyKey, boolean propertyValue);
+
+    /**
+     * Called for a property with a null value.
+     *
+     * @param propertyKey the key of the property
+     */
+    void visitNull(String propertyKey);
+
+}
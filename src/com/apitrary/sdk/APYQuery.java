@@ -0,0 +1,343 @@
+package com.apitrary.sdk;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query restricting the entities and properties returned by a fetch
+ * operation, evaluated by the apitrary backend. Only matching entities and
+ * selected properties are transferred and decoded. Build a query by chaining
+ * its methods:
+ *
+ * <pre>
+ * APYQuery query = new APYQuery()
+ *         .whereEquals("status", "open")
+ *         .where("priority", APYQuery.Operator.GREATER_THAN_OR_EQUAL, 2)
+ *         .select("title", "priority")
+ *         .orderBy("priority", false)
+ *         .limit(20);
+ * </pre>
+ * <p>
+ * The query is encoded into the request URL: each predicate as a 'filter'
+ * parameter of the form key:operator:value, the selected properties as a
+ * comma separated 'fields' parameter, the sort order as a 'sort' parameter
+ * with a leading '-' for descending order and the maximal number of
+ * entities as a 'limit' parameter.
+ * </p>
+ * <p>
+ * <b>Notice:</b> Instances of this class are not thread-safe. Do not modify a
+ * query while a fetch operation using it is running.
+ * </p>
+ */
+public class APYQuery {
+
+    /**
+     * The comparison operators of predicates.
+     */
+    public enum Operator {
+
+        EQUALS("eq"),
+        NOT_EQUALS("ne"),
+        LESS_THAN("lt"),
+        LESS_THAN_OR_EQUAL("lte"),
+        GREATER_THAN("gt"),
+        GREATER_THAN_OR_EQUAL("gte");
+
+        /**
+         * The name of the operator in the request URL.
+         */
+        private final String code;
+
+        private Operator(String code) {
+            this.code = code;
+        }
+    }
+
+    /**
+     * The charset query values are URL encoded with.
+     */
+    private static final String URL_CHARSET = "UTF-8";
+
+    /**
+     * The encoded predicates of the form key:operator:value.
+     */
+    private final List<String> filters = new ArrayList<String>();
+
+    /**
+     * The keys of the selected properties, empty to select all properties.
+     */
+    private final List<String> fields = new ArrayList<String>();
+
+    /**
+     * The key of the property to sort by, or null.
+     */
+    private String sortKey;
+
+    /**
+     * Whether to sort in ascending order.
+     */
+    private boolean sortAscending = true;
+
+    /**
+     * The maximal number of entities, or 0 for no limit.
+     */
+    private int limit;
+
+    /**
+     * Adds a predicate comparing the given property with a string value.
+     *
+     * @param propertyKey
+     *            the key of the property to compare
+     * @param operator
+     *            the comparison operator
+     * @param value
+     *            the value to compare with
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the key was null or empty, or the operator or value was null
+     */
+    public APYQuery where(String propertyKey, Operator operator, String value) throws IllegalArgumentException {
+        if (value == null) {
+            throw new IllegalArgumentException("The value to compare with must not be null.");
+        }
+        return addFilter(propertyKey, operator, value);
+    }
+
+    /**
+     * Adds a predicate comparing the given property with a long value.
+     *
+     * @param propertyKey
+     *            the key of the property to compare
+     * @param operator
+     *            the comparison operator
+     * @param value
+     *            the value to compare with
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the key was null or empty, or the operator was null
+     */
+    public APYQuery where(String propertyKey, Operator operator, long value) throws IllegalArgumentException {
+        return addFilter(propertyKey, operator, String.valueOf(value));
+    }
+
+    /**
+     * Adds a predicate comparing the given property with a double value.
+     *
+     * @param propertyKey
+     *            the key of the property to compare
+     * @param operator
+     *            the comparison operator
+     * @param value
+     *            the value to compare with
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the key was null or empty, the operator was null or the
+     *             value was not a finite number
+     */
+    public APYQuery where(String propertyKey, Operator operator, double value) throws IllegalArgumentException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("The value to compare with must be a finite number.");
+        }
+        return addFilter(propertyKey, operator, String.valueOf(value));
+    }
+
+    /**
+     * Adds a predicate comparing the given property with a boolean value.
+     *
+     * @param propertyKey
+     *            the key of the property to compare
+     * @param operator
+     *            the comparison operator
+     * @param value
+     *            the value to compare with
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the key was null or empty, or the operator was null
+     */
+    public APYQuery where(String propertyKey, Operator operator, boolean value) throws IllegalArgumentException {
+        return addFilter(propertyKey, operator, String.valueOf(value));
+    }
+
+    /**
+     * Adds a predicate matching entities whose property equals the given value.
+     *
+     * @param propertyKey
+     *            the key of the property to compare
+     * @param value
+     *            the value the property must equal
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the key was null or empty, or the value was null
+     */
+    public APYQuery whereEquals(String propertyKey, String value) throws IllegalArgumentException {
+        return where(propertyKey, Operator.EQUALS, value);
+    }
+
+    /**
+     * Adds predicates matching entities whose property lies within the given
+     * range, both bounds included.
+     *
+     * @param propertyKey
+     *            the key of the property to compare
+     * @param minValue
+     *            the lower bound
+     * @param maxValue
+     *            the upper bound
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the key was null or empty
+     */
+    public APYQuery whereBetween(String propertyKey, long minValue, long maxValue) throws IllegalArgumentException {
+        where(propertyKey, Operator.GREATER_THAN_OR_EQUAL, minValue);
+        return where(propertyKey, Operator.LESS_THAN_OR_EQUAL, maxValue);
+    }
+
+    /**
+     * Selects the properties returned for each entity. ID and timestamps are
+     * always returned. If no property is selected, all properties are returned.
+     * <p>
+     * <b>Notice:</b> Entities fetched with selected properties are partial,
+     * so they are not put into the entity cache.
+     * </p>
+     *
+     * @param propertyKeys
+     *            the keys of the properties to return
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if a key was null or empty
+     */
+    public APYQuery select(String... propertyKeys) throws IllegalArgumentException {
+        for (String propertyKey : propertyKeys) {
+            if (APYUtils.isNullOrEmpty(propertyKey)) {
+                throw new IllegalArgumentException("The property key must not be null or empty.");
+            }
+            fields.add(propertyKey);
+        }
+        return this;
+    }
+
+    /**
+     * Sorts the returned entities by the given property, replacing any
+     * previously set sort order.
+     *
+     * @param propertyKey
+     *            the key of the property to sort by
+     * @param ascending
+     *            true to sort in ascending order, false for descending order
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the key was null or empty
+     */
+    public APYQuery orderBy(String propertyKey, boolean ascending) throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(propertyKey)) {
+            throw new IllegalArgumentException("The property key must not be null or empty.");
+        }
+        this.sortKey = propertyKey;
+        this.sortAscending = ascending;
+        return this;
+    }
+
+    /**
+     * Limits the number of returned entities.
+     *
+     * @param limit
+     *            the maximal number of entities, must be >= 1
+     * @return this query
+     * @throws IllegalArgumentException
+     *             if the limit was less than 1
+     */
+    public APYQuery limit(int limit) throws IllegalArgumentException {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit must be >= 1.");
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Returns the keys of the selected properties.
+     *
+     * @return an unmodifiable list of the keys, empty if all properties are selected
+     */
+    public List<String> getSelectedKeys() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * Returns whether this query selects only some of the properties.
+     *
+     * @return true if properties were selected, false if all properties are returned
+     */
+    public boolean hasProjection() {
+        return !fields.isEmpty();
+    }
+
+    /**
+     * Returns whether this query neither restricts nor orders the entities
+     * and properties.
+     *
+     * @return true if the query is empty
+     */
+    public boolean isEmpty() {
+        return filters.isEmpty() && fields.isEmpty() && sortKey == null && limit == 0;
+    }
+
+    /**
+     * Returns the query parameters appended to the request URL.
+     *
+     * @return the URL encoded parameters, each starting with '&amp;', or an
+     *         empty string if the query is empty
+     */
+    String toQueryString() {
+        StringBuilder queryString = new StringBuilder();
+        for (String filter : filters) {
+            queryString.append("&filter=").append(encode(filter));
+        }
+        if (!fields.isEmpty()) {
+            StringBuilder fieldList = new StringBuilder();
+            for (String field : fields) {
+                if (fieldList.length() > 0) {
+                    fieldList.append(',');
+                }
+                fieldList.append(field);
+            }
+            queryString.append("&fields=").append(encode(fieldList.toString()));
+        }
+        if (sortKey != null) {
+            queryString.append("&sort=").append(encode(sortAscending ? sortKey : "-".concat(sortKey)));
+        }
+        if (limit > 0) {
+            queryString.append("&limit=").append(limit);
+        }
+        return queryString.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Query " + toQueryString();
+    }
+
+    private APYQuery addFilter(String propertyKey, Operator operator, String value) throws IllegalArgumentException {
+        if (APYUtils.isNullOrEmpty(propertyKey)) {
+            throw new IllegalArgumentException("The property key must not be null or empty.");
+        }
+        if (operator == null) {
+            throw new IllegalArgumentException("The operator must not be null.");
+        }
+        filters.add(propertyKey.concat(":").concat(operator.code).concat(":").concat(value));
+        return this;
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, URL_CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is supported on every platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
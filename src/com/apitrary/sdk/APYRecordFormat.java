@@ -0,0 +1,109 @@
+package com.apitrary.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Record framing and entity encoding shared by the files of
+ * {@link APYEntityStore} and {@link APYWriteBehindQueue}. A record consists of
+ * a header, holding the length of its body and the CRC32 of the body, and
+ * the body itself, whose layout is up to the file.
+ */
+abstract class APYRecordFormat {
+
+    private APYRecordFormat() {
+    }
+
+    /**
+     * The size of the record header: the body length and its CRC32.
+     */
+    static final int HEADER_SIZE = 8;
+
+    /**
+     * The charset of the encoded entity properties.
+     */
+    static final String DATA_CHARSET = "UTF-8";
+
+    /**
+     * Writes a record with the given body to the given stream.
+     *
+     * @param records
+     *            the stream to write the record to
+     * @param body
+     *            the body of the record
+     * @return the length of the record including its header
+     * @throws IOException
+     *             if the record could not be written
+     */
+    static int writeRecord(ByteArrayOutputStream records, byte[] body) throws IOException {
+        DataOutputStream record = new DataOutputStream(records);
+        record.writeInt(body.length);
+        record.writeInt(checksum(body, 0, body.length));
+        record.write(body);
+        record.flush();
+        return HEADER_SIZE + body.length;
+    }
+
+    /**
+     * Returns the CRC32 of the given range of bytes as stored in the record
+     * header.
+     *
+     * @param bytes
+     *            the bytes to checksum
+     * @param offset
+     *            the offset of the first byte
+     * @param length
+     *            the number of bytes
+     * @return the checksum
+     */
+    static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, offset, length);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Returns the properties of the given entity as UTF-8 encoded JSON object.
+     * The JSON text of an entity which was not decoded yet is kept as it is.
+     *
+     * @param entity
+     *            the entity to encode
+     * @return the encoded properties
+     * @throws IOException
+     *             if the properties could not be encoded
+     */
+    static byte[] encodeProperties(APYEntity entity) throws IOException {
+        String lazyData = entity.getLazyData();
+        if (lazyData != null) {
+            return lazyData.getBytes(DATA_CHARSET);
+        }
+
+        APYEntityWriter writer = APYEntityWriter.acquire();
+        try {
+            writer.writeEntity(entity);
+            ByteArrayOutputStream data = new ByteArrayOutputStream(writer.size());
+            writer.writeTo(data);
+            return data.toByteArray();
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * Keeps the given encoded properties in the given entity, which decodes
+     * them on first access.
+     *
+     * @param entity
+     *            the entity to keep the properties
+     * @param data
+     *            the properties encoded by {@link #encodeProperties(APYEntity)}
+     * @throws IOException
+     *             if the properties could not be decoded
+     */
+    static void decodeProperties(APYEntity entity, byte[] data) throws IOException {
+        entity.setLazyData(new String(data, DATA_CHARSET));
+    }
+
+}
@@ -0,0 +1,292 @@
+package com.apitrary.sdk;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.util.Log;
+
+/**
+ * Executes read requests hedged according to an {@link APYHedgingPolicy}.
+ * The first attempt runs on the calling thread. If it has not completed
+ * within the hedging delay of its operation, a second attempt is started on
+ * a background thread, provided the hedge budget allows it, a hedging thread
+ * is free and a pooled connection is available right away. The attempt
+ * completing first successfully wins and the other one is cancelled by
+ * disconnecting its connection.
+ */
+final class APYRequestHedger {
+
+    /**
+     * A read request, sent once per attempt.
+     */
+    interface HedgedRequest<T> {
+
+        /**
+         * Sends the request.
+         *
+         * @param cancellationToken
+         *            the token the request attaches its connection to
+         * @return the result of the request
+         * @throws APYException
+         *             if the request failed or was cancelled
+         */
+        T execute(APYCancellationToken cancellationToken) throws APYException;
+    }
+
+    /**
+     * LOG Tag used for Android logging statements.
+     */
+    private static final String LOG_TAG = "APITRARY";
+
+    /**
+     * The number of recent response times the hedging delay is derived from.
+     */
+    private static final int SAMPLE_COUNT = 128;
+
+    /**
+     * The minimal number of recorded response times before reads are hedged.
+     */
+    private static final int MIN_SAMPLE_COUNT = 20;
+
+    /**
+     * The number of recorded response times after which the hedging delay is
+     * derived again.
+     */
+    private static final int DELAY_UPDATE_INTERVAL = 16;
+
+    /**
+     * The time in seconds an idle hedging thread is kept.
+     */
+    private static final long HEDGE_THREAD_KEEP_ALIVE = 30;
+
+    /**
+     * The policy applied.
+     */
+    private final APYHedgingPolicy policy;
+
+    /**
+     * The budget capping the hedges.
+     */
+    private final APYRetryBudget budget;
+
+    /**
+     * The response times by operation.
+     */
+    private final ConcurrentHashMap<String, LatencyTracker> trackers = new ConcurrentHashMap<String, LatencyTracker>();
+
+    /**
+     * Starts the hedges once their delay elapsed.
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Runs the hedges, one thread per running hedge and at most one per
+     * hedge token.
+     */
+    private final ThreadPoolExecutor hedgeExecutor;
+
+    /**
+     * Constructs an instance of {@link APYRequestHedger}.
+     *
+     * @param policy
+     *            the {@link APYHedgingPolicy} to apply
+     */
+    APYRequestHedger(APYHedgingPolicy policy) {
+        this.policy = policy;
+        this.budget = new APYRetryBudget(policy.getMaxExtraLoad(), policy.getMaxHedgeTokens());
+
+        ThreadFactory threadFactory = new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "apitrary-hedge");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        hedgeExecutor = new ThreadPoolExecutor(0, Math.max(1, policy.getMaxHedgeTokens()), HEDGE_THREAD_KEEP_ALIVE,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), threadFactory);
+    }
+
+    /**
+     * Executes the given request, hedging it if the first attempt is slower
+     * than the hedging delay of the given operation.
+     *
+     * @param operation
+     *            the name of the operation, whose response times are recorded together
+     * @param request
+     *            the request to execute
+     * @return the result of the winning attempt
+     * @throws APYException
+     *             the error of the first attempt if no attempt succeeded
+     */
+    <T> T execute(String operation, final HedgedRequest<T> request) throws APYException {
+        LatencyTracker tracker = trackers.get(operation);
+        if (tracker == null) {
+            LatencyTracker newTracker = new LatencyTracker();
+            tracker = trackers.putIfAbsent(operation, newTracker);
+            if (tracker == null) {
+                tracker = newTracker;
+            }
+        }
+
+        budget.onRequest();
+        long startTime = System.currentTimeMillis();
+        long hedgeDelay = tracker.getHedgeDelay();
+        if (hedgeDelay < 0) {
+            // Too few response times recorded to tell a slow response
+            T result = request.execute(null);
+            tracker.record(System.currentTimeMillis() - startTime);
+            return result;
+        }
+
+        final AtomicBoolean decided = new AtomicBoolean();
+        final APYCancellationToken primaryToken = new APYCancellationToken();
+        // A hedge never waits for a connection, it would compete with the requests waiting for one
+        final APYCancellationToken hedgeToken = new APYCancellationToken(false);
+        final APYFuture<T> hedgeResult = new APYFuture<T>();
+        final Runnable hedge = new Runnable() {
+            @Override
+            public void run() {
+                if (decided.get() || !budget.tryAcquire()) {
+                    hedgeResult.fail(new APYException("The hedged request was not sent."));
+                    return;
+                }
+                Log.d(LOG_TAG, "Hedging a slow request.");
+
+                try {
+                    T result = request.execute(hedgeToken);
+                    if (decided.compareAndSet(false, true)) {
+                        hedgeResult.complete(result);
+                        primaryToken.cancel();
+                    } else {
+                        hedgeResult.fail(new APYException("The hedged request lost."));
+                    }
+                } catch (APYException e) {
+                    hedgeResult.fail(e);
+                } catch (RuntimeException e) {
+                    hedgeResult.fail(new APYException(e));
+                }
+            }
+        };
+
+        ScheduledFuture<?> scheduledHedge;
+        try {
+            scheduledHedge = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        hedgeExecutor.execute(hedge);
+                    } catch (RejectedExecutionException e) {
+                        // All hedging threads are busy or the hedger was shut down
+                        hedgeResult.fail(new APYException("The hedged request was not sent.", e));
+                    }
+                }
+            }, hedgeDelay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // The hedger was shut down
+            return request.execute(null);
+        }
+
+        try {
+            T result = request.execute(primaryToken);
+            tracker.record(System.currentTimeMillis() - startTime);
+            if (decided.compareAndSet(false, true)) {
+                scheduledHedge.cancel(false);
+                hedgeToken.cancel();
+                return result;
+            }
+            // The hedge completed first
+            return hedgeResult.await();
+        } catch (APYException e) {
+            if (primaryToken.isCancelled()) {
+                // The hedge won and cancelled this attempt, which took at least this long
+                tracker.record(System.currentTimeMillis() - startTime);
+                return hedgeResult.await();
+            }
+            if (scheduledHedge.cancel(false)) {
+                // No hedge was started
+                throw e;
+            }
+            try {
+                return hedgeResult.await();
+            } catch (APYException hedgeError) {
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            scheduledHedge.cancel(false);
+            hedgeToken.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the threads of this hedger. Hedges being sent are completed.
+     */
+    void shutdown() {
+        scheduler.shutdownNow();
+        hedgeExecutor.shutdown();
+    }
+
+    /**
+     * The recent response times of an operation and the hedging delay
+     * derived from them.
+     */
+    private final class LatencyTracker {
+
+        /**
+         * The recent response times in milliseconds, a ring buffer guarded by this.
+         */
+        private final long[] samples = new long[SAMPLE_COUNT];
+
+        /**
+         * The number of recorded response times, at most {@link #SAMPLE_COUNT}.
+         */
+        private int sampleCount;
+
+        /**
+         * The index the next response time is recorded at.
+         */
+        private int nextSample;
+
+        /**
+         * The number of response times recorded since the delay was derived.
+         */
+        private int samplesSinceUpdate;
+
+        /**
+         * The current hedging delay in milliseconds, or -1 if too few
+         * response times were recorded.
+         */
+        private long hedgeDelay = -1;
+
+        synchronized void record(long responseTime) {
+            samples[nextSample] = responseTime;
+            nextSample = (nextSample + 1) % SAMPLE_COUNT;
+            sampleCount = Math.min(sampleCount + 1, SAMPLE_COUNT);
+
+            samplesSinceUpdate++;
+            if (sampleCount >= MIN_SAMPLE_COUNT && (hedgeDelay < 0 || samplesSinceUpdate >= DELAY_UPDATE_INTERVAL)) {
+                long[] sortedSamples = new long[sampleCount];
+                System.arraycopy(samples, 0, sortedSamples, 0, sampleCount);
+                Arrays.sort(sortedSamples);
+                int index = Math.max(0, (int) Math.ceil(policy.getPercentile() * sampleCount) - 1);
+                hedgeDelay = Math.max(policy.getMinDelay(), sortedSamples[index]);
+                samplesSinceUpdate = 0;
+            }
+        }
+
+        synchronized long getHedgeDelay() {
+            return hedgeDelay;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.apitrary.sdk;
+
+/**
+ * Token bucket limiting the extra requests of a client, i.e. retries or
+ * hedges. Every first attempt of a request deposits the configured ratio,
+ * every extra request withdraws a whole token. The bucket holds at most the
+ * configured number of tokens and starts full.
+ */
+final class APYRetryBudget {
+
+    /**
+     * The tokens deposited per request.
+     */
+    private final double ratio;
+
+    /**
+     * The maximal number of tokens.
+     */
+    private final double maxTokens;
+
+    /**
+     * The available tokens, guarded by this.
+     */
+    private double tokens;
+
+    /**
+     * Constructs an instance of {@link APYRetryBudget} configured by the given
+     * policy.
+     *
+     * @param retryPolicy the {@link APYRetryPolicy} to apply
+     */
+    APYRetryBudget(APYRetryPolicy retryPolicy) {
+        this(retryPolicy.getRetryRatio(), retryPolicy.getMaxRetryTokens());
+    }
+
+    /**
+     * Constructs an instance of {@link APYRetryBudget}.
+     *
+     * @param ratio the tokens deposited per request
+     * @param maxTokens the maximal number of tokens
+     */
+    APYRetryBudget(double ratio, int maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Deposits the share of a request.
+     */
+    synchronized void onRequest() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * Withdraws a token for an extra request if one is available.
+     *
+     * @return true if the extra request may be sent, false if the budget is used up
+     */
+    synchronized boolean tryAcquire() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.apitrary.sdk;
+
+/**
+ * Configuration of the retries of failed idempotent requests of an
+ * {@link APYClient}, i.e. of fetches, updates and patches. Requests failing
+ * with a network error, e.g. a timeout, or an error on the backend side
+ * (HTTP status 5xx) are retried after an exponentially growing delay with
+ * random jitter. Other failures, e.g. a missing entity or a response which
+ * can not be read, are not retried.
+ * Creations and deletions are never retried.
+ * <p>
+ * All requests of a client share a retry budget: every request earns a
+ * fraction of a retry, and a retry is only made while the budget is not
+ * used up. While the backend is healthy the budget stays full; during an
+ * outage it limits the retries to the given ratio of the requests, so
+ * retries do not multiply the load on a struggling backend.
+ * </p>
+ */
+public class APYRetryPolicy {
+
+    /**
+     * The default maximal number of attempts of a request.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * The default delay before the first retry in milliseconds.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 100;
+
+    /**
+     * The default maximal delay before a retry in milliseconds.
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 5000;
+
+    /**
+     * The default ratio of retries to requests of the retry budget.
+     */
+    public static final double DEFAULT_RETRY_RATIO = 0.1;
+
+    /**
+     * The default number of retries the budget holds at most.
+     */
+    public static final int DEFAULT_MAX_RETRY_TOKENS = 10;
+
+    /**
+     * The maximal number of attempts of a request.
+     */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /**
+     * The delay before the first retry in milliseconds.
+     */
+    private long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+
+    /**
+     * The maximal delay before a retry in milliseconds.
+     */
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    /**
+     * The ratio of retries to requests of the retry budget.
+     */
+    private double retryRatio = DEFAULT_RETRY_RATIO;
+
+    /**
+     * The number of retries the budget holds at most.
+     */
+    private int maxRetryTokens = DEFAULT_MAX_RETRY_TOKENS;
+
+    /**
+     * Returns the maximal number of attempts of a request.
+     *
+     * @return the maximal number of attempts, including the first one
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximal number of attempts of a request, including the first
+     * one.
+     *
+     * @param maxAttempts the maximal number of attempts, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given number was less than 1
+     */
+    public void setMaxAttempts(int maxAttempts) throws IllegalArgumentException {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The maximal number of attempts must be >= 1.");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Returns the delay before the first retry.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    /**
+     * Sets the delay before the first retry. The delay doubles with every
+     * further retry, up to the maximal backoff. Each actual delay is chosen
+     * randomly between zero and the current delay, so clients failing at the
+     * same time do not retry at the same time.
+     *
+     * @param initialBackoff the delay in milliseconds, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given delay was less than 1
+     */
+    public void setInitialBackoff(long initialBackoff) throws IllegalArgumentException {
+        if (initialBackoff < 1) {
+            throw new IllegalArgumentException("The initial backoff must be >= 1.");
+        }
+        this.initialBackoff = initialBackoff;
+    }
+
+    /**
+     * Returns the maximal delay before a retry.
+     *
+     * @return the delay in milliseconds
+     */
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    /**
+     * Sets the maximal delay before a retry.
+     *
+     * @param maxBackoff the delay in milliseconds, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given delay was less than 1
+     */
+    public void setMaxBackoff(long maxBackoff) throws IllegalArgumentException {
+        if (maxBackoff < 1) {
+            throw new IllegalArgumentException("The maximal backoff must be >= 1.");
+        }
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the ratio of retries to requests of the retry budget.
+     *
+     * @return the retry ratio
+     */
+    public double getRetryRatio() {
+        return retryRatio;
+    }
+
+    /**
+     * Sets the ratio of retries to requests of the retry budget, e.g. 0.1 to
+     * allow one retry per ten requests once the budget is used up.
+     *
+     * @param retryRatio the retry ratio, must be >= 0
+     * @throws IllegalArgumentException
+     *             if the given ratio was negative or not a number
+     */
+    public void setRetryRatio(double retryRatio) throws IllegalArgumentException {
+        if (!(retryRatio >= 0)) {
+            throw new IllegalArgumentException("The retry ratio must be >= 0.");
+        }
+        this.retryRatio = retryRatio;
+    }
+
+    /**
+     * Returns the number of retries the budget holds at most.
+     *
+     * @return the maximal number of retry tokens
+     */
+    public int getMaxRetryTokens() {
+        return maxRetryTokens;
+    }
+
+    /**
+     * Sets the number of retries the budget holds at most, i.e. the number
+     * of retries allowed in a burst. The budget starts full.
+     *
+     * @param maxRetryTokens the maximal number of retry tokens, must be >= 0
+     * @throws IllegalArgumentException
+     *             if the given number was negative
+     */
+    public void setMaxRetryTokens(int maxRetryTokens) throws IllegalArgumentException {
+        if (maxRetryTokens < 0) {
+            throw new IllegalArgumentException("The maximal number of retry tokens must be >= 0.");
+        }
+        this.maxRetryTokens = maxRetryTokens;
+    }
+
+    /**
+     * Returns a copy of this policy, so later changes do not affect a client
+     * the policy was set on.
+     */
+    APYRetryPolicy copy() {
+        APYRetryPolicy copy = new APYRetryPolicy();
+        copy.maxAttempts = maxAttempts;
+        copy.initialBackoff = initialBackoff;
+        copy.maxBackoff = maxBackoff;
+        copy.retryRatio = retryRatio;
+        copy.maxRetryTokens = maxRetryTokens;
+        return copy;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.apitrary.sdk;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coalesces concurrent executions of the same operation. The first caller for
+ * a key, the leader, executes the operation while callers arriving in the
+ * meantime, the followers, wait for its outcome instead of executing the
+ * operation themselves.
+ * <p>
+ * Results are usually mutable, so the leader hands its own result back and
+ * every follower receives a result derived by {@link #share(Object)} from a
+ * snapshot taken before the leader returns. Results are only shared if there
+ * was at least one follower.
+ * </p>
+ *
+ * @param <T> the type of the operation's result
+ */
+class APYSingleFlight<T> {
+
+    /**
+     * The operations in flight by key.
+     */
+    private final ConcurrentHashMap<String, Flight<T>> flights = new ConcurrentHashMap<String, Flight<T>>();
+
+    /**
+     * Executes the given operation unless an operation with the same key is
+     * already in flight, in which case its outcome is awaited and shared.
+     *
+     * @param key
+     *            the key identifying identical operations
+     * @param operation
+     *            the operation to execute
+     * @return the result of the operation
+     * @throws APYException
+     *             if the operation failed
+     */
+    T execute(String key, Callable<T> operation) throws APYException {
+        Flight<T> flight = new Flight<T>();
+        while (true) {
+            Flight<T> existingFlight = flights.putIfAbsent(key, flight);
+            if (existingFlight == null) {
+                break;
+            }
+
+            if (existingFlight.join()) {
+                return share(existingFlight.await());
+            }
+            // The flight just landed, start a new one
+            flights.remove(key, existingFlight);
+        }
+
+        try {
+            T result = operation.call();
+            flights.remove(key, flight);
+            flight.complete(flight.close() > 0 ? share(result) : result);
+            return result;
+        } catch (APYException e) {
+            flights.remove(key, flight);
+            flight.close();
+            flight.fail(e);
+            throw e;
+        } catch (Exception e) {
+            APYException wrappedException = new APYException(e);
+            flights.remove(key, flight);
+            flight.close();
+            flight.fail(wrappedException);
+            throw wrappedException;
+        } finally {
+            if (!flight.isDone()) {
+                flights.remove(key, flight);
+                flight.close();
+                flight.fail(new APYException("The shared operation did not complete."));
+            }
+        }
+    }
+
+    /**
+     * Derives the result handed to a follower from the given result. The
+     * default implementation returns the given result.
+     *
+     * @param result
+     *            the result of the leader's operation
+     * @return the result for a follower
+     */
+    protected T share(T result) {
+        return result;
+    }
+
+    /**
+     * A single operation in flight, counting its followers.
+     */
+    private static final class Flight<T> extends APYFuture<T> {
+
+        /**
+         * The number of followers, guarded by this.
+         */
+        private int followerCount;
+
+        /**
+         * Whether followers are no longer accepted, guarded by this.
+         */
+        private boolean closed;
+
+        /**
+         * Registers a follower.
+         *
+         * @return true if the follower joined, false if the flight was closed
+         */
+        synchronized boolean join() {
+            if (closed) {
+                return false;
+            }
+            followerCount++;
+            return true;
+        }
+
+        /**
+         * Stops accepting followers.
+         *
+         * @return the number of followers that joined
+         */
+        synchronized int close() {
+            closed = true;
+            return followerCount;
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.apitrary.sdk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Result of {@link APYClient#sync(String)}, reporting the entities created
+ * or updated on the apitrary backend since the previous sync and the IDs of
+ * the entities deleted since then. Both are already applied to the
+ * {@link APYEntityStore}.
+ */
+public class APYSyncResult {
+
+    /**
+     * The name of the synchronized entities.
+     */
+    private final String entityName;
+
+    /**
+     * The entities created or updated since the previous sync.
+     */
+    private final List<APYEntity> updatedEntities;
+
+    /**
+     * The IDs of the entities deleted since the previous sync.
+     */
+    private final Set<String> removedIds;
+
+    /**
+     * The sync mark after this sync.
+     */
+    private final long syncMark;
+
+    /**
+     * Whether all entities were fetched, as there was no previous sync.
+     */
+    private final boolean fullSync;
+
+    /**
+     * Constructs an instance of {@link APYSyncResult}.
+     *
+     * @param entityName
+     *            the name of the synchronized entities
+     * @param updatedEntities
+     *            the entities created or updated since the previous sync
+     * @param removedIds
+     *            the IDs of the entities deleted since the previous sync
+     * @param syncMark
+     *            the sync mark after this sync
+     * @param fullSync
+     *            whether all entities were fetched
+     */
+    APYSyncResult(String entityName, List<APYEntity> updatedEntities, Set<String> removedIds, long syncMark,
+            boolean fullSync) {
+        this.entityName = entityName;
+        this.updatedEntities = Collections.unmodifiableList(updatedEntities);
+        this.removedIds = Collections.unmodifiableSet(removedIds);
+        this.syncMark = syncMark;
+        this.fullSync = fullSync;
+    }
+
+    /**
+     * Returns the name of the synchronized entities.
+     *
+     * @return the entity name
+     */
+    public String getEntityName() {
+        return entityName;
+    }
+
+    /**
+     * Returns the entities created or updated on the backend since the
+     * previous sync.
+     *
+     * @return an unmodifiable list of the entities
+     */
+    public List<APYEntity> getUpdatedEntities() {
+        return updatedEntities;
+    }
+
+    /**
+     * Returns the IDs of the stored entities which were deleted on the
+     * backend since the previous sync. Empty unless deletions were detected,
+     * see {@link APYClient#sync(String, boolean)}.
+     *
+     * @return an unmodifiable set of the IDs
+     */
+    public Set<String> getRemovedIds() {
+        return removedIds;
+    }
+
+    /**
+     * Returns the '_updatedAt' time up to which the entities are synchronized.
+     *
+     * @return the sync mark (in milliseconds since Jan. 1, 1970, midnight
+     *         GMT), 0 if no entity carried an '_updatedAt' time yet
+     */
+    public long getSyncMark() {
+        return syncMark;
+    }
+
+    /**
+     * Returns whether all entities were fetched because the entities were
+     * never synchronized before.
+     *
+     * @return true for a full sync, false for a delta sync
+     */
+    public boolean isFullSync() {
+        return fullSync;
+    }
+
+    /**
+     * Returns whether anything changed since the previous sync.
+     *
+     * @return true if entities were updated or removed, false otherwise
+     */
+    public boolean hasChanges() {
+        return !updatedEntities.isEmpty() || !removedIds.isEmpty();
+    }
+
+    /**
+     * Returns a copy of this result with copies of the updated entities.
+     */
+    APYSyncResult copy() {
+        List<APYEntity> copies = new ArrayList<APYEntity>(updatedEntities.size());
+        for (APYEntity entity : updatedEntities) {
+            copies.add(entity.copy());
+        }
+        return new APYSyncResult(entityName, copies, removedIds, syncMark, fullSync);
+    }
+
+    @Override
+    public String toString() {
+        return "Sync of '" + entityName + "': " + updatedEntities.size() + " updated, " + removedIds.size()
+                + " removed";
+    }
+
+}
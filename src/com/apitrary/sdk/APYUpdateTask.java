@@ -1,16 +1,11 @@
 package com.apitrary.sdk;
 
-import android.os.AsyncTask;
-
 /**
- * {@link AsyncTask} implementation used to asynchronously update an APYEntity
+ * {@link APYAsyncTask} implementation used to asynchronously update an APYEntity
  * on the apitrary backend. Uses a {@link APYUpdateCallback} to inform the
  * caller about the outcome.
- * <p>
- * <b>Notice:</b> The execute() method expects the entity to update as single {@link APYEntity} parameter.
- * </p>
  */
-class APYUpdateTask extends AsyncTask<APYEntity, Void, APYEntity> {
+class APYUpdateTask extends APYAsyncTask<APYEntity> {
 
     /**
      * Callback used to inform the caller about the outcome.
@@ -18,60 +13,57 @@ class APYUpdateTask extends AsyncTask<APYEntity, Void, APYEntity> {
     private APYUpdateCallback callback;
 
     /**
-     * Invoker for the HTTP request.
+     * Client executing the actual operation.
      */
-    private APYHttpRequestInvoker requestInvoker;
+    private APYClient client;
 
     /**
-     * Exception that might have occurred during "doInBackground()" and is
-     * evaluated in "onPostExecute()".
+     * The entity to update.
      */
-    private Exception occuredException;
+    private APYEntity entity;
 
     /**
      * Constructs an instance of {@link APYUpdateTask}.
      * 
-     * @param requestInvoker
-     *            the {@link APYHttpRequestInvoker} instance used to invoke the
-     *            actual request.
+     * @param client
+     *            the {@link APYClient} instance used to execute the actual
+     *            operation.
      * @param callback
      *            the callback used to inform the caller about the outcome. May
      *            be null if the caller is not interested in the outcome.
+     * @param entity
+     *            the entity to update
      */
-    APYUpdateTask(APYHttpRequestInvoker requestInvoker, APYUpdateCallback callback) {
+    APYUpdateTask(APYClient client, APYUpdateCallback callback, APYEntity entity) {
         // TODO Validate parameters
-        this.requestInvoker = requestInvoker;
+        this.client = client;
         this.callback = callback;
+        this.entity = entity;
     }
 
     @Override
-    protected APYEntity doInBackground(APYEntity... params) {
-        APYEntity entity = params[0];
+    protected APYEntity doInBackground() throws APYException {
+        return client.update(entity);
+    }
 
-        try {
-            entity = requestInvoker.update(entity);
-        } catch (IllegalArgumentException e) {
-            occuredException = e;
-        } catch (APYException e) {
-            occuredException = e;
+    @Override
+    protected void onPostExecute(APYEntity updatedEntity) {
+        if (callback == null) {
+            return;
         }
 
-        return entity;
+        callback.onSuccess(updatedEntity);
     }
 
     @Override
-    protected void onPostExecute(APYEntity updatedEntity) {
+    protected void onFailure(Exception occuredException) {
         if (callback == null) {
             return;
         }
 
-        if (occuredException != null) {
-            callback.onSuccess(updatedEntity);
-        } else {
-            callback.onError(new APYException(
-                    "Entity could not be updated. For further information about the actual problem, "
-                    + "please inspect the 'cause' object.", occuredException));
-        }
+        callback.onError(new APYException(
+                "Entity could not be updated. For further information about the actual problem, "
+                + "please inspect the 'cause' object.", occuredException));
     }
 
 }
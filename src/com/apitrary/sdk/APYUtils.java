@@ -2,10 +2,6 @@ package com.apitrary.sdk;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Iterator;
-
-import org.json.JSONException;
-import org.json.JSONObject;
 
 abstract class APYUtils {
 
@@ -74,76 +70,17 @@ abstract class APYUtils {
     }
 
     /**
-     * Converts the given {@link APYEntity} into a {@link JSONObject} using only
-     * the {@link APYEntity}'s property map.
-     * 
-     * @param entity
-     *            the entity to convert
-     * @return the {@link JSONObject} the entity was converted to
-     * @throws IllegalArgumentException
-     *             if the given entity was null
-     * @throws JSONException
-     *             if there was a problem parsing the JSON
-     */
-    static JSONObject convertToJson(APYEntity entity) throws IllegalArgumentException, JSONException {
-        if (entity == null) {
-            throw new IllegalArgumentException("The entity to convert must not be null.");
-        }
-
-        JSONObject jsonObject = new JSONObject();
-        for (String propertyKey : entity.getProperties().keySet()) {
-            jsonObject.put(propertyKey, entity.get(propertyKey));
-        }
-        return jsonObject;
-    }
-
-    /**
-     * Converts the given {@link JSONObject} into a {@link APYEntity}.
+     * Formats the given time the way the backend represents the '_createdAt'
+     * and '_updatedAt' times, i.e. "seconds.milliseconds".
      * 
-     * @param entityName
-     *            the name of the entity
-     * @param jsonDataObject
-     *            the JSONObject to convert
-     * @return the {@link APYEntity} the {@link JSONObject} was converted to
-     * @throws IllegalArgumentException
-     *             if the given entity name was null or empty
-     *             if the given JSONObject was null
-     * @throws JSONException if there was a problem parsing the JSON
+     * @param timeMillis
+     *            the time in milliseconds since Jan. 1, 1970, midnight GMT, must be >= 0
+     * @return the formatted time (e.g. "1357000000.042")
      */
-    static APYEntity convertFromJson(String entityName, JSONObject jsonDataObject) throws IllegalArgumentException, JSONException {
-        if (isNullOrEmpty(entityName)) {
-            throw new IllegalArgumentException("The given entity name was null or empty.");
-        }
-        if (jsonDataObject == null) {
-            throw new IllegalArgumentException("The given JSONObject to convert was null.");
-        }
-
-        APYEntity apyEntity = new APYEntity(entityName);
-
-        // Iterate over all keys to get the object's properties and add those to our APYEntity
-        @SuppressWarnings("unchecked")
-        Iterator<String> dataPropertyKeys = jsonDataObject.keys();
-        String dataPropertyKey = null;
-        while (dataPropertyKeys.hasNext()) {
-            dataPropertyKey = dataPropertyKeys.next();
-            if (dataPropertyKey.equalsIgnoreCase("_createdAt")) {
-                // Extract the creation and convert the Python format ("seconds.milliseconds")
-                // to Java long format (milliseconds)
-                double _createdAt = jsonDataObject.getDouble("_createdAt");
-                long createdAt = (long) (_createdAt * 1000);
-                apyEntity.setCreatedAt(createdAt);
-            } else if (dataPropertyKey.equalsIgnoreCase("_updatedAt")) {
-                // Extract the update date and convert the Python format ("seconds.milliseconds")
-                // to Java long format (milliseconds)
-                double _updatedAt = jsonDataObject.getDouble("_updatedAt");
-                long updatedAt = (long) (_updatedAt * 1000);
-                apyEntity.setUpdatedAt(updatedAt);
-            } else {
-                apyEntity.put(dataPropertyKey, jsonDataObject.optString(dataPropertyKey, null));
-            }
-        }
-        
-        return apyEntity;
+    static String formatTimestamp(long timeMillis) {
+        String milliseconds = String.valueOf(timeMillis % 1000);
+        return String.valueOf(timeMillis / 1000).concat(".000".substring(0, 4 - milliseconds.length()))
+                .concat(milliseconds);
     }
 
 }
@@ -0,0 +1,161 @@
+package com.apitrary.sdk;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Store of the validators (ETag and Last-Modified) and parsed entities of
+ * the most recently fetched resources. The validators are sent along with
+ * subsequent requests of the same resource, so the backend can answer with
+ * 304 - Not Modified instead of the full payload, in which case the stored
+ * entities are served without reading or parsing a response body.
+ * <p>
+ * The number of stored resources is bounded, the least recently used one is
+ * dropped first. Instances of this class are thread-safe.
+ * </p>
+ */
+class APYValidatorStore {
+
+    /**
+     * The default maximal number of stored resources.
+     */
+    static final int DEFAULT_MAX_RESOURCES = 64;
+
+    /**
+     * The validators and entities of a single resource.
+     */
+    static final class Validated {
+
+        private final String etag;
+
+        private final String lastModified;
+
+        /**
+         * Private copies of the entities, never handed out directly.
+         */
+        private final List<APYEntity> entities;
+
+        Validated(String etag, String lastModified, List<APYEntity> entities) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.entities = entities;
+        }
+
+        /**
+         * Adds the conditional request headers matching the validators to
+         * the given connection.
+         *
+         * @param connection the connection of the request, not yet connected
+         */
+        void applyTo(HttpURLConnection connection) {
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", lastModified);
+            }
+        }
+
+        /**
+         * Returns copies of the stored entities.
+         *
+         * @return a new list of copies of the stored entities
+         */
+        List<APYEntity> copyEntities() {
+            List<APYEntity> copies = new ArrayList<APYEntity>(entities.size());
+            for (APYEntity entity : entities) {
+                copies.add(entity.copy());
+            }
+            return copies;
+        }
+    }
+
+    /**
+     * The stored resources in access order, guarded by itself.
+     */
+    private final Map<String, Validated> resources;
+
+    /**
+     * Constructs an instance of {@link APYValidatorStore}.
+     *
+     * @param maxResources
+     *            the maximal number of stored resources, must be >= 1
+     * @throws IllegalArgumentException
+     *             if the given number was less than 1
+     */
+    APYValidatorStore(final int maxResources) throws IllegalArgumentException {
+        if (maxResources < 1) {
+            throw new IllegalArgumentException("The maximal number of resources must be >= 1.");
+        }
+
+        resources = new LinkedHashMap<String, Validated>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Validated> eldest) {
+                return size() > maxResources;
+            }
+        };
+    }
+
+    /**
+     * Returns the stored validators and entities of the given resource.
+     *
+     * @param resource
+     *            the path of the resource relative to the API URL
+     * @return the {@link Validated} resource or null if none is stored
+     */
+    Validated get(String resource) {
+        synchronized (resources) {
+            return resources.get(resource);
+        }
+    }
+
+    /**
+     * Stores the given validators along with copies of the given entities. If
+     * there was no validator, a previously stored entry of the resource is
+     * removed.
+     *
+     * @param resource
+     *            the path of the resource relative to the API URL
+     * @param etag
+     *            the ETag header of the response or null
+     * @param lastModified
+     *            the Last-Modified header of the response or null
+     * @param entities
+     *            the entities parsed off the response
+     */
+    void put(String resource, String etag, String lastModified, List<APYEntity> entities) {
+        if (etag == null && lastModified == null) {
+            remove(resource);
+            return;
+        }
+
+        List<APYEntity> copies = new ArrayList<APYEntity>(entities.size());
+        for (APYEntity entity : entities) {
+            copies.add(entity.copy());
+        }
+        Validated validated = new Validated(etag, lastModified, Collections.unmodifiableList(copies));
+        synchronized (resources) {
+            resources.put(resource, validated);
+        }
+    }
+
+    /**
+     * Removes the stored validators and entities of the given resource.
+     *
+     * @param resource
+     *            the path of the resource relative to the API URL
+     */
+    void remove(String resource) {
+        synchronized (resources) {
+            resources.remove(resource);
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.apitrary.sdk;
+
+/**
+ * Callback interface used by the {@link APYWriteBehindQueue} to inform the
+ * caller about the outcome of the queued operations.
+ * <p>
+ * <b>Notice:</b> All methods are called on the callback executor of the
+ * {@link APYClient}, the main thread by default, see
+ * {@link APYAsyncConfig}.
+ * </p>
+ */
+public interface APYWriteBehindCallback {
+
+    /**
+     * Called if a queued entity was created successfully.
+     *
+     * @param createdEntity the created entity, carrying its new ID
+     */
+    void onCreated(APYEntity createdEntity);
+
+    /**
+     * Called if a queued update of an entity was written successfully.
+     * Superseded updates of the same entity are not reported.
+     *
+     * @param updatedEntity the updated entity
+     */
+    void onUpdated(APYEntity updatedEntity);
+
+    /**
+     * Called if a queued entity was deleted successfully.
+     *
+     * @param deletedEntity the deleted entity, carrying only its name and ID
+     */
+    void onDeleted(APYEntity deletedEntity);
+
+    /**
+     * Called if a queued operation failed permanently and was dropped from
+     * the queue, e.g. because the entity to update no longer exists. A
+     * creation which failed after its request was sent, e.g. by a read
+     * timeout, is reported here as well, since it may have been written
+     * nevertheless; check the backend before creating the entity again.
+     *
+     * @param entity the entity of the failed operation
+     * @param error an instance of {@link APYException} containing further information about the error
+     */
+    void onError(APYEntity entity, APYException error);
+
+}
@@ -0,0 +1,817 @@
+package com.apitrary.sdk;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import android.util.Log;
+
+import com.apitrary.sdk.APYException.APYExceptionDetailCode;
+
+/**
+ * Queue writing created, updated and deleted entities to the apitrary
+ * backend in the background. Open it with
+ * {@link APYClient#openWriteBehindQueue(File, APYWriteBehindCallback)}.
+ * <p>
+ * The queued operations return at once. They are appended to a journal file
+ * which is synced to disk before returning, so queued operations survive a
+ * crash or restart of the app and are resumed when the queue is opened
+ * again. A background thread drains the queue in batches, executing the
+ * operations of different entities in parallel and the operations of the
+ * same entity in the order they were queued. An update replaces a queued
+ * update of the same entity that was not sent yet, and a deletion drops
+ * them.
+ * </p>
+ * <p>
+ * If the backend can not be reached, the operations are retried with
+ * increasing delays until it can be reached again. An update or deletion
+ * rejected by the backend is retried a few times, and one failing because
+ * its entity no longer exists is dropped at once, reported by
+ * {@link APYWriteBehindCallback#onError(APYEntity, APYException)}.
+ * </p>
+ * <p>
+ * Creations are not idempotent: sending one twice creates two entities. A
+ * creation is therefore only retried while its request certainly did not
+ * reach the backend, e.g. while no connection can be made. One failing after
+ * it was sent, e.g. by a read timeout or an error on the backend side, may
+ * have been written nevertheless and is reported as failed instead of being
+ * sent again. A creation whose request was sent right before the app was
+ * killed, before its outcome was journaled, is sent again when the queue is
+ * opened: across restarts, creations are delivered at least once.
+ * </p>
+ * <p>
+ * <b>Notice:</b> Entities created through the queue get their ID only once
+ * they were written. Queue their updates after
+ * {@link APYWriteBehindCallback#onCreated(APYEntity)} was called.
+ * Instances of this class are thread-safe. Do not open more than one queue
+ * on the same directory.
+ * </p>
+ */
+public class APYWriteBehindQueue implements Closeable {
+
+    /**
+     * The name of the journal file.
+     */
+    private static final String JOURNAL_FILE_NAME = "writes.journal";
+
+    /**
+     * The name of the file the journal is compacted into.
+     */
+    private static final String COMPACTION_FILE_NAME = "writes.journal.tmp";
+
+    /**
+     * The record type of a queued creation.
+     */
+    private static final byte RECORD_CREATE = 1;
+
+    /**
+     * The record type of a queued update.
+     */
+    private static final byte RECORD_UPDATE = 2;
+
+    /**
+     * The record type of a queued deletion.
+     */
+    private static final byte RECORD_DELETE = 3;
+
+    /**
+     * The record type marking a queued operation as done.
+     */
+    private static final byte RECORD_DONE = 4;
+
+    /**
+     * The maximal number of operations sent in one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 32;
+
+    /**
+     * The number of attempts of an operation rejected by the backend before
+     * it is dropped.
+     */
+    private static final int MAX_ATTEMPTS = 5;
+
+    /**
+     * The delay in milliseconds before the first retry of a failed batch.
+     */
+    private static final long MIN_RETRY_DELAY = 1000;
+
+    /**
+     * The maximal delay in milliseconds between retries of failed batches.
+     */
+    private static final long MAX_RETRY_DELAY = 60000;
+
+    /**
+     * The minimal number of superseded bytes before the journal is compacted.
+     */
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+
+    /**
+     * A queued operation.
+     */
+    private static final class PendingWrite {
+
+        final byte type;
+
+        final long sequence;
+
+        final String entityName;
+
+        final String entityId;
+
+        final byte[] data;
+
+        final int recordLength;
+
+        /**
+         * Whether the operation is being sent, guarded by the queue.
+         */
+        boolean inFlight;
+
+        /**
+         * The number of attempts the backend rejected, guarded by the queue.
+         */
+        int attemptCount;
+
+        /**
+         * Whether the current attempt was picked up by a worker thread, false
+         * if the engine refused or skipped it.
+         */
+        volatile boolean attemptStarted;
+
+        PendingWrite(byte type, long sequence, String entityName, String entityId, byte[] data, int recordLength) {
+            this.type = type;
+            this.sequence = sequence;
+            this.entityName = entityName;
+            this.entityId = entityId;
+            this.data = data;
+            this.recordLength = recordLength;
+        }
+
+        /**
+         * Returns the key of the entity, the same for all operations of an
+         * entity, or null for a creation.
+         */
+        String getEntityKey() {
+            return type == RECORD_CREATE ? null : entityName.toLowerCase(Locale.US).concat("/").concat(entityId);
+        }
+
+        APYEntity toEntity() throws IOException {
+            APYEntity entity = new APYEntity(entityName);
+            if (entityId.length() > 0) {
+                entity.setId(entityId);
+            }
+            if (data.length > 0) {
+                APYRecordFormat.decodeProperties(entity, data);
+            }
+            return entity;
+        }
+    }
+
+    /**
+     * The client the operations are executed with.
+     */
+    private final APYClient client;
+
+    /**
+     * The callback informed about the outcome, or null.
+     */
+    private final APYWriteBehindCallback callback;
+
+    /**
+     * The directory of the journal file.
+     */
+    private final File directory;
+
+    /**
+     * The journal file, guarded by this.
+     */
+    private RandomAccessFile journalFile;
+
+    /**
+     * The length of the journal in bytes, guarded by this.
+     */
+    private long journalLength;
+
+    /**
+     * The number of journal bytes taken by done and superseded operations,
+     * guarded by this.
+     */
+    private long garbageBytes;
+
+    /**
+     * The queued operations in the order they were queued, guarded by this.
+     */
+    private final LinkedList<PendingWrite> pendingWrites = new LinkedList<PendingWrite>();
+
+    /**
+     * The sequence number of the next queued operation, guarded by this.
+     */
+    private long nextSequence = 1;
+
+    /**
+     * The time in milliseconds before which no batch is sent, guarded by this.
+     */
+    private long retryTime;
+
+    /**
+     * The delay in milliseconds before the next retry, guarded by this.
+     */
+    private long retryDelay = MIN_RETRY_DELAY;
+
+    /**
+     * Whether this queue was closed, guarded by this.
+     */
+    private boolean closed;
+
+    /**
+     * The thread draining the queue.
+     */
+    private final Thread flusherThread;
+
+    /**
+     * Opens the queue journaled in the given directory, creating it if
+     * necessary, and starts draining the operations queued before.
+     *
+     * @param client
+     *            the client to execute the operations with
+     * @param directory
+     *            the directory holding the journal
+     * @param callback
+     *            the callback informed about the outcome, or null
+     * @throws IOException
+     *             if the directory could not be created or the journal could
+     *             not be read
+     */
+    APYWriteBehindQueue(APYClient client, File directory, APYWriteBehindCallback callback) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("The directory '".concat(directory.getPath()).concat("' could not be created."));
+        }
+
+        this.client = client;
+        this.callback = callback;
+        this.directory = directory;
+        openJournal();
+
+        flusherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "apitrary-write-behind");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    /**
+     * Queues the creation of the given entity.
+     *
+     * @param entity
+     *            the entity to create
+     * @throws IllegalArgumentException
+     *             if the entity was null or its name was null or empty
+     * @throws IOException
+     *             if the operation could not be journaled or the queue was closed
+     */
+    public void create(APYEntity entity) throws IllegalArgumentException, IOException {
+        APYUtils.validateEntity(entity);
+        enqueue(RECORD_CREATE, entity.getName(), "", APYRecordFormat.encodeProperties(entity));
+    }
+
+    /**
+     * Queues the update of the given entity. A queued update of the same
+     * entity which was not sent yet is replaced.
+     *
+     * @param entity
+     *            the entity to update
+     * @throws IllegalArgumentException
+     *             if the entity was null or its name or ID was null or empty
+     * @throws IOException
+     *             if the operation could not be journaled or the queue was closed
+     */
+    public void update(APYEntity entity) throws IllegalArgumentException, IOException {
+        APYUtils.validateEntity(entity);
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+        enqueue(RECORD_UPDATE, entity.getName(), entity.getId(), APYRecordFormat.encodeProperties(entity));
+    }
+
+    /**
+     * Queues the deletion of the given entity. Queued updates of the same
+     * entity which were not sent yet are dropped.
+     *
+     * @param entity
+     *            the entity to delete
+     * @throws IllegalArgumentException
+     *             if the entity was null or its name or ID was null or empty
+     * @throws IOException
+     *             if the operation could not be journaled or the queue was closed
+     */
+    public void delete(APYEntity entity) throws IllegalArgumentException, IOException {
+        APYUtils.validateEntity(entity);
+        if (APYUtils.isNullOrEmpty(entity.getId())) {
+            throw new IllegalArgumentException("The ID of the given entity was null or empty.");
+        }
+        enqueue(RECORD_DELETE, entity.getName(), entity.getId(), new byte[0]);
+    }
+
+    /**
+     * Returns the number of queued operations, including the ones being sent.
+     *
+     * @return the number of operations not written yet
+     */
+    public synchronized int getPendingCount() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * Sends the queued operations right away instead of waiting for the
+     * next retry, e.g. once the device regained connectivity.
+     */
+    public synchronized void flush() {
+        retryTime = 0;
+        retryDelay = MIN_RETRY_DELAY;
+        notifyAll();
+    }
+
+    /**
+     * Waits until all queued operations were written or dropped.
+     *
+     * @param timeoutMillis
+     *            the maximal time to wait in milliseconds
+     * @return true if the queue is empty, false if the time elapsed or the
+     *         queue was closed
+     * @throws InterruptedException
+     *             if the waiting thread was interrupted
+     */
+    public synchronized boolean awaitEmpty(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!pendingWrites.isEmpty() && !closed) {
+            long remainingMillis = deadline - System.currentTimeMillis();
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            wait(remainingMillis);
+        }
+        return pendingWrites.isEmpty();
+    }
+
+    /**
+     * Stops draining the queue, waiting for the batch being sent, and closes
+     * the journal. The queued operations are kept and resumed when the
+     * queue is opened again.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+
+        boolean interrupted = false;
+        while (flusherThread.isAlive()) {
+            try {
+                flusherThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        synchronized (this) {
+            journalFile.close();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Journals an operation and hands it to the flusher.
+     */
+    private synchronized void enqueue(byte type, String entityName, String entityId, byte[] data)
+            throws IOException {
+        if (closed) {
+            throw new IOException("The write-behind queue was closed.");
+        }
+
+        long sequence = nextSequence++;
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        int recordLength = writeRecord(records, type, sequence, entityName, entityId, data);
+        append(records);
+
+        queue(new PendingWrite(type, sequence, entityName, entityId, data, recordLength));
+        notifyAll();
+    }
+
+    /**
+     * Adds an operation to the queue, dropping the queued operations it
+     * supersedes. Replaying the journal calls this in the same order, so it
+     * collapses the same operations.
+     */
+    private void queue(PendingWrite write) {
+        String entityKey = write.getEntityKey();
+        if (entityKey != null) {
+            for (Iterator<PendingWrite> iterator = pendingWrites.iterator(); iterator.hasNext();) {
+                PendingWrite pendingWrite = iterator.next();
+                boolean superseded = pendingWrite.type == RECORD_UPDATE
+                        || (pendingWrite.type == RECORD_DELETE && write.type == RECORD_DELETE);
+                if (superseded && !pendingWrite.inFlight && entityKey.equals(pendingWrite.getEntityKey())) {
+                    iterator.remove();
+                    garbageBytes += pendingWrite.recordLength;
+                }
+            }
+        }
+        pendingWrites.add(write);
+    }
+
+    /**
+     * Runs on the flusher thread, sending batches until the queue is closed.
+     */
+    private void drain() {
+        while (true) {
+            List<PendingWrite> batch = nextBatch();
+            if (batch == null) {
+                return;
+            }
+            sendBatch(batch);
+        }
+    }
+
+    /**
+     * Waits for queued operations and takes the next batch of them, at most
+     * one per entity so operations of the same entity keep their order.
+     *
+     * @return the operations to send, or null if the queue was closed
+     */
+    private synchronized List<PendingWrite> nextBatch() {
+        while (true) {
+            if (closed) {
+                return null;
+            }
+
+            long delay = retryTime - System.currentTimeMillis();
+            if (pendingWrites.isEmpty()) {
+                waitUninterruptibly(0);
+            } else if (delay > 0) {
+                waitUninterruptibly(delay);
+            } else {
+                break;
+            }
+        }
+
+        List<PendingWrite> batch = new ArrayList<PendingWrite>();
+        Set<String> batchedKeys = new HashSet<String>();
+        Set<String> blockedKeys = new HashSet<String>();
+        for (PendingWrite pendingWrite : pendingWrites) {
+            if (batch.size() == MAX_BATCH_SIZE) {
+                break;
+            }
+            String entityKey = pendingWrite.getEntityKey();
+            if (entityKey != null && (blockedKeys.contains(entityKey) || !batchedKeys.add(entityKey))) {
+                // A preceding operation of the entity is sent first
+                blockedKeys.add(entityKey);
+                continue;
+            }
+            pendingWrite.inFlight = true;
+            pendingWrite.attemptStarted = false;
+            batch.add(pendingWrite);
+        }
+        return batch;
+    }
+
+    /**
+     * Sends the given operations in parallel, journals the finished ones and
+     * reports their outcome.
+     */
+    private void sendBatch(List<PendingWrite> batch) {
+        List<Callable<APYEntity>> operations = new ArrayList<Callable<APYEntity>>(batch.size());
+        for (final PendingWrite write : batch) {
+            operations.add(new Callable<APYEntity>() {
+                @Override
+                public APYEntity call() throws Exception {
+                    write.attemptStarted = true;
+                    return execute(write);
+                }
+            });
+        }
+        List<APYFuture<APYEntity>> futures = client.submitWindowed(operations);
+
+        final List<APYEntity> results = new ArrayList<APYEntity>(batch.size());
+        final List<APYException> errors = new ArrayList<APYException>(batch.size());
+        for (APYFuture<APYEntity> future : futures) {
+            try {
+                results.add(future.await());
+                errors.add(null);
+            } catch (APYException e) {
+                results.add(null);
+                errors.add(e);
+            }
+        }
+
+        final List<PendingWrite> finishedWrites = new ArrayList<PendingWrite>(batch.size());
+        final List<APYEntity> finishedEntities = new ArrayList<APYEntity>(batch.size());
+        final List<APYException> finishedErrors = new ArrayList<APYException>(batch.size());
+        boolean retry = false;
+        synchronized (this) {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            try {
+                for (int index = 0; index < batch.size(); index++) {
+                    PendingWrite write = batch.get(index);
+                    write.inFlight = false;
+                    APYException error = errors.get(index);
+                    if (error != null) {
+                        if (!write.attemptStarted || isUnsent(error)) {
+                            // Refused by the engine or no connection made, which is not an attempt
+                            retry = true;
+                            continue;
+                        }
+                        if (write.type == RECORD_CREATE) {
+                            if (isUncertain(error)) {
+                                error = new APYException(error.getDetailCode(),
+                                        "The entity may or may not have been created, it is not created again.", error);
+                            }
+                        } else if (!isPermanent(error, ++write.attemptCount)) {
+                            retry = true;
+                            continue;
+                        }
+                    }
+
+                    garbageBytes += writeRecord(records, RECORD_DONE, write.sequence, "", "", new byte[0]);
+                    garbageBytes += write.recordLength;
+                    pendingWrites.remove(write);
+                    finishedWrites.add(write);
+                    finishedEntities.add(error == null ? results.get(index) : write.toEntity());
+                    finishedErrors.add(error);
+                }
+                append(records);
+                compactIfWorthwhile();
+            } catch (IOException e) {
+                // The operations are sent again after a restart, creations being delivered at least once
+                Log.w(APYConstants.APITARY_LOG_TAG, "The write-behind journal could not be written: ".concat(String.valueOf(e.getMessage())));
+            }
+
+            if (retry) {
+                retryTime = System.currentTimeMillis() + retryDelay;
+                retryDelay = Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+            } else {
+                retryDelay = MIN_RETRY_DELAY;
+            }
+            notifyAll();
+        }
+
+        if (callback != null && !finishedWrites.isEmpty()) {
+            Executor callbackExecutor = client.getCallbackExecutor();
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int index = 0; index < finishedWrites.size(); index++) {
+                        report(finishedWrites.get(index).type, finishedEntities.get(index), finishedErrors.get(index));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Executes the given operation with the client.
+     */
+    private APYEntity execute(PendingWrite write) throws IOException, APYException {
+        APYEntity entity = write.toEntity();
+        switch (write.type) {
+        case RECORD_CREATE:
+            return client.create(entity);
+        case RECORD_UPDATE:
+            return client.update(entity);
+        default:
+            client.delete(entity);
+            return entity;
+        }
+    }
+
+    private void report(byte type, APYEntity entity, APYException error) {
+        if (error != null) {
+            callback.onError(entity, error);
+        } else if (type == RECORD_CREATE) {
+            callback.onCreated(entity);
+        } else if (type == RECORD_UPDATE) {
+            callback.onUpdated(entity);
+        } else {
+            callback.onDeleted(entity);
+        }
+    }
+
+    /**
+     * Returns whether the given failure of an update or deletion is final.
+     * They are retried as long as the backend can not be reached, and a
+     * limited number of times if the backend rejected them. Sending them
+     * again is harmless.
+     */
+    private static boolean isPermanent(APYException error, int attemptCount) {
+        if (error.getDetailCode() == APYExceptionDetailCode.ENTITY_NOT_FOUND) {
+            return true;
+        }
+        if (APYHttpRequestInvoker.isNetworkFailure(error.getCause())) {
+            return false;
+        }
+        return attemptCount >= MAX_ATTEMPTS;
+    }
+
+    /**
+     * Returns whether the request of an operation failing with the given
+     * error certainly did not reach the backend, because no connection was
+     * available or could be made.
+     */
+    private static boolean isUnsent(APYException error) {
+        Throwable cause = error.getCause();
+        return cause instanceof APYHttpTransport.PermitTimeoutException || cause instanceof ConnectException
+                || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException;
+    }
+
+    /**
+     * Returns whether a creation failing with the given error may have been
+     * written nevertheless, i.e. it failed after the request was sent or on
+     * the backend side. Creations are not idempotent, so such a creation is
+     * not sent again.
+     */
+    private static boolean isUncertain(APYException error) {
+        Throwable cause = error.getCause();
+        return error.getDetailCode() == APYExceptionDetailCode.BACKEND_ERROR
+                || APYHttpRequestInvoker.isNetworkFailure(cause) || cause instanceof APYMalformedResponseException;
+    }
+
+    /**
+     * Opens the journal and queues the operations not done yet. A torn record
+     * at the end of the journal is cut off.
+     */
+    private void openJournal() throws IOException {
+        journalFile = new RandomAccessFile(new File(directory, JOURNAL_FILE_NAME), "rw");
+        long fileLength = journalFile.length();
+        if (fileLength > Integer.MAX_VALUE) {
+            throw new IOException("The write-behind journal exceeds its maximal size.");
+        }
+
+        byte[] journal = new byte[(int) fileLength];
+        journalFile.seek(0);
+        journalFile.readFully(journal);
+
+        pendingWrites.clear();
+        garbageBytes = 0;
+        int offset = 0;
+        while (offset + APYRecordFormat.HEADER_SIZE <= journal.length) {
+            int bodyLength = readInt(journal, offset);
+            if (bodyLength <= 0 || bodyLength > journal.length - offset - APYRecordFormat.HEADER_SIZE) {
+                break;
+            }
+            int checksum = APYRecordFormat.checksum(journal, offset + APYRecordFormat.HEADER_SIZE, bodyLength);
+            if (checksum != readInt(journal, offset + 4)) {
+                // The record was torn by a crash, nothing after it was synced
+                break;
+            }
+
+            int recordLength = APYRecordFormat.HEADER_SIZE + bodyLength;
+            replayRecord(new DataInputStream(new ByteArrayInputStream(journal, offset + APYRecordFormat.HEADER_SIZE, bodyLength)), recordLength);
+            offset += recordLength;
+        }
+
+        if (offset < journal.length) {
+            journalFile.setLength(offset);
+        }
+        journalLength = offset;
+    }
+
+    /**
+     * Applies a journal record to the queue.
+     */
+    private void replayRecord(DataInputStream body, int recordLength) throws IOException {
+        byte type = body.readByte();
+        long sequence = body.readLong();
+        String entityName = body.readUTF();
+        String entityId = body.readUTF();
+        byte[] data = new byte[body.readInt()];
+        body.readFully(data);
+        nextSequence = Math.max(nextSequence, sequence + 1);
+
+        if (type != RECORD_DONE) {
+            queue(new PendingWrite(type, sequence, entityName, entityId, data, recordLength));
+            return;
+        }
+
+        garbageBytes += recordLength;
+        for (Iterator<PendingWrite> iterator = pendingWrites.iterator(); iterator.hasNext();) {
+            PendingWrite pendingWrite = iterator.next();
+            if (pendingWrite.sequence == sequence) {
+                iterator.remove();
+                garbageBytes += pendingWrite.recordLength;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Empties the journal once no operation is queued, or rewrites it with
+     * the queued operations once the done and superseded ones take more
+     * space.
+     */
+    private void compactIfWorthwhile() throws IOException {
+        if (pendingWrites.isEmpty()) {
+            journalFile.setLength(0);
+            journalLength = 0;
+            garbageBytes = 0;
+            return;
+        }
+        if (garbageBytes < MIN_COMPACTION_GARBAGE || garbageBytes <= journalLength - garbageBytes) {
+            return;
+        }
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (PendingWrite write : pendingWrites) {
+            writeRecord(records, write.type, write.sequence, write.entityName, write.entityId, write.data);
+        }
+
+        File compactedFile = new File(directory, COMPACTION_FILE_NAME);
+        RandomAccessFile compactedJournal = new RandomAccessFile(compactedFile, "rw");
+        try {
+            compactedJournal.setLength(0);
+            compactedJournal.write(records.toByteArray());
+            compactedJournal.getFD().sync();
+        } finally {
+            compactedJournal.close();
+        }
+
+        journalFile.close();
+        if (!compactedFile.renameTo(new File(directory, JOURNAL_FILE_NAME))) {
+            journalFile = new RandomAccessFile(new File(directory, JOURNAL_FILE_NAME), "rw");
+            throw new IOException("The compacted journal could not replace the journal.");
+        }
+        journalFile = new RandomAccessFile(new File(directory, JOURNAL_FILE_NAME), "rw");
+        journalLength = records.size();
+        garbageBytes = 0;
+    }
+
+    /**
+     * Appends the given records to the journal and syncs it to disk.
+     */
+    private void append(ByteArrayOutputStream records) throws IOException {
+        if (records.size() == 0) {
+            return;
+        }
+        journalFile.seek(journalLength);
+        journalFile.write(records.toByteArray());
+        journalFile.getFD().sync();
+        journalLength += records.size();
+    }
+
+    /**
+     * Writes a record to the given stream.
+     *
+     * @return the length of the record including its header
+     */
+    private static int writeRecord(ByteArrayOutputStream records, byte type, long sequence, String entityName,
+            String entityId, byte[] data) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64 + data.length);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        body.writeByte(type);
+        body.writeLong(sequence);
+        body.writeUTF(entityName);
+        body.writeUTF(entityId);
+        body.writeInt(data.length);
+        body.write(data);
+        body.flush();
+
+        return APYRecordFormat.writeRecord(records, bodyBytes.toByteArray());
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private void waitUninterruptibly(long timeoutMillis) {
+        try {
+            wait(timeoutMillis);
+        } catch (InterruptedException e) {
+            // The flusher only stops once the queue is closed
+        }
+    }
+
+}